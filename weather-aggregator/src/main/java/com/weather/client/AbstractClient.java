@@ -3,23 +3,39 @@ package com.weather.client;
 import com.weather.clock.LamportClock;
 import com.weather.http.Request;
 import com.weather.http.Response;
+import com.weather.http.StatusCode;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
+/*
+ * Speaks plain HTTP/1.1 to the AggregationServer over one persistent connection.
+ * The connection is opened on the first request and reused for every later one until stop() is called,
+ * the server answers "Connection: close", or it fails (then the request is retried on a fresh connection).
+ * pipeline() writes several requests back to back and then reads their responses in order.
+ */
 public abstract class AbstractClient {
     protected String hostname;
     protected int port;
     protected Socket socket;
-    protected ObjectOutputStream outputStream; // the output stream to send data to the server
-    protected ObjectInputStream inputStream; // the input stream to receive data from the server
+    protected OutputStream outputStream; // the output stream to send data to the server
+    protected InputStream inputStream; // the input stream to receive data from the server
     protected LamportClock clock; // logical clock
-    
-    
+    protected boolean verbose = true; // print every request and response (off for the load generator)
+
+
     // constructor
     public AbstractClient(String hostname, int port){
         // do initialise the Lamport: not included
@@ -32,7 +48,7 @@ public abstract class AbstractClient {
     /*     core methods      */
     /*
      * handle establishing the socket connection to the server.
-     * can include retry mechanism 
+     * can include retry mechanism
      */
     public void connect() throws IOException, InterruptedException {
         final int MAX_TRY = 3;
@@ -40,7 +56,12 @@ public abstract class AbstractClient {
         for (int retry = 0; retry < MAX_TRY; retry++) {
             try {
                 this.socket = new Socket(hostname, port);
-                System.out.println("Successfully connected to " + this.hostname + ":" + this.port);
+                this.socket.setTcpNoDelay(true); // small requests, don't wait to coalesce them
+                this.outputStream = new BufferedOutputStream(socket.getOutputStream());
+                this.inputStream = new BufferedInputStream(socket.getInputStream());
+                if (verbose) {
+                    System.out.println("Successfully connected to " + this.hostname + ":" + this.port);
+                }
                 return;
 
             } catch (IOException e) {
@@ -48,7 +69,7 @@ public abstract class AbstractClient {
                     System.out.println("Connection failed. Retrying in 5s");
                     Thread.sleep(5000);
                 } else {
-                    // last retry fail 
+                    // last retry fail
                     System.err.println("Cannot connect to " + this.hostname + ":" + this.port);
                     throw e;
                 }
@@ -56,91 +77,203 @@ public abstract class AbstractClient {
         }
     }
 
+    /*
+     * connect only if there is no open connection to reuse
+     */
+    protected void ensureConnected() throws IOException, InterruptedException {
+        if (socket == null || socket.isClosed()) {
+            connect();
+        }
+    }
+
     /*
      * this will orchestrate the entire communication. it will call the createRequest(), send the request then call showResponse() to handle server's reply.
+     * The connection is kept open for the next call.
+     */
+    public void requestAndResponse() {
+        // Create and send request
+        Request request = createRequest();
+        if (request == null) {
+            System.err.println("ERROR: No request to send.");
+            return;
+        }
+        Response response = send(request);
+        if (response != null) {
+            showResponse(response);
+        }
+    }
+
+    /*
+     * Send one request and wait for its response, on the open connection if there is one.
      * retry mechanism: will try to send the request 3 times before failing
+     * return null if no response could be read
      */
-    public void requestAndResponse() throws ClassNotFoundException {
+    public Response send(Request request) {
         final int MAX_ATTEMPTS = 3;
         for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
             try {
-            connect(); // connect to the server
+            ensureConnected(); // reuse the open connection, or connect to the server
 
-            // initialise streams
-            outputStream = new ObjectOutputStream(socket.getOutputStream());
-            inputStream = new ObjectInputStream(socket.getInputStream());
-
-            // Create and send request
-            Request request = createRequest();
             sendRequest(request);
+            outputStream.flush();
 
-            // wait for and show the response
+            // wait for the response
             Response response = getResponse();
-            showResponse(response);
+            closeIfRequested(response);
 
-            return; // cause to here everything is completed
+            return response; // cause to here everything is completed
 
-            } catch (SocketTimeoutException | SocketException e) {
-                // This handles both connection timeouts and a closed socket, which indicate a network failure or server crash.
+            } catch (SocketTimeoutException | SocketException | EOFException e) {
+                // This handles timeouts, a closed socket and a persistent connection the server dropped while idle,
+                // which indicate a network failure or server crash.
                 System.err.println("Communication error (attempt " + (attempt + 1) + "/" + MAX_ATTEMPTS + "): " + e.getMessage());
+                // Clean up and prepare for the next attempt on a fresh connection
+                stop();
                 if (attempt < MAX_ATTEMPTS - 1) {
                     System.out.println("Retrying request...");
-                    // Clean up and prepare for the next attempt
-                    stop(); 
                 } else {
                     System.err.println("Failed to get a response after " + MAX_ATTEMPTS + " attempts. Aborting.");
                     e.printStackTrace();
-                    break;
                 }
-            
+
             } catch (IOException | InterruptedException e) {
                 System.err.println("ERROR: An error occur during communication: " + e.getMessage());
                 e.printStackTrace();
+                stop();
                 break;
-            } finally {
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Send all requests without waiting for each response, then read the responses in the same order.
+     * If the server closes the connection part way (request cap, idle timeout) the unanswered requests
+     * are sent again on a new connection.
+     */
+    public List<Response> pipeline(List<Request> requests) throws IOException, InterruptedException {
+        final int MAX_ATTEMPTS = 3;
+        List<Response> responses = new ArrayList<>();
+        List<Request> remaining = new ArrayList<>(requests);
+
+        int attempt = 0;
+        while (attempt < MAX_ATTEMPTS && !remaining.isEmpty()) {
+            int answered = responses.size();
+            try {
+                ensureConnected();
+                for (Request request : remaining) {
+                    sendRequest(request);
+                }
+                outputStream.flush();
+
+                while (!remaining.isEmpty()) {
+                    Response response = getResponse();
+                    responses.add(response);
+                    remaining.remove(0);
+                    if (closeIfRequested(response)) {
+                        break; // the rest was not read by the server, send it again
+                    }
+                }
+            } catch (SocketTimeoutException | SocketException | EOFException e) {
+                System.err.println("Communication error (attempt " + (attempt + 1) + "/" + MAX_ATTEMPTS + "): " + e.getMessage());
                 stop();
             }
+            // only a connection that answered nothing counts as a failed attempt
+            attempt = responses.size() > answered ? 0 : attempt + 1;
+        }
+
+        if (!remaining.isEmpty()) {
+            throw new IOException(remaining.size() + " pipelined requests got no response");
         }
+        return responses;
     }
-        
-    
 
     /*
      * A helper method to send a pre-constructed Request object over the socket.
      * will have Lamport clock logic
+     * The request is only buffered, the caller flushes once it has written everything it wants to send.
      */
     protected void sendRequest(Request request) throws IOException {
-        try {
-            clock.increment();
+        clock.increment();
 
-            // add newly incremented clock val to header of request
-            request.getHeaders().put("Lamport-Clock", String.valueOf(clock.get()));
+        // add newly incremented clock val to header of request
+        request.getHeaders().put("Lamport-Clock", String.valueOf(clock.get()));
 
-            // serialise: to be sent over the network to server
-            outputStream.writeObject(request);
-            outputStream.flush();
-            System.out.println("Sent request at logical time: " + clock.get());
+        byte[] body = request.getBody() == null ? new byte[0] : request.getBody().getBytes(StandardCharsets.UTF_8);
+
+        /*
+         * Example format:
+         *  PUT /weather/IDS60901 HTTP/1.1
+            Host: localhost:4567
+            Content-Length: 53
 
-        } catch (Exception e) {
-            System.err.println("Cannot send Request: " + e);
+            {"location":"London","temperature":22.5,"wind_speed":15}
+         */
+        StringBuilder head = new StringBuilder();
+        head.append(request.getMethod()).append(' ').append(request.getPath()).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(hostname).append(':').append(port).append("\r\n");
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!header.getKey().equals("Content-Length")) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        // the length in bytes, so the server knows where this request ends and the next one starts
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("\r\n");
+
+        outputStream.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        outputStream.write(body);
+        if (verbose) {
+            System.out.println("Sent request at logical time: " + clock.get());
         }
-        
     }
 
     /*
      * A helper method to read a Response from the server's input stream. This is where the client will update its Lamport clock based on the timestamp received from the server.
      */
-    protected Response getResponse() throws IOException, ClassNotFoundException {
-        // wait for and read the response object from the server
-        Response response = (Response) inputStream.readObject();
+    protected Response getResponse() throws IOException {
+        // wait for and read the status line, e.g. "HTTP/1.1 200 OK"
+        String statusLine = readLine();
+        if (statusLine == null) {
+            throw new EOFException("Server closed the connection");
+        }
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2) {
+            throw new IOException("Invalid status line: " + statusLine);
+        }
+        Response response = toResponse(Integer.parseInt(parts[1]));
+
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            String[] headerParts = line.split(": ", 2);
+            if (headerParts.length == 2) {
+                response.addHeaders(headerParts[0], headerParts[1]);
+            }
+        }
+
+        String contentLength = response.getHeaders().get("Content-Length");
+        String transferEncoding = response.getHeaders().get("Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.trim().equalsIgnoreCase("chunked")) {
+            // streamed body (e.g. /weather/export): "<size in hex>\r\n<data>\r\n" ... until a zero-size chunk
+            response.setBody(new String(readChunkedBody(), StandardCharsets.UTF_8));
+        } else if (contentLength != null) {
+            int length = Integer.parseInt(contentLength.trim());
+            byte[] body = inputStream.readNBytes(length);
+            if (body.length < length) {
+                throw new EOFException("Server closed the connection in the middle of a response");
+            }
+            response.setBody(new String(body, StandardCharsets.UTF_8));
+        }
 
         String lamportHeader = response.getHeaders().get("Lamport-Clock");
         if (lamportHeader != null) {
             // get the server's Lamport Clock from the response header
-            int receivedClock = Integer.parseInt(lamportHeader);
-            // update the local clock to match 
+            long receivedClock = Long.parseLong(lamportHeader);
+            // update the local clock to match
             clock.update(receivedClock);
-            System.out.println("Received response. Update clock to: " + clock.get());
+            if (verbose) {
+                System.out.println("Received response. Update clock to: " + clock.get());
+            }
 
         } else {
             System.err.println("ERROR: Received response without a Lamport clock header. Local clock not updated.");
@@ -148,6 +281,69 @@ public abstract class AbstractClient {
         return response;
     }
 
+    private byte[] readChunkedBody() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            String sizeLine = readLine();
+            if (sizeLine == null) {
+                throw new EOFException("Server closed the connection in the middle of a response");
+            }
+            int extension = sizeLine.indexOf(';');
+            int size = Integer.parseInt((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+            if (size == 0) {
+                // skip the (normally empty) trailer section
+                String line;
+                while ((line = readLine()) != null && !line.isEmpty()) {
+                    // trailer fields are not used
+                }
+                return body.toByteArray();
+            }
+            byte[] chunk = inputStream.readNBytes(size);
+            if (chunk.length < size) {
+                throw new EOFException("Server closed the connection in the middle of a response");
+            }
+            body.write(chunk);
+            readLine(); // the line ending after the chunk data
+        }
+    }
+
+    private static Response toResponse(int code) {
+        try {
+            return new Response(StatusCode.fromCode(code));
+        } catch (IllegalArgumentException e) {
+            // a code this client has no constant for, keep the number
+            Response response = new Response(StatusCode.BAD_REQUEST);
+            response.setStatus(code);
+            return response;
+        }
+    }
+
+    // one header line in bytes, without the line ending. null at the end of the stream
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = inputStream.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /*
+     * Drop the connection when the server said it will close it, so the next request reconnects.
+     */
+    private boolean closeIfRequested(Response response) {
+        String connection = response.getHeaders().get("Connection");
+        if (connection != null && connection.trim().equalsIgnoreCase("close")) {
+            stop();
+            return true;
+        }
+        return false;
+    }
+
     /*
      * A method to gracefully close the socket connection and clean up resources.
      */
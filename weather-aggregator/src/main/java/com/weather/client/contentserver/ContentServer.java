@@ -2,7 +2,13 @@ package com.weather.client.contentserver;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -12,17 +18,33 @@ import com.weather.http.Request;
 import com.weather.http.Response;
 
 public class ContentServer extends AbstractClient {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     public String id;
     String dir = "src/main/java/client/contentserver/data";
     private final String fileName;
+    // more than one file: all stations are sent in one batch PUT /weather/
+    private final List<String> batchFileNames;
+    // ids of the stations in the last request built, for the keep-alive touches in watch mode
+    private final List<String> stationIds = new ArrayList<>();
 
     public ContentServer(String hostname, int port, String fileName) {
         super(hostname, port);
         this.fileName = fileName;
+        this.batchFileNames = null;
+    }
+
+    public ContentServer(String hostname, int port, List<String> fileNames) {
+        super(hostname, port);
+        this.fileName = fileNames.get(0);
+        this.batchFileNames = fileNames.size() > 1 ? fileNames : null;
     }
 
     @Override
     protected Request createRequest() {
+        if (batchFileNames != null) {
+            return createBatchRequest();
+        }
         String jsonBody = "";
 
         try {
@@ -44,15 +66,144 @@ public class ContentServer extends AbstractClient {
         }
 
         // build the request 
+        Request request = buildRequest(this.id, jsonBody);
+        stationIds.clear();
+        stationIds.add(this.id);
+
+        return request;
+    }
+
+    /*
+     * PUT /weather/<stationId> with the station's JSON
+     */
+    public static Request buildRequest(String stationId, String jsonBody) {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Content-Length", String.valueOf(jsonBody.getBytes(StandardCharsets.UTF_8).length));
+        headers.put("Station-Id", stationId);
+        return new Request("PUT", "/weather/" + stationId, jsonBody, headers);
+    }
+
+    /*
+     * The JSON a station file is sent as: every key:value line as a string field
+     */
+    public static String toJson(Map<String, String> station) throws JsonProcessingException {
+        return MAPPER.writeValueAsString(station);
+    }
+
+    /*
+     * One PUT /weather/ with a JSON array of every station file, so the server logs and applies them together.
+     * The response body lists the status of each station.
+     */
+    private Request createBatchRequest() {
+        List<Map<String, String>> stations = new ArrayList<>();
+        try {
+            for (String name : batchFileNames) {
+                stations.add(readStation(name));
+            }
+        } catch (FileNotFoundException e) {
+            System.err.println("ERROR: Fail to load data, File not found");
+            return null;
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return null;
+        }
+
+        String jsonBody;
+        try {
+            jsonBody = MAPPER.writeValueAsString(stations);
+        } catch (JsonProcessingException e) {
+            System.err.println("ERROR: Failed to process JSON data." + e.getMessage());
+            return null;
+        }
+
         HashMap<String, String> headers = new HashMap<>();
         headers.put("Content-Type", "application/json");
         headers.put("Content-Length", String.valueOf(jsonBody.getBytes().length));
-        headers.put("Station-Id", this.id);
+        stationIds.clear();
+        for (Map<String, String> station : stations) {
+            stationIds.add(station.get("id"));
+        }
+        return new Request("PUT", "/weather/", jsonBody, headers);
+    }
 
-        // build the request 
-        Request request = new Request("PUT", "/weather/" + this.id, jsonBody, headers);
+    /*
+     * Watch mode: keep running and keep the station(s) alive on the server over one persistent connection.
+     *  - every pollMillis the data file(s) are checked by modification time and size. Only when one changed is
+     *    it read again, and the PUT is only sent if the resulting body differs from the last one uploaded
+     *    (saving a file without changes sends nothing)
+     *  - when nothing was sent for touchMillis, a POST /weather/<id>/touch per station restarts the server's
+     *    expiry clock without sending the data again. touchMillis must be below the server's expiry time.
+     *    If the server no longer has a station (404) the full data is uploaded again on the next poll.
+     * Runs until the process is stopped.
+     */
+    public void watch(long pollMillis, long touchMillis) throws InterruptedException {
+        Map<String, String> stamps = null;
+        String lastBody = null;
+        long lastSent = 0;
 
-        return request;
+        while (true) {
+            Map<String, String> current = fileStamps();
+            long now = System.currentTimeMillis();
+
+            if (!current.equals(stamps)) {
+                stamps = current;
+                Request request = createRequest();
+                if (request != null && !request.getBody().equals(lastBody)) {
+                    Response response = send(request);
+                    if (response != null && response.getStatusCode() == 200) {
+                        showResponse(response);
+                        lastBody = request.getBody();
+                        lastSent = now;
+                    } else {
+                        System.err.println("ERROR: Upload failed, retrying on the next poll");
+                        stamps = null;
+                    }
+                }
+            } else if (lastBody != null && now - lastSent >= touchMillis) {
+                lastSent = now;
+                if (!touch()) {
+                    // the server lost the data (expired, restarted without it): upload everything again
+                    stamps = null;
+                    lastBody = null;
+                }
+            }
+            Thread.sleep(pollMillis);
+        }
+    }
+
+    // "modification time:size" of every watched file, a missing file maps to "missing"
+    private Map<String, String> fileStamps() {
+        Map<String, String> stamps = new HashMap<>();
+        for (String name : batchFileNames != null ? batchFileNames : List.of(fileName)) {
+            File file = new File(dir + "/" + name);
+            stamps.put(name, file.exists() ? file.lastModified() + ":" + file.length() : "missing");
+        }
+        return stamps;
+    }
+
+    /*
+     * Touch every station of the last upload, pipelined on the open connection.
+     * return false unless the server still had all of them
+     */
+    private boolean touch() {
+        List<Request> requests = new ArrayList<>();
+        for (String stationId : stationIds) {
+            requests.add(new Request("POST", "/weather/" + stationId + "/touch", "", new HashMap<>()));
+        }
+        try {
+            for (Response response : pipeline(requests)) {
+                if (response.getStatusCode() != 200) {
+                    System.out.println("Station no longer on the server, uploading again");
+                    return false;
+                }
+            }
+            System.out.println("Keep-alive sent for " + stationIds.size() + " station(s)");
+            return true;
+        } catch (IOException | InterruptedException e) {
+            System.err.println("ERROR: Keep-alive failed: " + e.getMessage());
+            return false;
+        }
     }
 
     @Override
@@ -90,9 +241,18 @@ public class ContentServer extends AbstractClient {
             System.err.println("Missing file path data");
             return "";
         } 
-         
+
+        HashMap<String, String> weatherData = readStation(fileName);
+        this.id = weatherData.get("id");
+
+        // serialisation: send JSON String
+        return toJson(weatherData);
+    }
+
+    // key:value lines of one station file, must contain the station id
+    private HashMap<String, String> readStation(String name) throws FileNotFoundException {
         HashMap<String, String> weatherData = new HashMap<>();
-        File file = new File(dir + "/" + fileName);
+        File file = new File(dir + "/" + name);
 
         try (Scanner reader = new Scanner(file)){
             while (reader.hasNextLine()) {
@@ -108,18 +268,11 @@ public class ContentServer extends AbstractClient {
                 }
             }
 
-            if (weatherData.containsKey("id")) {
-                this.id = weatherData.get("id");
-            } else {
+            if (!weatherData.containsKey("id")) {
                 throw new IllegalArgumentException("Input missing id");
             }
-            
         }
-
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        // serialisation: send JSON String
-        return objectMapper.writeValueAsString(weatherData);
+        return weatherData;
     }
 
     /*
@@ -131,8 +284,9 @@ public class ContentServer extends AbstractClient {
     }
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.err.println("Not appropriate command line input. Follow this usage: ContentServer <hostname:port> <filepath>");
+        final String usage = "ContentServer <hostname:port> <filepath> [<filepath>...] [--watch] [--interval=ms] [--touch-interval=ms]";
+        if (args.length < 2) {
+            System.err.println("Not appropriate command line input. Follow this usage: " + usage);
             return;
         }
 
@@ -141,13 +295,37 @@ public class ContentServer extends AbstractClient {
             String hostname = path[0];
             int port = Integer.parseInt(path[1]);
 
-            String fileName = args[1];
+            // several files are sent as one batch
+            List<String> fileNames = new ArrayList<>();
+            boolean watch = false;
+            long pollMillis = 1000;
+            long touchMillis = 10000; // well inside the server's default 30 second expiry
+            for (String arg : Arrays.asList(args).subList(1, args.length)) {
+                if (arg.equals("--watch")) {
+                    watch = true;
+                } else if (arg.startsWith("--interval=")) {
+                    pollMillis = Long.parseLong(arg.substring("--interval=".length()));
+                } else if (arg.startsWith("--touch-interval=")) {
+                    touchMillis = Long.parseLong(arg.substring("--touch-interval=".length()));
+                } else {
+                    fileNames.add(arg);
+                }
+            }
+            if (fileNames.isEmpty()) {
+                System.err.println("Not appropriate command line input. Follow this usage: " + usage);
+                return;
+            }
 
             // read the file: get the station id and weather data
-            ContentServer contentServer = new ContentServer(hostname, port, fileName);
+            ContentServer contentServer = new ContentServer(hostname, port, fileNames);
             
             // run the content server client
-            contentServer.requestAndResponse(); 
+            if (watch) {
+                contentServer.watch(pollMillis, touchMillis);
+            } else {
+                contentServer.requestAndResponse();
+            }
+            contentServer.stop();
 
         } catch (NumberFormatException e) {
             System.err.println("ERROR: Invalid port number. Please enter a valid integer.");
@@ -13,6 +13,9 @@ import com.weather.http.Response;
 
 public class GetClient extends AbstractClient {
     public String stationId;
+    // ETag and body of the last 200 response, so a repeat fetch can ask for changes only (If-None-Match)
+    private String lastETag;
+    private String lastBody;
 
     // constructor 
     public GetClient(String host_name, int port, String stationId) {
@@ -22,12 +25,20 @@ public class GetClient extends AbstractClient {
 
     @Override
     protected Request createRequest() {
+        return buildRequest(this.stationId, lastETag);
+    }
+
+    /*
+     * GET /weather/<stationId>, or every station if stationId is null or empty.
+     * etag: version the caller already has, the server then answers 304 without a body if it is unchanged (may be null)
+     */
+    public static Request buildRequest(String stationId, String etag) {
         String body = "";
 
         // Station ID is optional 
         String path;
-        if (this.stationId != null && !this.stationId.isEmpty()) {
-            path = "/weather/" + this.stationId;
+        if (stationId != null && !stationId.isEmpty()) {
+            path = "/weather/" + stationId;
         } else {
             path = "/weather/"; // request all weather data
         }
@@ -35,6 +46,10 @@ public class GetClient extends AbstractClient {
         HashMap<String,String> headers = new HashMap<>();
         // No Content-Type or Content-Length needed for a GET request
         // headers.put("Content-Type", "application/json");
+        if (etag != null) {
+            // the server answers 304 without a body if the station still has this version
+            headers.put("If-None-Match", etag);
+        }
 
         Request request = new Request("GET", path, body, headers);
         return request;
@@ -56,6 +71,16 @@ public class GetClient extends AbstractClient {
 
         System.out.println("----------------");
 
+        if (status == 304) {
+            // unchanged since the last fetch: show the copy we already have
+            System.out.println("Not modified since the last fetch");
+            body = lastBody;
+            status = 200;
+        } else if (status == 200) {
+            lastETag = headers.get("ETag");
+            lastBody = body;
+        }
+
         // check for success status
         if (status == 200) {
             System.out.println("Body:");
@@ -87,8 +112,8 @@ public class GetClient extends AbstractClient {
 
     public static void main(String[] args) {
         // check edge case 
-        if (args.length < 1 || args. length > 2) {
-            System.out.println("Please send correct format: '<hostname>:<port> <(Optional)Station ID>'");
+        if (args.length < 1 || args. length > 3) {
+            System.out.println("Please send correct format: '<hostname>:<port> <(Optional)Station ID> <(Optional)--poll=ms>'");
         }
 
         try {
@@ -97,15 +122,24 @@ public class GetClient extends AbstractClient {
             String hostname = path[0];
             int port = Integer.parseInt(path[1]);
             
-            String stationId;
-            if (args.length == 2) {
-                stationId = args[1];
-            } else {
-                stationId = null;
+            String stationId = null;
+            long pollMillis = 0; // 0: fetch once
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("--poll=")) {
+                    pollMillis = Long.parseLong(args[i].substring("--poll=".length()));
+                } else {
+                    stationId = args[i];
+                }
             }
 
             GetClient client = new GetClient(hostname, port, stationId);
             client.requestAndResponse();
+            // polling: every later fetch is conditional, so an unchanged station costs a header-only 304
+            while (pollMillis > 0) {
+                Thread.sleep(pollMillis);
+                client.requestAndResponse();
+            }
+            client.stop();
             
         } catch (Exception e) {
             System.err.println("Error parsing arguments or connecting to server.");
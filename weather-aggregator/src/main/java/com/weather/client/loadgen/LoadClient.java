@@ -0,0 +1,28 @@
+package com.weather.client.loadgen;
+
+import com.weather.client.AbstractClient;
+import com.weather.http.Request;
+import com.weather.http.Response;
+
+/*
+ * One persistent connection of the load generator. Requests are built by the caller with the
+ * GetClient / ContentServer builders and sent with AbstractClient.send(), retries and Lamport clock included,
+ * only without the per-request console output.
+ */
+public class LoadClient extends AbstractClient {
+
+    public LoadClient(String hostname, int port) {
+        super(hostname, port);
+        this.verbose = false;
+    }
+
+    @Override
+    protected Request createRequest() {
+        return null; // every request comes from the generator
+    }
+
+    @Override
+    protected void showResponse(Response response) {
+        // the generator only counts responses
+    }
+}
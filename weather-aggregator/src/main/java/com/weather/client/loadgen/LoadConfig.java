@@ -0,0 +1,131 @@
+package com.weather.client.loadgen;
+
+/*
+ * Options of the load generator.
+ *
+ * Command line format: <hostname:port> [--option=value ...]
+ *  --mode=closed|open        closed: every connection sends its next request as soon as the last one is answered
+ *                            open: requests start at a fixed rate whether or not earlier ones were answered (default closed)
+ *  --rate=N                  open mode: requests per second over all connections (default 1000)
+ *  --connections=N           persistent connections, one thread each (default 8)
+ *  --stations=N              distinct station ids, all PUT once before the run (default 100)
+ *  --put-ratio=P             share of PUTs among the requests, 0 to 1 (default 0.1)
+ *  --duration=N              measured seconds (default 30)
+ *  --warmup=N                seconds run before measuring starts (default 5)
+ */
+public class LoadConfig {
+    public enum Mode { CLOSED, OPEN }
+
+    private String hostname;
+    private int port;
+    private Mode mode = Mode.CLOSED;
+    private int rate = 1000;
+    private int connections = 8;
+    private int stations = 100;
+    private double putRatio = 0.1;
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+
+    /*
+     * throws IllegalArgumentException with a readable message when an argument is invalid
+     */
+    public static LoadConfig fromArgs(String[] args) {
+        if (args.length < 1 || args[0].startsWith("--")) {
+            throw new IllegalArgumentException("Missing <hostname:port>.");
+        }
+        LoadConfig config = new LoadConfig();
+        String[] address = args[0].split(":", 2);
+        if (address.length != 2) {
+            throw new IllegalArgumentException("Server must be given as <hostname:port>: " + args[0]);
+        }
+        config.hostname = address[0];
+        config.port = parseInt("port", address[1], 1);
+
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String[] option = arg.startsWith("--") ? arg.substring(2).split("=", 2) : new String[0];
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Option must be in the form --name=value: " + arg);
+            }
+            config.applyOption(option[0], option[1]);
+        }
+        return config;
+    }
+
+    private void applyOption(String name, String value) {
+        switch (name) {
+            case "mode":
+                try {
+                    this.mode = Mode.valueOf(value.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+                }
+                break;
+
+            case "rate":
+                this.rate = parseInt(name, value, 1);
+                break;
+
+            case "connections":
+                this.connections = parseInt(name, value, 1);
+                break;
+
+            case "stations":
+                this.stations = parseInt(name, value, 1);
+                break;
+
+            case "put-ratio":
+                try {
+                    this.putRatio = Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    this.putRatio = -1;
+                }
+                if (!(putRatio >= 0 && putRatio <= 1)) {
+                    throw new IllegalArgumentException("--" + name + " must be between 0 and 1: " + value);
+                }
+                break;
+
+            case "duration":
+                this.durationSeconds = parseInt(name, value, 1);
+                break;
+
+            case "warmup":
+                this.warmupSeconds = parseInt(name, value, 0);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    private static int parseInt(String name, String value, int min) {
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number >= min) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("--" + name + " must be an integer of at least " + min + ": " + value);
+    }
+
+    // getter and setter
+    public String getHostname() { return hostname; }
+
+    public int getPort() { return port; }
+
+    public Mode getMode() { return mode; }
+
+    public int getRate() { return rate; }
+
+    public int getConnections() { return connections; }
+
+    public int getStations() { return stations; }
+
+    public double getPutRatio() { return putRatio; }
+
+    public int getDurationSeconds() { return durationSeconds; }
+
+    public int getWarmupSeconds() { return warmupSeconds; }
+}
@@ -0,0 +1,239 @@
+package com.weather.client.loadgen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.weather.client.contentserver.ContentServer;
+import com.weather.client.getclient.GetClient;
+import com.weather.http.Request;
+import com.weather.http.Response;
+import com.weather.metrics.LatencyHistogram;
+
+/*
+ * Load generator for the AggregationServer: a mix of station PUTs and GETs over several persistent connections,
+ * reporting throughput and latency percentiles.
+ *
+ * Requests are built with the same builders the clients use (ContentServer.buildRequest, GetClient.buildRequest)
+ * and sent through AbstractClient, so the server sees exactly what real clients send.
+ *
+ * Two ways to drive the server:
+ *  - closed loop: each connection sends its next request as soon as the previous one is answered. Shows the
+ *    throughput the server sustains with that many clients, but a slow server also slows the clients down.
+ *  - open loop: requests are due at a fixed rate; each connection takes the next due request, waits for its time
+ *    and sends it. When the server falls behind, requests start late and their latency is counted from the time
+ *    they were due (not from when they were sent), so the queueing a real client would see is not hidden.
+ *
+ * All stations are PUT once before the run so GETs find them. The server expires stations 30 seconds after their
+ * last PUT by default: with a low put ratio and many stations, 404s in a long run are expected.
+ */
+public class LoadGenerator {
+    private static final long REPORT_INTERVAL_MILLIS = 5000;
+
+    private final LoadConfig config;
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram putLatency = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong(); // every answered request, warmup included, for progress
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong otherStatus = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong(); // no response after the client's retries
+    private final AtomicLong nextArrival = new AtomicLong(); // open loop: index of the next due request
+
+    private long startNanos;
+    private long measureStartNanos;
+    private long endNanos;
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+    }
+
+    public void run() throws InterruptedException {
+        List<LoadClient> clients = new ArrayList<>();
+        for (int i = 0; i < config.getConnections(); i++) {
+            clients.add(new LoadClient(config.getHostname(), config.getPort()));
+        }
+
+        // 1. every station gets data, spread over the connections
+        System.out.println("Loading " + config.getStations() + " stations...");
+        runOnEach(clients, (client, index) -> {
+            for (int station = index; station < config.getStations(); station += clients.size()) {
+                client.send(putRequest(station));
+            }
+        });
+
+        // 2. the measured run
+        startNanos = System.nanoTime();
+        measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+        endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        System.out.println(describe());
+
+        Thread reporter = new Thread(this::reportProgress, "loadgen-progress");
+        reporter.setDaemon(true);
+        reporter.start();
+        runOnEach(clients, (client, index) -> drive(client));
+        reporter.interrupt();
+
+        for (LoadClient client : clients) {
+            client.stop();
+        }
+        printReport();
+    }
+
+    private interface ClientTask {
+        void run(LoadClient client, int index);
+    }
+
+    // one thread per connection, returns when all are done
+    private static void runOnEach(List<LoadClient> clients, ClientTask task) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            LoadClient client = clients.get(i);
+            int index = i;
+            Thread thread = new Thread(() -> task.run(client, index), "loadgen-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /*
+     * Send requests on one connection until the run is over.
+     */
+    private void drive(LoadClient client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRate();
+
+        while (true) {
+            long due;
+            if (config.getMode() == LoadConfig.Mode.OPEN) {
+                due = startNanos + nextArrival.getAndIncrement() * intervalNanos;
+                if (due >= endNanos) {
+                    return;
+                }
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                due = System.nanoTime();
+                if (due >= endNanos) {
+                    return;
+                }
+            }
+
+            int station = random.nextInt(config.getStations());
+            boolean put = random.nextDouble() < config.getPutRatio();
+            Request request = put ? putRequest(station) : GetClient.buildRequest(stationId(station), null);
+            Response response = client.send(request);
+            long done = System.nanoTime();
+            completed.incrementAndGet();
+
+            if (due < measureStartNanos) {
+                continue; // warmup
+            }
+            (put ? putLatency : getLatency).record(done - due);
+            if (response == null) {
+                failed.incrementAndGet();
+            } else if (response.getStatusCode() == 404) {
+                notFound.incrementAndGet();
+            } else if (response.getStatusCode() >= 300 && response.getStatusCode() != 304) {
+                otherStatus.incrementAndGet();
+            }
+        }
+    }
+
+    private static String stationId(int station) {
+        return String.format("LOAD%05d", station);
+    }
+
+    // a station record like the ContentServer's data files, with fresh readings every time
+    private static Request putRequest(int station) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = stationId(station);
+        HashMap<String, String> data = new HashMap<>();
+        data.put("id", id);
+        data.put("name", "Load test station " + station);
+        data.put("state", "SA");
+        data.put("time_zone", "CST");
+        data.put("lat", "-34.9");
+        data.put("lon", "138.6");
+        data.put("local_date_time_full", String.valueOf(System.currentTimeMillis()));
+        data.put("air_temp", String.format(Locale.ROOT, "%.1f", 5 + random.nextDouble() * 30));
+        data.put("apparent_t", String.format(Locale.ROOT, "%.1f", 3 + random.nextDouble() * 30));
+        data.put("cloud", "Partly cloudy");
+        data.put("rel_hum", String.valueOf(20 + random.nextInt(80)));
+        data.put("wind_dir", "S");
+        data.put("wind_spd_kmh", String.valueOf(random.nextInt(60)));
+        try {
+            return ContentServer.buildRequest(id, ContentServer.toJson(data));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode station " + id, e); // a map of strings always encodes
+        }
+    }
+
+    private String describe() {
+        String drive = config.getMode() == LoadConfig.Mode.OPEN ? "open loop at " + config.getRate() + " req/s" : "closed loop";
+        return String.format("Load: %s, %d connections, %d stations, %.0f%% PUT, %ds measured after %ds warmup",
+                drive, config.getConnections(), config.getStations(), config.getPutRatio() * 100,
+                config.getDurationSeconds(), config.getWarmupSeconds());
+    }
+
+    private void reportProgress() {
+        long last = 0;
+        try {
+            while (true) {
+                Thread.sleep(REPORT_INTERVAL_MILLIS);
+                long now = completed.get();
+                long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+                System.out.printf("  %3ds  %8.1f req/s%n", elapsed, (now - last) * 1000.0 / REPORT_INTERVAL_MILLIS);
+                last = now;
+            }
+        } catch (InterruptedException e) {
+            // run is over
+        }
+    }
+
+    private void printReport() {
+        LatencyHistogram all = new LatencyHistogram();
+        all.add(getLatency);
+        all.add(putLatency);
+        double seconds = config.getDurationSeconds();
+
+        System.out.println("----------------");
+        System.out.printf("Requests: %d in %.0fs = %.1f req/s (GET %.1f/s, PUT %.1f/s)%n",
+                all.getCount(), seconds, all.getCount() / seconds, getLatency.getCount() / seconds, putLatency.getCount() / seconds);
+        if (config.getMode() == LoadConfig.Mode.OPEN && all.getCount() < config.getRate() * seconds * 0.99) {
+            System.out.println("The server (or this generator) did not keep up with the target rate of " + config.getRate() + " req/s.");
+        }
+        System.out.println("Errors: " + failed.get() + " failed, " + notFound.get() + " not found (404), " + otherStatus.get() + " other non-2xx");
+        System.out.println("Latency (" + (config.getMode() == LoadConfig.Mode.OPEN ? "from the time each request was due" : "per request") + "):");
+        System.out.println("  GET  " + getLatency.summary());
+        System.out.println("  PUT  " + putLatency.summary());
+        System.out.println("  ALL  " + all.summary());
+    }
+
+    public static void main(String[] args) {
+        LoadConfig config;
+        try {
+            config = LoadConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage() + " Usage: LoadGenerator <hostname:port> [--mode=closed|open] [--rate=N]"
+                    + " [--connections=N] [--stations=N] [--put-ratio=P] [--duration=s] [--warmup=s]");
+            return;
+        }
+
+        try {
+            new LoadGenerator(config).run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
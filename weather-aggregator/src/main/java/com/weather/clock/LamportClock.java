@@ -1,26 +1,87 @@
 package com.weather.clock;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
+/*
+ * Logical clock shared by the listener (updateAndGet on every request) and the handlers (get for every response).
+ * The value is a 64-bit AtomicLong updated with compare-and-set, so no thread waits on a monitor and it does not
+ * overflow in a long-running server.
+ *
+ * Two modes, both with the Lamport rule: a new value is above the local clock and above the value received.
+ *  - LAMPORT: a plain counter, max(local, received) + 1
+ *  - HYBRID:  hybrid logical clock. The value is the wall clock in epoch milliseconds shifted left by 16 bits,
+ *             plus a logical counter for events within the same millisecond (or while the clock is ahead of
+ *             the wall clock). The value still only grows, but it also tells roughly when it was assigned, so
+ *             WAL records and ETags sort by real time across servers. wallMillis() gets the time back.
+ *
+ * The Lamport-Clock header carries the value as a decimal number in both modes. A client that only does
+ * max + 1 keeps working, its values just stay below the server's.
+ *
+ * A received value above MAX_RECEIVED_TIME (e.g. 9223372036854775807) would leave no room to count on and
+ * max + count would wrap to a negative value. The server answers such a header with 400 before it gets here;
+ * any other caller has it clamped to MAX_RECEIVED_TIME, which still leaves 2^62 values to hand out.
+ */
 public class LamportClock implements Serializable {
-    private int time = 0;
+    public enum Mode {
+        LAMPORT, HYBRID
+    }
+
+    private static final int LOGICAL_BITS = 16; // hybrid: 65536 values per millisecond before it runs ahead
+    public static final long MAX_RECEIVED_TIME = Long.MAX_VALUE >> 1; // far above any hybrid value (below 2^57 until 2039)
 
-    public LamportClock() {}
+    private final AtomicLong time = new AtomicLong();
+    private final Mode mode;
+
+    public LamportClock() {
+        this(Mode.LAMPORT);
+    }
 
-    public synchronized int get() {
-        return time;
+    public LamportClock(Mode mode) {
+        this.mode = mode;
     }
 
-    public synchronized void update(int receivedTime) {
-        this.time = Math.max(this.time, receivedTime) + 1;
+    public long get() {
+        return time.get();
     }
 
-    public synchronized void increment() {
-        this.time++;
+    public void update(long receivedTime) {
+        updateAndReserve(receivedTime, 1);
     }
-    public synchronized int updateAndGet(int time) {
-        update(time);
-        return this.get();
+
+    public void increment() {
+        updateAndReserve(0, 1);
+    }
+
+    public long updateAndGet(long time) {
+        return updateAndReserve(time, 1);
+    }
+
+    /*
+     * Like updateAndGet, but hands out count consecutive values at once (one per station of a batch PUT).
+     * return the first of them
+     */
+    public long updateAndReserve(long receivedTime, int count) {
+        long received = Math.min(receivedTime, MAX_RECEIVED_TIME);
+        while (true) {
+            long current = time.get();
+            long next = Math.max(current, received) + count;
+            if (mode == Mode.HYBRID) {
+                // the wall clock wins when it is ahead, the logical counter then starts again from 0
+                next = Math.max(next, (System.currentTimeMillis() << LOGICAL_BITS) + count - 1);
+            }
+            if (time.compareAndSet(current, next)) {
+                return next - count + 1;
+            }
+        }
+    }
+
+    // hybrid: the wall clock time (epoch milliseconds) a value was assigned at, or the clock ran ahead to
+    public static long wallMillis(long hybridTime) {
+        return hybridTime >>> LOGICAL_BITS;
+    }
+
+    public Mode getMode() {
+        return mode;
     }
-    
 }
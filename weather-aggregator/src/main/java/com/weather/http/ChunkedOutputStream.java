@@ -0,0 +1,86 @@
+package com.weather.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * HTTP/1.1 chunked transfer encoding over a connection that stays open.
+ * Writes are collected in a buffer and every full buffer goes out as one chunk ("<size in hex>\r\n<data>\r\n").
+ * finish() sends the last partial chunk and the terminating zero-size chunk; it does not close the underlying
+ * stream, so a persistent connection can carry the next response.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count = 0;
+    private boolean finished = false;
+
+    public ChunkedOutputStream(OutputStream out, int chunkSize) {
+        this.out = out;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            int n = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, n);
+            count += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (count == 0) {
+            return; // a zero-size chunk would end the body
+        }
+        out.write(Integer.toHexString(count).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(buffer, 0, count);
+        out.write(CRLF);
+        count = 0;
+    }
+
+    /*
+     * Send what is buffered as a chunk. The body is not ended.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeChunk();
+        out.flush();
+    }
+
+    /*
+     * End the body. The underlying stream stays open.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        writeChunk();
+        out.write(LAST_CHUNK);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
@@ -0,0 +1,45 @@
+package com.weather.http;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A response whose status line, fixed headers and body are already encoded to bytes.
+ * Built once when the data changes (a PUT, a new station list) and then written by ResponseSender for every GET
+ * without building header strings again. Only the headers that differ per request (Lamport-Clock, Connection)
+ * are added at send time.
+ *
+ * Example head:
+ *  HTTP/1.1 200 OK\r\n
+ *  Content-Type: application/json\r\n
+ *  Content-Length: 53\r\n
+ *  ETag: "42"\r\n              (station responses only)
+ * (no blank line, ResponseSender ends the header block)
+ */
+public final class EncodedResponse {
+    private final byte[] head;
+    private final byte[] body;
+
+    private EncodedResponse(byte[] head, byte[] body) {
+        this.head = head;
+        this.body = body;
+    }
+
+    public static EncodedResponse of(StatusCode status, String contentType, String body) {
+        return of(status, contentType, body, null);
+    }
+
+    // etag: the entity tag including its quotes, e.g. "\"42\"", or null for none
+    public static EncodedResponse of(StatusCode status, String contentType, String body, String etag) {
+        byte[] bodyBytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status.getStatusCode() + " " + status + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + bodyBytes.length + "\r\n"
+                + (etag == null ? "" : "ETag: " + etag + "\r\n");
+        return new EncodedResponse(head.getBytes(StandardCharsets.UTF_8), bodyBytes);
+    }
+
+    // the arrays are shared by every send, callers must not modify them
+    public byte[] getHead() { return head; }
+
+    public byte[] getBody() { return body; }
+}
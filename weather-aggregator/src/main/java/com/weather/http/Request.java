@@ -1,13 +1,20 @@
 package com.weather.http;
 
 import java.io.Serializable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.HashMap;
+import java.util.Map;
 
 public class Request implements Serializable {
     private String method;
     private String path;
     private String body;
     private HashMap<String, String> headers;
+    // headers as parsed by the server, turned into the map above only if getHeaders() is called
+    private transient RequestHeaders rawHeaders;
+    private String version = "HTTP/1.1";
+    private transient long receivedNanos; // System.nanoTime() when the first byte arrived, 0 if not parsed by the server
 
     public Request(String method, String path, String body, HashMap<String, String> headers) {
         this.method = method;
@@ -15,11 +22,44 @@ public class Request implements Serializable {
         this.body = body; // JSON format 
         this.headers = headers;
     }
+
+    public Request(String method, String path, String body, RequestHeaders rawHeaders) {
+        this.method = method;
+        this.path = path;
+        this.body = body;
+        this.rawHeaders = rawHeaders;
+    }
+
     // getter and setter 
-    public HashMap<String, String> getHeaders() { return headers; }
+    public HashMap<String, String> getHeaders() {
+        if (headers == null) {
+            headers = rawHeaders == null ? new HashMap<>() : rawHeaders.toMap();
+            rawHeaders = null;
+        }
+        return headers;
+    }
+
+    /*
+     * Header value by case-insensitive name, null if absent. Does not build the header map.
+     */
+    public String getHeader(String name) {
+        if (headers == null) {
+            return rawHeaders == null ? null : rawHeaders.get(name);
+        }
+        String value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
 
     public void addHeaders(String key, String value) {
-        headers.put(key, value);
+        getHeaders().put(key, value);
     }
 
     public void setMethod(String method) {
@@ -39,4 +79,34 @@ public class Request implements Serializable {
     public void setPath(String path) {
         this.path = path;
     }
+
+    public long getReceivedNanos() { return receivedNanos; }
+
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+
+    public String getVersion() { return version; }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /*
+     * HTTP/1.1 connections stay open unless the client sends "Connection: close",
+     * HTTP/1.0 ones close unless it sends "Connection: keep-alive".
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if (connection != null) {
+            return !connection.trim().equalsIgnoreCase("close");
+        }
+        return !"HTTP/1.0".equalsIgnoreCase(version);
+    }
+
+    // the raw headers are not serializable, write them as the map
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getHeaders();
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,67 @@
+package com.weather.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/*
+ * The header block of a request as it came off the wire: the raw bytes plus the start and end of every name
+ * and value in them. Built by HttpRequestParser instead of a HashMap, so parsing a request does not create
+ * a String per header; a value only becomes a String when someone asks for it.
+ * Names are matched case-insensitively (ASCII), as HTTP requires.
+ */
+public final class RequestHeaders {
+    private final byte[] bytes;
+    private final int[] offsets; // per header: name start, name end, value start, value end
+    private final int count;
+
+    public RequestHeaders(byte[] bytes, int[] offsets, int count) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.count = count;
+    }
+
+    /*
+     * value of the first header with this name, null if there is none
+     */
+    public String get(String name) {
+        for (int i = 0; i < count; i++) {
+            int nameStart = offsets[i * 4];
+            int nameEnd = offsets[i * 4 + 1];
+            if (nameEnd - nameStart == name.length() && nameEquals(nameStart, name)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    private boolean nameEquals(int start, String name) {
+        for (int j = 0; j < name.length(); j++) {
+            if (toLower(bytes[start + j]) != toLower((byte) name.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    private String value(int i) {
+        return new String(bytes, offsets[i * 4 + 2], offsets[i * 4 + 3] - offsets[i * 4 + 2], StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // every header as a map, only for callers that need to change or list them
+    public HashMap<String, String> toMap() {
+        HashMap<String, String> map = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = new String(bytes, offsets[i * 4], offsets[i * 4 + 1] - offsets[i * 4], StandardCharsets.UTF_8);
+            map.putIfAbsent(name, value(i));
+        }
+        return map;
+    }
+}
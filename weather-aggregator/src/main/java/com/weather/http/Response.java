@@ -7,7 +7,11 @@ public class Response implements Serializable {
     private int statusCode;
     private String statusMessage;
     private String body; // JSON
-    private HashMap<String, String> headers;
+    private HashMap<String, String> headers = new HashMap<>();
+    // status line, fixed headers and body already in bytes (server side only), see EncodedResponse
+    private transient EncodedResponse encoded;
+    // body written while it is sent, chunked (server side only), see StreamingBody
+    private transient StreamingBody streamingBody;
 
     public Response(StatusCode code) {
         this.statusCode = code.getStatusCode();
@@ -36,4 +40,16 @@ public class Response implements Serializable {
         this.body = body;
     }
 
+    public EncodedResponse getEncoded() { return encoded; }
+
+    public void setEncoded(EncodedResponse encoded) {
+        this.encoded = encoded;
+    }
+
+    public StreamingBody getStreamingBody() { return streamingBody; }
+
+    public void setStreamingBody(StreamingBody streamingBody) {
+        this.streamingBody = streamingBody;
+    }
+
 }
@@ -2,6 +2,7 @@ package com.weather.http;
 
 public enum StatusCode {
     OK(200),
+    NOT_MODIFIED(304),
     BAD_REQUEST(400),
     NOT_FOUND(404),
     INTERNAL_SERVER_ERROR((500));
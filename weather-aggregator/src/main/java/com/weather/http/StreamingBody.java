@@ -0,0 +1,12 @@
+package com.weather.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * A response body that is produced while it is sent instead of being built in memory first (see the export route).
+ * ResponseSender frames it with chunked transfer encoding, so its length does not have to be known up front.
+ */
+public interface StreamingBody {
+    void writeTo(OutputStream out) throws IOException;
+}
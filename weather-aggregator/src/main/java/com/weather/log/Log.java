@@ -0,0 +1,174 @@
+package com.weather.log;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Asynchronous leveled logging for the request path.
+ *
+ * A System.out.println takes the PrintStream lock and writes to the terminal on the calling thread, so a
+ * listener or consumer thread waits for the console on every request. Log.info() etc. only put the message
+ * into a bounded ring buffer; one background thread ("log-writer") takes them out in order and prints them
+ * in batches, DEBUG and INFO to System.out, WARN and ERROR to System.err (same streams as before).
+ *
+ * The ring buffer is lock-free for any number of logging threads: a thread claims a slot by moving the tail
+ * with a CAS and then publishes its message into the slot, the writer empties slots from the head. When the
+ * buffer is full the message is dropped and counted instead of making the caller wait; the writer prints how
+ * many were dropped, and /metrics reports the total.
+ *
+ * Messages below the level (default INFO, --log-level) are discarded before they are queued.
+ */
+public final class Log {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int CAPACITY = 8192; // power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final class Entry {
+        final Level level;
+        final String message;
+
+        Entry(Level level, String message) {
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    private static final AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong(); // next slot to claim, moved by the logging threads
+    private static final AtomicLong head = new AtomicLong(); // next slot to print, moved by the writer only
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long printed;                    // every slot before this is on the console
+    private static volatile Level level = Level.INFO;
+    private static volatile boolean writerParked;
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(Log::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private Log() {}
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    // to skip building a message that would be discarded anyway
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void log(Level messageLevel, String message) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+
+        long slot;
+        do {
+            slot = tail.get();
+            if (slot - head.get() >= CAPACITY) {
+                dropped.incrementAndGet(); // full, the caller never waits for the console
+                return;
+            }
+        } while (!tail.compareAndSet(slot, slot + 1));
+
+        slots.set((int) slot & MASK, new Entry(messageLevel, message));
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /*
+     * Writer thread: print everything published so far in one batch per stream, then wait for more.
+     * A claimed slot whose message is not set yet stops the batch, so messages come out in claim order.
+     */
+    private static void drain() {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        long reportedDrops = 0;
+
+        while (true) {
+            long start = head.get();
+            long next = start;
+            Entry entry;
+            while (next - start < CAPACITY && (entry = slots.get((int) next & MASK)) != null) {
+                slots.set((int) next & MASK, null);
+                next++;
+                head.set(next); // frees the slot for the logging threads
+                (entry.level.compareTo(Level.WARN) >= 0 ? err : out).append(entry.message).append(System.lineSeparator());
+            }
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                err.append("WARNING: ").append(drops - reportedDrops).append(" log messages dropped, the log buffer was full")
+                        .append(System.lineSeparator());
+                reportedDrops = drops;
+            }
+
+            if (out.length() > 0) {
+                write(System.out, out);
+            }
+            if (err.length() > 0) {
+                write(System.err, err);
+            }
+            printed = next;
+
+            // park until a logging thread unparks us; the flag is set before checking, so no message is missed
+            writerParked = true;
+            if (slots.get((int) head.get() & MASK) == null) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+    }
+
+    private static void write(PrintStream stream, StringBuilder text) {
+        stream.print(text);
+        stream.flush();
+        text.setLength(0);
+    }
+
+    /*
+     * Wait (at most timeoutMillis) until everything logged so far is printed, e.g. before the JVM exits.
+     */
+    public static void flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (printed < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    // getter and setter
+    public static Level getLevel() { return level; }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static long getDropped() { return dropped.get(); }
+
+    // messages waiting for the writer
+    public static long getPending() { return tail.get() - head.get(); }
+}
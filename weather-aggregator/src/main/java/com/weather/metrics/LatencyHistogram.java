@@ -0,0 +1,132 @@
+package com.weather.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Latency histogram in the style of HdrHistogram: log-linear buckets with a fixed relative precision.
+ *
+ * Values (nanoseconds) below 128 get a bucket each. Above that every power of two is split into 64 buckets,
+ * so a bucket is never wider than 1/64 (about 1.6%) of the values in it. Values up to one hour are tracked,
+ * larger ones count as one hour. The whole range takes about 2400 counters.
+ *
+ * record() is lock-free and allocates nothing, so it can sit on a hot path shared by many threads.
+ * Percentiles are read without stopping the writers; a report taken while they run may be off by the
+ * handful of values recorded during the read.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR = 128;     // values below this get their own bucket
+    private static final int SUB_BUCKETS = 64; // buckets per power of two above that
+    private static final long HIGHEST = TimeUnit.HOURS.toNanos(1);
+    private static final int BUCKETS = index(HIGHEST) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), HIGHEST);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // another thread raised the max meanwhile, check again
+        }
+    }
+
+    // elapsed time since a System.nanoTime() start
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        // keep the top 7 bits: value >>> shift is in [64, 128)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        long top = value >>> shift;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (top - SUB_BUCKETS);
+    }
+
+    // largest value that falls in the bucket
+    private static long highestValue(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long top = SUB_BUCKETS + (index - LINEAR) % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /*
+     * Value at the given percentile (0-100) in nanoseconds, 0 if nothing was recorded.
+     * Like HdrHistogram it is the top of the bucket, so never below the real value.
+     */
+    public long percentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /*
+     * Add everything recorded in another histogram, e.g. to combine per-thread ones for a report.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long value = other.counts.get(i);
+            if (value != 0) {
+                counts.addAndGet(i, value);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long current;
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+            // retry
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // "n=1200 mean=0.41ms p50=0.38ms p90=0.52ms p99=1.10ms p99.9=3.20ms max=4.01ms"
+    public String summary() {
+        return String.format("n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                getCount(), getMean() / 1e6, percentile(50) / 1e6, percentile(90) / 1e6,
+                percentile(99) / 1e6, percentile(99.9) / 1e6, getMax() / 1e6);
+    }
+}
@@ -1,19 +1,27 @@
 package com.weather.server;
 
 import com.weather.clock.LamportClock;
+import com.weather.http.Request;
+import com.weather.http.Response;
+import com.weather.http.StatusCode;
+import com.weather.log.Log;
 import com.weather.server.handler.DataExpirer;
+import com.weather.server.handler.NioRequestListener;
 import com.weather.server.handler.RequestHandler;
 import com.weather.server.handler.RequestListener;
+import com.weather.server.handler.VirtualThreadListener;
 import com.weather.server.helper.*;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.util.Comparator;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /*
@@ -24,62 +32,124 @@ import java.util.concurrent.TimeUnit;
  */
 public class AggregationServer implements Runnable {
     private volatile boolean isRunning = true;
+    private final ServerConfig config;
     private int port; // default = 4567 
-    private PriorityBlockingQueue<RequestNode> requestQueue; // store both PUT and GET request
+    private RequestLanes requestLanes; // store both PUT and GET request, one ordered queue per lane
     private LamportClock clock;
     private ConcurrentHashMap<String, ExpirableData> weatherData; 
     private ServerSocket serverSocket;
-    private final Semaphore fileLock;
 
     
     private Storage storage; // for persistence storage
+    private final StationTable stationTable; // typed values of every station's latest PUT
+    private final StationStats stationStats; // aggregates of the configured fields over all live stations
+    private final StationHistory stationHistory; // last observations of every station
+    private final Recovery recovery; // crash recovery state, runs in the background after startup
+    private final StationListCache stationListCache; // encoded GET /weather/ response
+    private final DataExpirer dataExpirer; // removes stations that stopped sending updates
+    private final StationSubscriptions stationSubscriptions = new StationSubscriptions(); // parked long-poll GETs
+    private final ServerMetrics metrics = new ServerMetrics(); // per-stage latencies for GET /metrics
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
     public AggregationServer(int port) {
-        this.port = port;
-        this.requestQueue = new PriorityBlockingQueue<RequestNode>(11, Comparator.comparingLong(request -> request.getLamportClockValue()));
-        this.clock = new LamportClock();
+        this(new ServerConfig(port));
+    }
+
+    public AggregationServer(ServerConfig config) {
+        this.config = config;
+        this.port = config.getPort();
+        Log.setLevel(config.getLogLevel());
+        this.requestLanes = new RequestLanes(config.getLaneCount());
+        this.clock = new LamportClock(config.getClockMode());
         this.weatherData = new ConcurrentHashMap<>();
-        this.fileLock = new Semaphore(1, true); // ensure only 1 thread writing to the Storage
-        this.storage = new Storage(this, this.fileLock);
+        this.stationTable = new StationTable();
+        this.stationStats = new StationStats(stationTable, config.getStatsFields());
+        this.stationHistory = new StationHistory(config.getHistorySize());
+        this.recovery = new Recovery(weatherData, stationTable, stationHistory);
+        this.stationListCache = new StationListCache(weatherData, recovery);
+        this.dataExpirer = new DataExpirer(weatherData, stationListCache, stationTable, stationHistory,
+                TimeUnit.SECONDS.toMillis(config.getExpirySeconds()), config.getExpiryPrecisionMillis());
+        this.storage = new Storage(this);
     }
 
     @Override
     public void run() {
-        System.out.println("Starting Aggregation Server on port " + this.port + "...");
+        System.out.println("Starting Aggregation Server on port " + this.port + " (" + config.getListenerMode() + " listener, "
+                + config.getClockMode() + " clock)...");
 
         try {
-            this.serverSocket = new ServerSocket(this.port);
+            ServerSocketChannel serverChannel = null;
+            if (config.getListenerMode() == ServerConfig.ListenerMode.NIO) {
+                // the channel's socket adaptor is kept in serverSocket so close() works the same for both modes
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(this.port));
+                this.serverSocket = serverChannel.socket();
+            } else {
+                this.serverSocket = new ServerSocket(this.port);
+            }
+
+            // perform crash recovery in the background, the listener starts taking requests right away
+            Thread recoveryThread = new Thread(() -> {
+                try {
+                    storage.loadAndRecover(recovery);
+                    // recovered stations expire like any other, counting from now
+                    dataExpirer.trackAll();
+                } catch (IOException e) {
+                    Log.error("Crash recovery failed: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "recovery");
+            recoveryThread.start();
 
-            // perform crash recovery on startup
-            this.storage.loadAndRecover();
+            // report recovery progress until it is done
+            scheduler.scheduleAtFixedRate(() -> {
+                if (!recovery.isDone()) {
+                    Log.info(recovery.progressSummary());
+                }
+            }, 1, 1, TimeUnit.SECONDS);
 
-            // Schedule the data expiration task to run every 15 seconds
-            scheduler.scheduleAtFixedRate(new DataExpirer(weatherData, fileLock), 15, 15, TimeUnit.SECONDS);
+            // Schedule the data expiration task to run every tick of its timing wheel
+            long tick = config.getExpiryPrecisionMillis();
+            scheduler.scheduleAtFixedRate(dataExpirer, tick, tick, TimeUnit.MILLISECONDS);
             
             // Start Producer thread (Listener)
-            // RequestListener listener = new RequestListener(this, serverSocket, requestQueue);
-            RequestListener listener = new RequestListener(this, serverSocket, requestQueue, storage);
+            Runnable listener;
+            switch (config.getListenerMode()) {
+                case NIO:
+                    listener = new NioRequestListener(this, serverChannel);
+                    break;
+                case VIRTUAL:
+                    listener = new VirtualThreadListener(this, serverSocket);
+                    break;
+                default:
+                    listener = new RequestListener(this, serverSocket);
+                    break;
+            }
             new Thread(listener).start();
 
-            // start the Consumer thread.
-            Thread consumerThread = new Thread(() -> {
-            try {
-                // The main loop for the consumer thread
-                while (this.isRunning) {
-                    // Take a RequestNode from the queue when available. This call blocks until an item is available.
-                    RequestNode requestNode = requestQueue.take();
-                    // Pass the RequestNode to a handler to process it.
-                    // This creates a temporary object to handle the request logic.
-                    RequestHandler handler = new RequestHandler(requestNode, this, storage);
-                    handler.run();
+            // start one Consumer thread per lane. Each lane keeps Lamport order for its own stations
+            for (int lane = 0; lane < requestLanes.getLaneCount(); lane++) {
+                startConsumer(lane);
+            }
+
+            // checkpoint the WAL when it is due, so the log and recovery time stay bounded
+            scheduler.scheduleWithFixedDelay(storage::checkpointIfDue, 5, 5, TimeUnit.SECONDS);
+
+            // report the achieved WAL group-commit batch size and sync latency
+            scheduler.scheduleAtFixedRate(() -> Log.info(storage.getWal().statsSummary()), 60, 60, TimeUnit.SECONDS);
+
+            // report long-poll fan-out: subscribers parked, woken, and the cost of waking them
+            scheduler.scheduleAtFixedRate(() -> {
+                if (stationSubscriptions.getWaiting() > 0 || stationSubscriptions.getWoken() > 0) {
+                    Log.info(stationSubscriptions.statsSummary());
                 }
-            } catch (InterruptedException e) {
-                // Handle thread interruption
-                Thread.currentThread().interrupt();
+            }, 15, 15, TimeUnit.SECONDS);
+
+            if (requestLanes.getLaneCount() > 1) {
+                // report how evenly the stations are spread over the lanes
+                scheduler.scheduleAtFixedRate(() -> Log.info("Lane queue depths: " + Arrays.toString(requestLanes.depths())), 15, 15, TimeUnit.SECONDS);
             }
-        });
-        consumerThread.start();
 
         } catch (IOException e) {
             System.err.println("Could not listen on port " + this.port);
@@ -97,6 +167,8 @@ public class AggregationServer implements Runnable {
                 scheduler.shutdown();
             }
             isRunning = false;
+            stationSubscriptions.close();
+            storage.close();
             
         } catch (IOException  e) {
             System.err.println("ERROR: An error occurred while closing the server socket.");
@@ -104,13 +176,150 @@ public class AggregationServer implements Runnable {
         }
     }
 
+    /*
+     * Consumer thread for one lane: take the next RequestNode in Lamport order and handle it.
+     */
+    private void startConsumer(int lane) {
+        PriorityBlockingQueue<RequestNode> requestQueue = requestLanes.getLane(lane);
+        Thread consumerThread = new Thread(() -> {
+            try {
+                // The main loop for the consumer thread
+                while (this.isRunning) {
+                    // Take a RequestNode from the queue when available. This call blocks until an item is available.
+                    RequestNode requestNode = requestQueue.take();
+                    metrics.getQueueWait().recordSince(requestNode.getEnqueuedNanos());
+                    // Pass the RequestNode to a handler to process it.
+                    // This creates a temporary object to handle the request logic.
+                    RequestHandler handler = new RequestHandler(requestNode, this, storage);
+                    handler.run();
+                }
+            } catch (InterruptedException e) {
+                // Handle thread interruption
+                Thread.currentThread().interrupt();
+            }
+        }, "consumer-lane-" + lane);
+        consumerThread.start();
+    }
+
+    /*
+     * Admission step shared by every listener mode.
+     * Update the server clock from the client's Lamport-Clock header, record PUT requests in the write-ahead log
+     * and then put the RequestNode in its station's lane for the consumer threads.
+     */
+    public RequestNode enqueueRequest(Socket clientSocket, Request request) throws IOException, InterruptedException {
+        return enqueueRequest(clientSocket, request, false);
+    }
+
+    /*
+     * awaitReply: the calling thread will wait on RequestNode.awaitReply() and send the response itself,
+     * instead of the consumer thread writing to the socket
+     */
+    public RequestNode enqueueRequest(Socket clientSocket, Request request, boolean awaitReply) throws IOException, InterruptedException {
+        return enqueueRequest(clientSocket, request, awaitReply, null);
+    }
+
+    /*
+     * keepAlive: run by the consumer thread after the response is sent, to hand a persistent connection
+     * back to the listener instead of closing it (null closes the socket)
+     */
+    public RequestNode enqueueRequest(Socket clientSocket, Request request, boolean awaitReply, Runnable keepAlive) throws IOException, InterruptedException {
+        if (request.getReceivedNanos() != 0) {
+            metrics.getParse().recordSince(request.getReceivedNanos());
+        }
+
+        // GET /metrics skips the clock, the log and the lanes: it is answered on this thread, so it still
+        // comes back when the lanes are backed up or recovery is running
+        if ("GET".equals(request.getMethod()) && "/metrics".equals(request.getPath())) {
+            RequestNode requestNode = new RequestNode(clientSocket, request, clock.get(), awaitReply, keepAlive);
+            new RequestHandler(requestNode, this, storage).run();
+            return requestNode;
+        }
+
+        // Check for Lamport clock header: a value that is not a number, or too large for the clock to count on
+        // from, is answered 400 right here, before it reaches the clock or the log
+        long clientLamportValue = parseLamportHeader(request.getHeader("Lamport-Clock"));
+        if (clientLamportValue < 0) {
+            return reject(clientSocket, request, awaitReply, keepAlive);
+        }
+
+        // a single PUT must name exactly one station, /weather/<stationId>, like the GET routes do
+        boolean batchPut = "PUT".equalsIgnoreCase(request.getMethod()) && "/weather/".equals(request.getPath());
+        String putStationId = null;
+        if (!batchPut && "PUT".equalsIgnoreCase(request.getMethod())) {
+            putStationId = RequestLanes.stationPutIdOf(request.getPath());
+            if (putStationId == null) {
+                return reject(clientSocket, request, awaitReply, keepAlive);
+            }
+        }
+
+        // the clock is only restored once the log is indexed, new Lamport values must come after it
+        recovery.awaitIndexed();
+
+        // a batch PUT /weather/ gets one Lamport value per object, counted without parsing the body
+        // (the lane-0 handler parses it, so a large body never holds up the listener or selector thread)
+        int batchSize = batchPut ? PutBatch.count(request.getBody()) : 0;
+
+        // update server clock and assign new clock value for RequestNode
+        long newClockValue = batchSize > 0
+                ? this.clock.updateAndReserve(clientLamportValue, batchSize)
+                : this.clock.updateAndGet(clientLamportValue);
+
+        // add Storage logic for PUT request: record the request before put in the request queue
+        // a batch is logged as it was sent, its first object has the request's value
+        if (batchSize > 0) {
+            this.storage.logPutBatch(String.valueOf(newClockValue), request.getBody());
+        }
+        // the station id is the one the handler stores the data under (RequestLanes.stationPutIdOf), so recovery
+        // restores it to the right station; a reserved id is rejected by the handler, so there is nothing to recover
+        if (putStationId != null && !RequestHandler.isReservedStationId(putStationId)) {
+            this.storage.logPutRequest(String.valueOf(newClockValue), putStationId, request.getBody());
+        }
+
+        // Create a RequestNode with new timestamp and add it to the shared queue
+        RequestNode requestNode = new RequestNode(clientSocket, request, newClockValue, awaitReply, keepAlive);
+        requestNode.setBatchSize(batchSize);
+        requestLanes.put(requestNode);
+        return requestNode;
+    }
+
+    /*
+     * Lamport-Clock header value, 0 without the header, -1 if it is not a number from 0 to
+     * LamportClock.MAX_RECEIVED_TIME (a larger one would overflow the clock)
+     */
+    public static long parseLamportHeader(String header) {
+        if (header == null) {
+            return 0;
+        }
+        try {
+            long value = Long.parseLong(header.trim());
+            return value >= 0 && value <= LamportClock.MAX_RECEIVED_TIME ? value : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // answer 400 on this thread, the request never gets a Lamport value or a place in a lane
+    private RequestNode reject(Socket clientSocket, Request request, boolean awaitReply, Runnable keepAlive) {
+        RequestNode requestNode = new RequestNode(clientSocket, request, clock.get(), awaitReply, keepAlive);
+        new RequestHandler(requestNode, this, storage).reply(new Response(StatusCode.BAD_REQUEST));
+        return requestNode;
+    }
+
     // getter and setter 
-    public ConcurrentHashMap<String, ExpirableData> getWeatherData() {
-        return weatherData;
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public ServerConfig getConfig() {
+        return config;
     }
 
-    public Semaphore getFileLock() {
-        return fileLock;
+    public RequestLanes getRequestLanes() {
+        return requestLanes;
+    }
+
+    public ConcurrentHashMap<String, ExpirableData> getWeatherData() {
+        return weatherData;
     }
 
     public LamportClock getClock () {
@@ -120,37 +329,63 @@ public class AggregationServer implements Runnable {
     public Storage getStorage() {
         return storage;
     }
+
+    public StationTable getStationTable() {
+        return stationTable;
+    }
+
+    public StationSubscriptions getStationSubscriptions() {
+        return stationSubscriptions;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public StationStats getStationStats() {
+        return stationStats;
+    }
+
+    public StationHistory getStationHistory() {
+        return stationHistory;
+    }
+
+    public Recovery getRecovery() {
+        return recovery;
+    }
+
+    public DataExpirer getDataExpirer() {
+        return dataExpirer;
+    }
+
+    public StationListCache getStationListCache() {
+        return stationListCache;
+    }
+
     public static void main(String[] args) {
-        if (args.length > 1) {
-            System.err.println("ERROR: Invalid numbers of arguments. Usage: <port number>");
-            return;
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ERROR: " + e.getMessage() + " Usage: " + ServerConfig.USAGE);
+            return; // Exit if the format is wrong
         }
 
-        int port = 4567; // default
         try {
-            if (args.length > 0) {
-                try {
-                    port = Integer.parseInt(args[0]);
-                } catch (NumberFormatException e) {
-                    System.err.println("ERROR: Invalid port number format. Please enter a valid integer.");
-                    return; // Exit if the format is wrong
-                }
-            } 
-            AggregationServer aggregationServer = new AggregationServer(port);
+            AggregationServer aggregationServer = new AggregationServer(config);
             Thread server = new Thread(aggregationServer);
             server.start();
 
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("Shutting down gracefully...");
                 aggregationServer.close();
+                Log.flush(1000); // print what the request path logged before the JVM exits
                 try {
                     server.join(); // Wait for the main server thread, the one that run AS to finish
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                 }
             }));
-        } catch (NumberFormatException e) {
-            System.err.println("ERROR: Invalid port number format. Please enter a valid integer.");
         } catch (Exception e) {
             System.err.println("An unexpected error occurred during server startup: " + e.getMessage());
             e.printStackTrace();
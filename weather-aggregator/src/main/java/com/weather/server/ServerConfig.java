@@ -0,0 +1,319 @@
+package com.weather.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.weather.clock.LamportClock;
+import com.weather.log.Log;
+import com.weather.server.helper.WriteAheadLog;
+
+/*
+ * Startup options for the AggregationServer.
+ * Command line format: <port number> [--option=value ...]
+ *
+ * Supported options:
+ *  --listener=blocking|nio|virtual   how client connections are accepted and read (default blocking)
+ *  --lanes=N                         number of station-sharded consumer lanes (default 1)
+ *  --wal-sync=always|batch|os        when WAL appends are forced to disk (default always)
+ *  --wal-batch-ms=N                  batch mode: force at least every N milliseconds (default 10)
+ *  --wal-batch-records=N             batch mode: force once N records are pending (default 256)
+ *  --checkpoint-interval=N           seconds between WAL checkpoints (default 300)
+ *  --checkpoint-log-bytes=N          also checkpoint once the log has grown by N bytes (default 16MB)
+ *  --history-size=N                  observations kept per station for GET /weather/<id>/history (default 10)
+ *  --stats-fields=a,b,...            numeric fields aggregated for GET /weather/stats (default air_temp,apparent_t,rel_hum,wind_spd_kmh)
+ *  --keep-alive-timeout=N            nio/virtual: close a persistent connection after N idle milliseconds (default 5000)
+ *  --expiry-seconds=N                remove a station N seconds after its last update (default 30)
+ *  --expiry-precision-ms=N           how late past its expiry a station may be removed, the expiry tick (default 1000)
+ *  --keep-alive-max=N                nio/virtual: close a persistent connection after N requests (default 100)
+ *  --log-level=debug|info|warn|error messages below this level are not logged (default info)
+ *  --data-dir=path                   directory of the write-ahead log and its snapshot (default data)
+ *  --clock=lamport|hybrid            server clock: a Lamport counter, or a hybrid logical clock carrying wall time (default lamport)
+ */
+public class ServerConfig {
+    public enum ListenerMode {
+        BLOCKING, // one thread accepts and parses each socket in turn (RequestListener)
+        NIO,      // a Selector reads and frames requests on non-blocking channels (NioRequestListener)
+        VIRTUAL   // one virtual thread per connection parses, waits for and sends its own response (VirtualThreadListener)
+    }
+
+    // printed with a command line error, one entry per option in the list above
+    public static final String USAGE = "<port number> [--listener=blocking|nio|virtual] [--lanes=N]"
+            + " [--wal-sync=always|batch|os] [--wal-batch-ms=N] [--wal-batch-records=N]"
+            + " [--checkpoint-interval=s] [--checkpoint-log-bytes=N] [--history-size=N] [--stats-fields=a,b]"
+            + " [--keep-alive-timeout=ms] [--keep-alive-max=N] [--expiry-seconds=N] [--expiry-precision-ms=N]"
+            + " [--log-level=debug|info|warn|error] [--clock=lamport|hybrid] [--data-dir=path]";
+
+    private int port = 4567; // default
+    private ListenerMode listenerMode = ListenerMode.BLOCKING;
+    private int laneCount = 1;
+    private WriteAheadLog.SyncMode walSyncMode = WriteAheadLog.SyncMode.ALWAYS;
+    private long walBatchMillis = 10;
+    private int walBatchRecords = 256;
+    private long checkpointIntervalSeconds = 300;
+    private long checkpointLogBytes = 16 * 1024 * 1024;
+    private long expirySeconds = 30;
+    private long expiryPrecisionMillis = 1000;
+    private int historySize = 10;
+    private List<String> statsFields = List.of("air_temp", "apparent_t", "rel_hum", "wind_spd_kmh");
+    private int keepAliveTimeoutMillis = 5000;
+    private int keepAliveMaxRequests = 100;
+    private Log.Level logLevel = Log.Level.INFO;
+    private LamportClock.Mode clockMode = LamportClock.Mode.LAMPORT;
+    private String dataDir = "data";
+
+    public ServerConfig() {}
+
+    public ServerConfig(int port) {
+        this.port = port;
+    }
+
+    /*
+     * Build the config from the command line arguments.
+     * throws IllegalArgumentException with a readable message when an argument is invalid
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+
+            if (!arg.startsWith("--")) {
+                if (i != 0) {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                }
+                try {
+                    config.port = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid port number format. Please enter a valid integer.");
+                }
+                continue;
+            }
+
+            String[] option = arg.substring(2).split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Option must be in the form --name=value: " + arg);
+            }
+            config.applyOption(option[0], option[1]);
+        }
+        return config;
+    }
+
+    private void applyOption(String name, String value) {
+        switch (name) {
+            case "listener":
+                this.listenerMode = parseEnum(ListenerMode.class, name, value);
+                break;
+
+            case "lanes":
+                this.laneCount = parsePositiveInt(name, value);
+                break;
+
+            case "wal-sync":
+                this.walSyncMode = parseEnum(WriteAheadLog.SyncMode.class, name, value);
+                break;
+
+            case "wal-batch-ms":
+                this.walBatchMillis = parsePositiveInt(name, value);
+                break;
+
+            case "wal-batch-records":
+                this.walBatchRecords = parsePositiveInt(name, value);
+                break;
+
+            case "checkpoint-interval":
+                this.checkpointIntervalSeconds = parsePositiveInt(name, value);
+                break;
+
+            case "checkpoint-log-bytes":
+                this.checkpointLogBytes = parsePositiveLong(name, value);
+                break;
+
+            case "expiry-seconds":
+                this.expirySeconds = parsePositiveInt(name, value);
+                break;
+
+            case "expiry-precision-ms":
+                this.expiryPrecisionMillis = parsePositiveInt(name, value);
+                break;
+
+            case "history-size":
+                this.historySize = parsePositiveInt(name, value);
+                break;
+
+            case "stats-fields":
+                this.statsFields = parseList(name, value);
+                break;
+
+            case "keep-alive-timeout":
+                this.keepAliveTimeoutMillis = parsePositiveInt(name, value);
+                break;
+
+            case "keep-alive-max":
+                this.keepAliveMaxRequests = parsePositiveInt(name, value);
+                break;
+
+            case "log-level":
+                this.logLevel = parseEnum(Log.Level.class, name, value);
+                break;
+
+            case "data-dir":
+                this.dataDir = value;
+                break;
+
+            case "clock":
+                this.clockMode = parseEnum(LamportClock.Mode.class, name, value);
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+        }
+    }
+
+    private static List<String> parseList(String name, String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("--" + name + " needs at least one value");
+        }
+        return items;
+    }
+
+    private static long parsePositiveLong(String name, String value) {
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("--" + name + " must be a positive integer: " + value);
+    }
+
+    private static int parsePositiveInt(String name, String value) {
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        throw new IllegalArgumentException("--" + name + " must be a positive integer: " + value);
+    }
+
+    // getter and setter
+    public int getPort() { return port; }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public ListenerMode getListenerMode() { return listenerMode; }
+
+    public void setListenerMode(ListenerMode listenerMode) {
+        this.listenerMode = listenerMode;
+    }
+
+    public int getLaneCount() { return laneCount; }
+
+    public void setLaneCount(int laneCount) {
+        this.laneCount = laneCount;
+    }
+
+    public WriteAheadLog.SyncMode getWalSyncMode() { return walSyncMode; }
+
+    public void setWalSyncMode(WriteAheadLog.SyncMode walSyncMode) {
+        this.walSyncMode = walSyncMode;
+    }
+
+    public long getWalBatchMillis() { return walBatchMillis; }
+
+    public void setWalBatchMillis(long walBatchMillis) {
+        this.walBatchMillis = walBatchMillis;
+    }
+
+    public int getWalBatchRecords() { return walBatchRecords; }
+
+    public void setWalBatchRecords(int walBatchRecords) {
+        this.walBatchRecords = walBatchRecords;
+    }
+
+    public long getCheckpointIntervalSeconds() { return checkpointIntervalSeconds; }
+
+    public void setCheckpointIntervalSeconds(long checkpointIntervalSeconds) {
+        this.checkpointIntervalSeconds = checkpointIntervalSeconds;
+    }
+
+    public long getCheckpointLogBytes() { return checkpointLogBytes; }
+
+    public void setCheckpointLogBytes(long checkpointLogBytes) {
+        this.checkpointLogBytes = checkpointLogBytes;
+    }
+
+    public long getExpirySeconds() { return expirySeconds; }
+
+    public void setExpirySeconds(long expirySeconds) {
+        this.expirySeconds = expirySeconds;
+    }
+
+    public long getExpiryPrecisionMillis() { return expiryPrecisionMillis; }
+
+    public void setExpiryPrecisionMillis(long expiryPrecisionMillis) {
+        this.expiryPrecisionMillis = expiryPrecisionMillis;
+    }
+
+    public int getHistorySize() { return historySize; }
+
+    public void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+
+    public List<String> getStatsFields() { return statsFields; }
+
+    public void setStatsFields(List<String> statsFields) {
+        this.statsFields = statsFields;
+    }
+
+    public int getKeepAliveTimeoutMillis() { return keepAliveTimeoutMillis; }
+
+    public void setKeepAliveTimeoutMillis(int keepAliveTimeoutMillis) {
+        this.keepAliveTimeoutMillis = keepAliveTimeoutMillis;
+    }
+
+    public int getKeepAliveMaxRequests() { return keepAliveMaxRequests; }
+
+    public void setKeepAliveMaxRequests(int keepAliveMaxRequests) {
+        this.keepAliveMaxRequests = keepAliveMaxRequests;
+    }
+
+    public Log.Level getLogLevel() { return logLevel; }
+
+    public void setLogLevel(Log.Level logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    public String getDataDir() { return dataDir; }
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public LamportClock.Mode getClockMode() { return clockMode; }
+
+    public void setClockMode(LamportClock.Mode clockMode) {
+        this.clockMode = clockMode;
+    }
+}
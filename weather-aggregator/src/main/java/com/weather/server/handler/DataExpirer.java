@@ -1,42 +1,150 @@
 package com.weather.server.handler;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import com.weather.log.Log;
+import com.weather.metrics.LatencyHistogram;
 import com.weather.server.helper.ExpirableData;
+import com.weather.server.helper.StationHistory;
+import com.weather.server.helper.StationListCache;
+import com.weather.server.helper.StationTable;
 
+/*
+ * Removes stations that have not been updated for the expiry time (30 seconds by default).
+ *
+ * Instead of scanning the whole map, every PUT registers its ExpirableData in a timing wheel: a ring of buckets,
+ * one per tick (the precision, 1 second by default), covering the expiry time. Each run only drains the buckets
+ * whose tick has passed, so the work is proportional to the stations that are actually due.
+ *
+ * Bucket entries are checked lazily when they come due:
+ *  - the station holds another instance (newer PUT) or is gone: the entry is dropped, the newer data has its own
+ *  - the data was touched (updateTimestamp) since it was registered: it is put back in the wheel at its new deadline
+ *  - otherwise it is removed with ConcurrentHashMap.computeIfPresent(), which only removes it if the station still
+ *    holds the same instance that was checked. A PUT that lands at the same moment wins.
+ * No global lock is taken; buckets are lock-free queues.
+ */
 public class DataExpirer implements Runnable {
-    private static final long EXPIRATION_THRESHOLD_SECOND = 30 * 1000; // 30 seconds
-    private ConcurrentHashMap<String, ExpirableData> weatherData;
-    private Semaphore fileLock;
+    private final ConcurrentHashMap<String, ExpirableData> weatherData;
+    private final StationListCache stationListCache;
+    private final StationTable stationTable;
+    private final StationHistory stationHistory;
+    private final long expiryMillis;
+    private final long tickMillis;
 
-    public DataExpirer(ConcurrentHashMap<String, ExpirableData> weatherData, Semaphore fileLock) {
+    private final List<ConcurrentLinkedQueue<Entry>> wheel;
+    private volatile long processedTick; // every bucket up to this tick has been drained
+    private final LatencyHistogram sweepLatency = new LatencyHistogram(); // duration of each run()
+
+    private static class Entry {
+        final String stationId;
+        final ExpirableData data;
+
+        Entry(String stationId, ExpirableData data) {
+            this.stationId = stationId;
+            this.data = data;
+        }
+    }
+
+    public DataExpirer(ConcurrentHashMap<String, ExpirableData> weatherData, StationListCache stationListCache,
+                       StationTable stationTable, StationHistory stationHistory, long expiryMillis, long tickMillis) {
         this.weatherData = weatherData;
-        this.fileLock = fileLock;
+        this.stationListCache = stationListCache;
+        this.stationTable = stationTable;
+        this.stationHistory = stationHistory;
+        this.expiryMillis = expiryMillis;
+        this.tickMillis = tickMillis;
+
+        // one revolution is longer than the expiry time, so a deadline never wraps onto a bucket still to come
+        int slots = (int) (expiryMillis / tickMillis) + 2;
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+        this.processedTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /*
+     * Register data that was just stored for a station. Called after every PUT.
+     */
+    public void track(String stationId, ExpirableData data) {
+        schedule(new Entry(stationId, data), data.getLastUpdated() + expiryMillis);
+    }
+
+    /*
+     * Register everything currently in the map, e.g. the stations installed by crash recovery.
+     * Stations that are already tracked get a second entry, which is dropped when it comes due.
+     */
+    public void trackAll() {
+        for (Map.Entry<String, ExpirableData> entry : weatherData.entrySet()) {
+            track(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void schedule(Entry entry, long deadline) {
+        // a deadline that is already past goes into the next bucket to be drained
+        long tick = Math.max(Math.floorDiv(deadline, tickMillis) + 1, processedTick + 1);
+        wheel.get((int) (tick % wheel.size())).add(entry);
     }
 
+    /*
+     * Runs every tick: drain the buckets of all ticks that have passed since the last run.
+     */
     @Override
     public void run() {
-        System.out.println("Running data expiration task...");
-        long currentTime = System.currentTimeMillis();
-        try {
-            // Acquire the lock to ensure no other threads are writing to the map during expiration
-            fileLock.acquire();
-            
-            weatherData.entrySet().removeIf(entry -> {
-                long lastUpdated = entry.getValue().getLastUpdated();
-                if (currentTime - lastUpdated > EXPIRATION_THRESHOLD_SECOND) {
-                    System.out.println("Expiring data for station: " + entry.getKey());
-                    return true;
-                }
-                return false;
-            });
-            
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Data expiration task interrupted.");
-        } finally {
-            fileLock.release();
-        }
-    }
-}
\ No newline at end of file
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long currentTick = now / tickMillis;
+
+        // entries that are not due yet go back in the wheel after the drain, so one never lands in the bucket being drained
+        List<Entry> notDue = new ArrayList<>();
+        for (long tick = processedTick + 1; tick <= currentTick; tick++) {
+            processedTick = tick;
+            ConcurrentLinkedQueue<Entry> bucket = wheel.get((int) (tick % wheel.size()));
+            Entry entry;
+            while ((entry = bucket.poll()) != null) {
+                expire(entry, now, notDue);
+            }
+        }
+        for (Entry entry : notDue) {
+            schedule(entry, entry.data.getLastUpdated() + expiryMillis);
+        }
+        sweepLatency.recordSince(start);
+    }
+
+    public LatencyHistogram getSweepLatency() {
+        return sweepLatency;
+    }
+
+    private void expire(Entry entry, long now, List<Entry> notDue) {
+        ExpirableData data = entry.data;
+        if (weatherData.get(entry.stationId) != data) {
+            return; // replaced by a newer PUT or already removed
+        }
+
+        if (data.getLastUpdated() + expiryMillis > now) {
+            notDue.add(entry); // touched since it was registered
+            return;
+        }
+
+        // only removes the station if no newer data replaced it meanwhile; its typed row is cleared (and with it
+        // the aggregates) and given back, and its history dropped, under the same bin lock
+        boolean[] removed = new boolean[1];
+        weatherData.computeIfPresent(entry.stationId, (key, current) -> {
+            if (current != data) {
+                return current;
+            }
+            stationTable.release(key);
+            stationHistory.remove(key);
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            stationListCache.invalidate();
+            Log.info("Expiring data for station: " + entry.stationId);
+        }
+    }
+}
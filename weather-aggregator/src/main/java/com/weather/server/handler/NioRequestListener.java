@@ -0,0 +1,252 @@
+package com.weather.server.handler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.weather.http.Request;
+import com.weather.log.Log;
+import com.weather.server.AggregationServer;
+import com.weather.server.helper.HttpRequestParser;
+
+/*
+ * Selector based listener (--listener=nio).
+ * One thread accepts connections and reads them on non-blocking channels, so a slow or stalled client
+ * no longer holds up everyone else. Once a whole request has been framed the channel is taken off the
+ * selector, switched back to blocking mode and handed to the request queue like the blocking listener does.
+ *
+ * Connections are persistent: after the consumer thread has written the response it hands the channel back
+ * (resume) and it is registered again for the next request. Requests the client pipelined behind the first
+ * one are already in the connection's parser and are dispatched without waiting for another read.
+ * A connection is closed after keep-alive-max requests, when the client asks for it, or after
+ * keep-alive-timeout milliseconds without a request.
+ */
+public class NioRequestListener implements Runnable {
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final AggregationServer server;
+    private final ServerSocketChannel serverChannel;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE); // shared, only used by this thread
+    private final long idleTimeoutMillis;
+    private final int maxRequestsPerConnection;
+
+    private volatile Selector selector;
+    // connections whose response has been sent, waiting to be registered again by the selector thread
+    private final ConcurrentLinkedQueue<Connection> resumed = new ConcurrentLinkedQueue<>();
+
+    /*
+     * State of one client connection, attached to its selection key
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final HttpRequestParser parser = new HttpRequestParser();
+        int requestsServed = 0;
+        long lastActiveMillis = System.currentTimeMillis();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public NioRequestListener(AggregationServer server, ServerSocketChannel serverChannel) {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.idleTimeoutMillis = server.getConfig().getKeepAliveTimeoutMillis();
+        this.maxRequestsPerConnection = server.getConfig().getKeepAliveMaxRequests();
+    }
+
+    @Override
+    public void run() {
+        System.out.println("NioRequestListener is running and listening for client connections.");
+        try (Selector selector = Selector.open()) {
+            this.selector = selector;
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            // connections with a complete request, dispatched after the selected keys are processed
+            List<Connection> framed = new ArrayList<>();
+            long lastIdleCheck = System.currentTimeMillis();
+
+            while (!Thread.currentThread().isInterrupted() && serverChannel.isOpen()) {
+                // wake up every second so the loop can notice the server closing
+                selector.select(1000);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept(selector);
+                    } else if (key.isReadable()) {
+                        read(key, framed);
+                    }
+                }
+
+                Connection connection;
+                while ((connection = resumed.poll()) != null) {
+                    register(selector, connection, framed);
+                }
+
+                if (!framed.isEmpty()) {
+                    // cancelled keys are only deregistered on the next select, which has to happen
+                    // before the channels can be put back into blocking mode
+                    selector.selectNow();
+                    for (Connection each : framed) {
+                        dispatch(each);
+                    }
+                    framed.clear();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= 1000) {
+                    closeIdle(selector, now);
+                    lastIdleCheck = now;
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // server is shutting down
+        } catch (IOException e) {
+            System.err.println("Listener thread failed to initialize or experienced a fatal error: " + e.getMessage());
+        } finally {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server socket: " + e.getMessage());
+            }
+        }
+        System.out.println("NioRequestListener thread shutting down.");
+    }
+
+    private void accept(Selector selector) {
+        try {
+            SocketChannel client = serverChannel.accept();
+            if (client == null) {
+                return; // another accept already took it
+            }
+            long accepted = System.nanoTime();
+            client.configureBlocking(false);
+            client.register(selector, SelectionKey.OP_READ, new Connection(client));
+            Log.info("Client connected from: " + client.socket().getInetAddress());
+            server.getMetrics().getAccept().recordSince(accepted);
+        } catch (IOException e) {
+            Log.error("Error accepting client connection: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Read whatever is available without blocking. The key is cancelled once the request is complete.
+     */
+    private void read(SelectionKey key, List<Connection> framed) {
+        SocketChannel client = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+
+        try {
+            readBuffer.clear();
+            int count = client.read(readBuffer);
+            if (count < 0) {
+                // client closed, either between requests or before sending a whole one
+                closeQuietly(client);
+                return;
+            }
+            readBuffer.flip();
+            connection.parser.append(readBuffer);
+            connection.lastActiveMillis = System.currentTimeMillis();
+
+            if (connection.parser.isComplete()) {
+                key.cancel();
+                framed.add(connection);
+            }
+        } catch (IOException e) {
+            Log.error("Error reading client request: " + e.getMessage());
+            closeQuietly(client);
+        }
+    }
+
+    private void dispatch(Connection connection) {
+        SocketChannel client = connection.channel;
+
+        try {
+            Request request = connection.parser.toRequest();
+
+            connection.requestsServed++;
+            boolean keepAlive = request.isKeepAlive() && connection.requestsServed < maxRequestsPerConnection;
+
+            // the consumer thread writes the response through the plain Socket API, which needs blocking mode
+            client.configureBlocking(true);
+            server.enqueueRequest(client.socket(), request, false, keepAlive ? () -> resume(connection) : null);
+            Log.info("Request from " + client.socket().getInetAddress() + " added to queue. Queue size: " + server.getRequestLanes().size());
+
+        } catch (IOException e) {
+            Log.error("Error processing client request: " + e.getMessage());
+            closeQuietly(client);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeQuietly(client);
+        } catch (RuntimeException e) {
+            // a bug in admission must not take down the selector thread, and with it every connection
+            Log.error("Error processing client request: " + e);
+            closeQuietly(client);
+        }
+    }
+
+    /*
+     * Called by the consumer thread once the response is written: wait for the next request on this connection.
+     */
+    private void resume(Connection connection) {
+        resumed.add(connection);
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+
+    // selector thread only
+    private void register(Selector selector, Connection connection, List<Connection> framed) {
+        try {
+            connection.channel.configureBlocking(false);
+            connection.lastActiveMillis = System.currentTimeMillis();
+            if (connection.parser.isComplete()) {
+                // the next request was pipelined and is already buffered
+                framed.add(connection);
+            } else {
+                connection.channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+        } catch (IOException e) {
+            Log.error("Error resuming client connection: " + e.getMessage());
+            closeQuietly(connection.channel);
+        }
+    }
+
+    /*
+     * Close connections that sent nothing for longer than the keep-alive timeout.
+     * Connections with a request in the queue are not registered, so they are never closed here.
+     */
+    private void closeIdle(Selector selector, long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection && now - connection.lastActiveMillis > idleTimeoutMillis) {
+                closeQuietly(connection.channel);
+            }
+        }
+    }
+
+    private void closeQuietly(SocketChannel channel) {
+        try {
+            // closing the channel also cancels its key
+            channel.close();
+        } catch (IOException e) {
+            Log.error("Error closing client channel: " + e.getMessage());
+        }
+    }
+}
@@ -2,18 +2,28 @@ package com.weather.server.handler;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.ThreadFactory;
 
 import com.weather.http.Request;
 import com.weather.http.Response;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.weather.http.StatusCode;
+import com.weather.log.Log;
 import com.weather.server.AggregationServer;
 import com.weather.server.helper.ExpirableData;
+import com.weather.server.helper.PutBatch;
+import com.weather.server.helper.RequestLanes;
 import com.weather.server.helper.RequestNode;
 import com.weather.server.helper.ResponseSender;
+import com.weather.server.helper.StationExport;
+import com.weather.server.helper.StationStats;
+import com.weather.server.helper.StationTable;
 import com.weather.server.helper.Storage;
 
 /* 
@@ -23,6 +33,10 @@ import com.weather.server.helper.Storage;
  * It's an object created and used by the consumer thread from the AggregationServer to do a specific job, and then it's discarded.
  */
 public class RequestHandler {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // streamed bodies (GET /weather/export) are written on their own virtual thread, not on the consumer lane
+    private static final ThreadFactory STREAM_WRITERS = Thread.ofVirtual().name("stream-writer-", 0).factory();
+
     private RequestNode eachRequestNode;
     private AggregationServer server;
     private Storage storage;
@@ -34,106 +48,342 @@ public class RequestHandler {
     }
     
     public void run(){
+        Response response;
+
+        long start = System.nanoTime();
+        try {
+            response = process();
+            server.getMetrics().getHandler().recordSince(start);
+        } catch (RuntimeException e) {
+            // never leave a waiting connection thread hanging
+            if (eachRequestNode.isAwaitingReply()) {
+                eachRequestNode.failReply(e);
+                return;
+            }
+            throw e;
+        }
+
+        if (response == null) {
+            return; // a long-poll GET parked in StationSubscriptions, it is delivered when woken
+        }
+        deliver(response);
+    }
+
+    /*
+     * Send a response that was not built by process(), e.g. for a request rejected at admission.
+     */
+    public void reply(Response response) {
+        response.addHeaders("Lamport-Clock", String.valueOf(server.getClock().get()));
+        deliver(response);
+    }
+
+    /*
+     * Hand the response to the connection: to its own thread, or written here and then kept alive or closed.
+     * A streamed body can take as long as the client takes to read it, so it is written on a virtual thread of
+     * its own (like a woken long-poll GET); the lane goes on with the next request.
+     */
+    private void deliver(Response response) {
+        if (eachRequestNode.isAwaitingReply()) {
+            // the connection's own thread sends the response and keeps or closes the socket
+            eachRequestNode.completeReply(response);
+            return;
+        }
+
+        if (response.getStreamingBody() != null) {
+            STREAM_WRITERS.newThread(() -> send(response)).start();
+        } else {
+            send(response);
+        }
+    }
+
+    // write the response on this thread, then keep the connection alive or close it
+    private void send(Response response) {
         Socket clientSocket = eachRequestNode.getSocket();
+
+        // a persistent connection goes back to its listener, every other one is closed here
+        boolean keepAlive = eachRequestNode.isKeepAlive() && server.isRunning();
+        response.addHeaders("Connection", keepAlive ? "keep-alive" : "close");
+
+        long start = System.nanoTime();
+        try {
+            ResponseSender.sendResponse(clientSocket, response);
+            server.getMetrics().getResponseWrite().recordSince(start);
+        } catch (IOException e) {
+            Log.error("Error handling request: " + e.getMessage());
+            keepAlive = false;
+        } finally {
+            if (keepAlive) {
+                eachRequestNode.resumeConnection();
+            } else {
+                try {
+                    if (!clientSocket.isClosed()) {
+                        clientSocket.close();
+                    }
+                } catch (IOException e) {
+                    Log.error("Error closing socket: " + e.getMessage());
+                }
+            }
+        }
+
+    }
+
+    /*
+     * Apply the request and build its response, without touching the socket.
+     * return null if the response is deferred (long-poll GET)
+     */
+    public Response process() {
         Request request = eachRequestNode.getRequest();
 
         try {
             switch (request.getMethod()) {
                 case "GET":
-                    handleGetRequest(request, clientSocket);
-                    break;
-                
+                    return handleGetRequest(request);
+
                 case "PUT":
-                    handlePutRequest(request, clientSocket);
-                    break;
+                    return handlePutRequest(request);
+
+                case "POST":
+                    return handlePostRequest(request);
 
                 default:
                     // Send 400 Bad Request for unsupported methods
-                    Response response = new Response(StatusCode.BAD_REQUEST);
-                    ResponseSender.sendResponse(clientSocket, response);
-                    break;
+                    return new Response(StatusCode.BAD_REQUEST);
             }
         } catch (IOException e) {
-            System.err.println("Error handling request: " + e.getMessage());
-        } finally {
-            try {
-                // Ensure the socket is always closed after handling the request
-                if (!clientSocket.isClosed()) {
-                    clientSocket.close();
-                }
-            } catch (IOException e) {
-                System.err.println("Error closing socket: " + e.getMessage());
-            }
+            Log.error("Error handling request: " + e.getMessage());
+            return new Response(StatusCode.INTERNAL_SERVER_ERROR);
         }
+    }
 
+    /*
+     * Station ids that are GET routes of their own, a PUT to them is rejected (and never written to the log)
+     */
+    public static boolean isReservedStationId(String stationId) {
+        return RequestLanes.isReservedStationId(stationId);
     }
 
-    public void handlePutRequest(Request request, Socket clientSocket) throws IOException {
-        ConcurrentHashMap<String, ExpirableData> weatherData = server.getWeatherData();
-        Semaphore fileLock = server.getFileLock();
-        
+    /*
+     * No global lock here: compute() on the ConcurrentHashMap only locks the station's own bin, and all PUTs for
+     * one station are applied by the same lane's consumer thread. Readers see either the old or the new
+     * ExpirableData, never a partial one.
+     * The body is parsed once, before taking the bin lock; its typed values are written to the station's
+     * StationTable row under the same bin lock as the map update, so the row always matches the map.
+     */
+    public Response handlePutRequest(Request request) throws IOException {
+        if (request.getPath().equals("/weather/")) {
+            return handleBatchPutRequest(request);
+        }
+
         // get the Lamport Clock from RequestNode to serve as uniqueId for Storage
         String uniqueId = String.valueOf(eachRequestNode.getLamportClockValue());
-        try {
-            fileLock.acquire();
-            // the path format is /weather/<StationID>
-            String id = request.getPath().substring(request.getPath().lastIndexOf('/') + 1);
-            weatherData.put(id, new ExpirableData(request.getBody()));
-            System.out.println("PUT request for " + id + " handled. Data stored.");
-
-            // Send a 200 OK response
-            Response response = new Response(StatusCode.OK);
-            response.setBody("Success: Data saved for " + id);
-            response.addHeaders("Content-Type", "text/plain");
-            response.addHeaders("Content-Length", String.valueOf(response.getBody().length()));
-
-            // add Lamport Clock into response headers
-            response.addHeaders("Lamport-Clock", String.valueOf(server.getClock().get()));
 
-            ResponseSender.sendResponse(clientSocket, response);
+        // the path format is /weather/<StationID>, the same id admission logged the PUT under
+        String id = RequestLanes.stationPutIdOf(request.getPath());
+        if (id == null || isReservedStationId(id)) {
+            return new Response(StatusCode.BAD_REQUEST);
+        }
+        storeStation(id, request.getBody(), eachRequestNode.getLamportClockValue());
+        Log.info("PUT request for " + id + " handled. Data stored.");
+
+        // Send a 200 OK response
+        Response response = new Response(StatusCode.OK);
+        response.setBody("Success: Data saved for " + id);
+        response.addHeaders("Content-Type", "text/plain");
+        response.addHeaders("Content-Length", String.valueOf(response.getBody().length()));
+
+        // add Lamport Clock into response headers
+        response.addHeaders("Lamport-Clock", String.valueOf(server.getClock().get()));
 
+        try {
             // mark in Storage as completed (COMMIT)
             storage.logCompletion(uniqueId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return response;
+    }
+
+    /*
+     * PUT /weather/ with a JSON array of stations (see PutBatch), 400 if the body is not one.
+     * Admission already reserved one Lamport value per object, starting at the request's own value, and logged
+     * the body as one BATCH record; the body is only parsed here, on lane 0. The objects are applied with those
+     * values in one pass, then the batch is committed with one COMMIT record.
+     * The batch runs on lane 0 while single PUTs of the same stations may run on other lanes, so a station
+     * only takes the batch's data if it has nothing newer (higher Lamport value) already: a single PUT admitted
+     * after the batch wins even if its lane applied it first.
+     *
+     * The response lists the outcome of every object, in request order:
+     *  [{"id":"IDS60901","status":200},{"id":null,"status":400}]
+     */
+    private Response handleBatchPutRequest(Request request) throws IOException {
+        int reserved = eachRequestNode.getBatchSize();
+        PutBatch batch = PutBatch.parse(request.getBody());
+        if (batch == null || batch.size() != reserved) {
+            // not a JSON array of objects; if admission logged it anyway, recovery skips it too
+            commitBatch(reserved);
+            return new Response(StatusCode.BAD_REQUEST);
+        }
+        batch.assignLamports(eachRequestNode.getLamportClockValue());
+
+        int stored = 0;
+        List<Map<String, Object>> results = new ArrayList<>(batch.size());
+        for (PutBatch.Item item : batch.getItems()) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", item.getStationId());
+            if (item.isValid()) {
+                storeStation(item.getStationId(), item.getJson(), item.getLamport());
+                stored++;
+                result.put("status", StatusCode.OK.getStatusCode());
+            } else {
+                result.put("status", StatusCode.BAD_REQUEST.getStatusCode());
+            }
+            results.add(result);
+        }
+        Log.info("Batch PUT handled. " + stored + " of " + batch.size() + " stations stored.");
+
+        Response response = new Response(StatusCode.OK);
+        response.setBody(MAPPER.writeValueAsString(results));
+        response.addHeaders("Content-Type", "application/json");
+        response.addHeaders("Lamport-Clock", String.valueOf(server.getClock().get()));
 
+        commitBatch(reserved);
+        return response;
+    }
+
+    // the COMMIT for the BATCH record admission logged, if it logged one (an empty array is not logged)
+    private void commitBatch(int reserved) throws IOException {
+        if (reserved == 0) {
+            return;
+        }
+        try {
+            storage.logCompletion(String.valueOf(eachRequestNode.getLamportClockValue()));
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-        } finally {
-            fileLock.release();
         }
     }
 
-    private void handleGetRequest(Request request, Socket socket) throws IOException {
+    /*
+     * Install one station's body in the map, its StationTable row and its history, unless the station already
+     * holds newer data, then register it for expiry.
+     */
+    private void storeStation(String id, String body, long lamport) {
         ConcurrentHashMap<String, ExpirableData> weatherData = server.getWeatherData();
-        Semaphore fileLock = server.getFileLock();
+        StationTable table = server.getStationTable();
+        StationTable.ParsedRecord record = table.parse(body);
+        // a body that is not a JSON object clears the station's row and is kept as text only
+        ExpirableData data = new ExpirableData(body, lamport, record != null);
 
+        boolean[] added = new boolean[1];
+        boolean[] stored = new boolean[1];
+        weatherData.compute(id, (key, current) -> {
+            if (current != null && current.getLamportClockValue() > lamport) {
+                return current; // a newer PUT from another lane was applied first
+            }
+            // looked up under the bin lock: an expiring station gives its row back under the same lock
+            table.write(table.stationRow(key), record);
+            server.getStationHistory().add(key, data, record != null);
+            added[0] = current == null;
+            stored[0] = true;
+            return data;
+        });
+        if (added[0]) {
+            server.getStationListCache().invalidate(); // new station
+        }
+        if (stored[0]) {
+            server.getDataExpirer().track(id, data);
+            server.getStationSubscriptions().publish(id); // wake long-poll GETs waiting for this station
+        }
+    }
+
+    /*
+     * POST /weather/<stationId>/touch: a content server whose data did not change keeps its station from expiring
+     * without sending the body again. Nothing is logged, the station's expiry clock just restarts
+     * (DataExpirer re-checks the timestamp when the station comes due).
+     * 404 if the station is not stored (e.g. it already expired), the content server then sends a full PUT.
+     * Routed to the station's lane like its PUTs, so a touch never overtakes the PUT before it.
+     */
+    private Response handlePostRequest(Request request) throws IOException {
+        String path = request.getPath();
+        String id = RequestLanes.stationIdOf(path);
+        if (id == null || !path.equals("/weather/" + id + "/touch")) {
+            return new Response(StatusCode.BAD_REQUEST);
+        }
+        try {
+            server.getRecovery().ensureRecovered(id);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response(StatusCode.INTERNAL_SERVER_ERROR);
+        }
+
+        ExpirableData data = server.getWeatherData().get(id);
+        Response response = new Response(data == null ? StatusCode.NOT_FOUND : StatusCode.OK);
+        if (data != null) {
+            data.updateTimestamp();
+        }
+        response.addHeaders("Lamport-Clock", String.valueOf(server.getClock().get()));
+        return response;
+    }
+
+    /*
+     * Reads never take a lock. Each ExpirableData is immutable once published in the map, so a GET
+     * does not wait behind WAL writes or the expiry sweep.
+     *
+     * Routes:
+     *  /weather/                                  list of station ids
+     *  /weather/stats?field=                      count, min, max and mean of a configured field (all of them without field)
+     *  /weather/export                            data of every station in one streamed (chunked, optionally gzip) JSON object
+     *  /weather/<stationId>                       latest data of the station, with its ETag; 304 if If-None-Match has it
+     *  /weather/<stationId>?wait=ms               long-poll: instead of 304/404, wait up to ms for a new version
+     *  /weather/<stationId>/history?from=&to=     last observations, arrival time in epoch milliseconds (both optional)
+     */
+    private Response handleGetRequest(Request request) {
         try {
-            fileLock.acquire();
             String path = request.getPath();
+            String query = null;
+            int queryStart = path.indexOf('?');
+            if (queryStart >= 0) {
+                query = path.substring(queryStart + 1);
+                path = path.substring(0, queryStart);
+            }
+            String id = RequestLanes.stationIdOf(path);
+            int idEnd = id == null ? -1 : "/weather/".length() + id.length();
             Response response;
-            
-            if (path.matches("/weather/.+")) {
-                // format path: "/weather/<stationId>"
-                String id = path.substring(path.lastIndexOf('/') + 1);
-                ExpirableData data = weatherData.get(id);
-
-                if (data != null) {
-                    // found the data for a specific station
-                    response = new Response(StatusCode.OK); 
-                    response.setBody(data.getJsonBody());
-                    response.addHeaders("Content-Type", "application/json");
-                    response.addHeaders("Content-Length", String.valueOf(data.getJsonBody().length()));
-                } else {
-                    response = new Response(StatusCode.NOT_FOUND);
-                }
+
+            if (path.equals("/metrics")) {
+                // answered right at admission, see AggregationServer.enqueueRequest
+                response = handleMetricsRequest();
             } else if (path.equals("/weather/")) {
                 // this path is for all stations
-                // it return all the key values from weatherData map
-                // Before: JsON object ["ID001", "ID002"] --> After ObjectMapper "[\"ID001\",\"ID002\"]"
-                String allStationId = new ObjectMapper().writeValueAsString(weatherData.keySet()); 
+                // the list is only serialized again after a station was added or removed
                 response = new Response(StatusCode.OK);
-                response.setBody(allStationId);
-                response.addHeaders("Content-Type", "application/json");
-                response.addHeaders("Content-Length", String.valueOf(allStationId.length()));
+                response.setEncoded(server.getStationListCache().get());
+            } else if (path.equals("/weather/stats")) {
+                response = handleStatsRequest(query);
+            } else if (path.equals("/weather/export")) {
+                response = handleExportRequest(request);
+            } else if (id != null && path.length() == idEnd) {
+                // format path: "/weather/<stationId>"
+                // a station still waiting for background recovery is restored before it is read
+                server.getRecovery().ensureRecovered(id);
+                ExpirableData data = server.getWeatherData().get(id);
+                response = stationResponse(request, data);
+
+                String wait = parseQuery(query).get("wait");
+                if (wait != null && response.getStatusCode() != StatusCode.OK.getStatusCode()) {
+                    // long-poll: nothing new for this client yet, answer when the station changes or the wait is over
+                    long waitMillis = -1;
+                    try {
+                        waitMillis = Long.parseLong(wait);
+                    } catch (NumberFormatException e) {
+                        response = new Response(StatusCode.BAD_REQUEST);
+                    }
+                    if (waitMillis > 0) {
+                        subscribe(request, id, data, waitMillis);
+                        return null;
+                    }
+                }
+            } else if (id != null && path.startsWith("/history", idEnd) && path.length() == idEnd + "/history".length()) {
+                response = handleHistoryRequest(id, query);
             } else {
                 // invalid path 
                 response = new Response(StatusCode.BAD_REQUEST);
@@ -141,14 +391,195 @@ public class RequestHandler {
 
             // add the server lamport clock to response headers
             response.addHeaders("Lamport-Clock", String.valueOf(server.getClock().get()));
-
-            ResponseSender.sendResponse(socket, response);
+            return response;
             
-        } catch (InterruptedException | JsonProcessingException e) {
+        } catch (IOException e) {
+            return new Response(StatusCode.INTERNAL_SERVER_ERROR);
+        } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            ResponseSender.sendResponse(socket, new Response(StatusCode.INTERNAL_SERVER_ERROR));
-        } finally {
-            fileLock.release();
+            return new Response(StatusCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /*
+     * GET /weather/<stationId>: the encoded data, 304 if the client's If-None-Match already has it, or 404
+     * data: what the station held when the request was read, null if it had nothing
+     */
+    private Response stationResponse(Request request, ExpirableData data) {
+        Response response;
+        if (data != null && matchesETag(request.getHeader("If-None-Match"), data.getETag())) {
+            // the client already has this version
+            response = new Response(StatusCode.NOT_MODIFIED);
+            response.addHeaders("ETag", data.getETag());
+        } else if (data != null) {
+            // found the data for a specific station: status line, headers and body were encoded at PUT time
+            response = new Response(StatusCode.OK);
+            response.setEncoded(data.getEncodedResponse());
+        } else {
+            response = new Response(StatusCode.NOT_FOUND);
+        }
+        return response;
+    }
+
+    /*
+     * Park a GET /weather/<stationId>?wait=ms that would be answered 304 or 404. When the station gets a new
+     * version (or the wait is over) the same request is answered again: 200 with the new data, or the 304/404
+     * it would have had. No thread waits meanwhile; the consumer lane goes on with the next request.
+     * seen: the data the 304/404 was built from, so a PUT applied since then wakes the request right away
+     */
+    private void subscribe(Request request, String id, ExpirableData seen, long waitMillis) {
+        server.getStationSubscriptions().subscribe(id, waitMillis,
+                () -> server.getWeatherData().get(id) != seen,
+                () -> {
+                    Response response = stationResponse(request, server.getWeatherData().get(id));
+                    response.addHeaders("Lamport-Clock", String.valueOf(server.getClock().get()));
+                    deliver(response);
+                });
+    }
+
+    /*
+     * GET /weather/export, streamed with chunked transfer encoding and gzip-compressed if the client accepts it.
+     * The snapshot is taken here on the consumer lane; the bytes are produced while ResponseSender writes them,
+     * on a stream-writer thread (see deliver) or on the connection's own thread in virtual thread mode.
+     */
+    private Response handleExportRequest(Request request) throws InterruptedException {
+        // stations recovery has not restored yet are restored now, so the export is complete
+        for (String id : server.getRecovery().pendingStationIds()) {
+            server.getRecovery().ensureRecovered(id);
+        }
+        StationExport export = new StationExport(server.getWeatherData());
+
+        Response response = new Response(StatusCode.OK);
+        response.addHeaders("Content-Type", "application/json");
+        response.addHeaders("Vary", "Accept-Encoding");
+        if (acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            response.addHeaders("Content-Encoding", "gzip");
+        }
+        response.setStreamingBody(export);
+        Log.info("Exporting " + export.size() + " stations.");
+        return response;
+    }
+
+    // "gzip", "deflate, gzip;q=0.8" -> true, "gzip;q=0" or no header -> false
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim().replace(" ", "");
+                    try {
+                        if (param.startsWith("q=") && Double.parseDouble(param.substring(2)) == 0) {
+                            return false;
+                        }
+                    } catch (NumberFormatException e) {
+                        // malformed weight, ignore it
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * GET /weather/stats?field=air_temp
+     * The aggregates are maintained on every write, so this only copies a few numbers.
+     * Stations still waiting for background recovery are not counted yet.
+     */
+    private Response handleStatsRequest(String query) throws IOException {
+        StationStats stats = server.getStationStats();
+        String field = parseQuery(query).get("field");
+        Object result;
+        if (field != null) {
+            StationStats.FieldAggregate aggregate = stats.get(field);
+            if (aggregate == null) {
+                return new Response(StatusCode.BAD_REQUEST); // not one of --stats-fields
+            }
+            result = aggregate.snapshot();
+        } else {
+            List<Map<String, Object>> all = new ArrayList<>();
+            for (String name : stats.getFields()) {
+                all.add(stats.get(name).snapshot());
+            }
+            result = all;
+        }
+        Response response = new Response(StatusCode.OK);
+        response.setBody(MAPPER.writeValueAsString(result));
+        response.addHeaders("Content-Type", "application/json");
+        return response;
+    }
+
+    /*
+     * GET /metrics: per-stage latencies, queue depth, station count, WAL size and the clock
+     */
+    private Response handleMetricsRequest() throws IOException {
+        Response response = new Response(StatusCode.OK);
+        response.setBody(MAPPER.writeValueAsString(server.getMetrics().snapshot(server)));
+        response.addHeaders("Content-Type", "application/json");
+        return response;
+    }
+
+    /*
+     * GET /weather/<stationId>/history?from=&to=
+     */
+    private Response handleHistoryRequest(String id, String query) throws IOException, InterruptedException {
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        try {
+            Map<String, String> params = parseQuery(query);
+            if (params.containsKey("from")) {
+                from = Long.parseLong(params.get("from"));
+            }
+            if (params.containsKey("to")) {
+                to = Long.parseLong(params.get("to"));
+            }
+        } catch (NumberFormatException e) {
+            return new Response(StatusCode.BAD_REQUEST);
+        }
+
+        server.getRecovery().ensureRecovered(id);
+        String history = server.getStationHistory().toJson(id, from, to);
+        if (history == null) {
+            return new Response(StatusCode.NOT_FOUND);
+        }
+        Response response = new Response(StatusCode.OK);
+        response.setBody(history);
+        response.addHeaders("Content-Type", "application/json");
+        return response;
+    }
+
+    // If-None-Match: "*" or a comma separated list of (possibly weak, W/"...") entity tags
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "a=1&b=2" -> {a=1, b=2}, values are not URL-decoded (only numbers are expected)
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(pair.substring(0, equals), pair.substring(equals + 1));
+            }
         }
+        return params;
     }
 }
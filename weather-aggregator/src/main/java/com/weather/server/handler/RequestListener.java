@@ -1,85 +1,80 @@
 package com.weather.server.handler;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.PriorityBlockingQueue;
 
 import com.weather.http.Request;
+import com.weather.log.Log;
 import com.weather.server.AggregationServer;
-import com.weather.server.helper.RequestNode;
-import com.weather.server.helper.RequestParser;
-import com.weather.server.helper.Storage;
+import com.weather.server.helper.HttpRequestParser;
 
+/*
+ * Blocking listener: accepts a socket and parses its request on this same thread before accepting the next one.
+ * See NioRequestListener for the selector based alternative (--listener=nio).
+ * Every connection carries exactly one request and is closed after its response ("Connection: close");
+ * persistent connections need a listener that can wait on many sockets at once (nio or virtual).
+ */
 public class RequestListener implements Runnable {
     private final AggregationServer server;
     private final ServerSocket serverSocket;
-    private final PriorityBlockingQueue<RequestNode> requestQueue;
-    private Storage storage;
 
-    public RequestListener(AggregationServer server, ServerSocket serverSocket, PriorityBlockingQueue<RequestNode> requestQueue, Storage storage) {
+    public RequestListener(AggregationServer server, ServerSocket serverSocket) {
         this.server = server;
         this.serverSocket = serverSocket;
-        this.requestQueue = requestQueue;
-        this.storage = storage;
     }
 
-    // public RequestListener(ServerSocket serverSocket, PriorityBlockingQueue<RequestNode> requestQueue) {
-    //     this.serverSocket = serverSocket;
-    //     this.requestQueue = requestQueue;
-    // }
-
     @Override
     public void run() {
         System.out.println("RequestListener is running and listening for client connections.");
         try {
             // Set a timeout to prevent the thread from blocking indefinitely on serverSocket.accept()
             this.serverSocket.setSoTimeout(1000); 
-            while (!Thread.currentThread().isInterrupted()) {
+            while (!Thread.currentThread().isInterrupted() && !serverSocket.isClosed()) {
                 try {
                     // Accept a new client connection
                     Socket clientSocket = serverSocket.accept(); // block + waiting for a connection
-                    System.out.println("Client connected from: " + clientSocket.getInetAddress());
+                    long accepted = System.nanoTime();
+                    Log.info("Client connected from: " + clientSocket.getInetAddress());
+                    server.getMetrics().getAccept().recordSince(accepted);
 
                     // Read the request from the client's input stream
-                    BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                    Request request = RequestParser.parse(in);
-
-                    // Check for Lamport clock header and update the server clock
-                    int clientLamportValue = 0;
-                    String lamportHeader = request.getHeaders().get("Lamport-Clock");
-                    if (lamportHeader != null) {
-                        clientLamportValue = Integer.parseInt(lamportHeader);
+                    Request request;
+                    try {
+                        request = new HttpRequestParser().read(clientSocket.getInputStream());
+                    } catch (IOException e) {
+                        // malformed, over a limit, or cut off: nothing to answer
+                        clientSocket.close();
+                        throw e;
                     }
-
-                    // update server clock and assign new clock value for RequestNode
-                    int newClockValue = this.server.getClock().updateAndGet(clientLamportValue);
-
-                    // add Storage logic for PUT request: record the request before put in the request queue
-                    if ("PUT".equalsIgnoreCase(request.getMethod())) {
-                        String stationId = String.valueOf(request.getHeaders().get("Station-Id"));
-                        String jsonBody = request.getBody();
-                        this.storage.logPutRequest(String.valueOf(newClockValue), stationId, jsonBody);
+                    if (request == null) {
+                        // client closed the connection without sending anything
+                        clientSocket.close();
+                        continue;
                     }
 
-                    // update Request object with new time 
-                    request.getHeaders().put("Lamport-Clock", String.valueOf(newClockValue));
-
-                    // Create a RequestNode with new timestamp and add it to the shared queue
-                    RequestNode requestNode = new RequestNode(clientSocket, request, newClockValue);
-                    requestQueue.put(requestNode); // this will block adding in if the queue is full
-                    System.out.println("Request from " + clientSocket.getInetAddress() + " added to queue. Queue size: " + requestQueue.size());
+                    // clock update, WAL logging and queueing are shared with the NIO listener
+                    try {
+                        this.server.enqueueRequest(clientSocket, request);
+                    } catch (RuntimeException | InterruptedException e) {
+                        clientSocket.close();
+                        throw e;
+                    }
+                    Log.info("Request from " + clientSocket.getInetAddress() + " added to queue. Queue size: " + server.getRequestLanes().size());
 
                 } catch (SocketTimeoutException e) {
                     // This is expected and allows the loop to check the thread's interruption status
                 } catch (IOException e) {
-                    System.err.println("Error accepting or processing client connection: " + e.getMessage());
+                    Log.error("Error accepting or processing client connection: " + e.getMessage());
                 } catch (InterruptedException e) {
-                    System.err.println("ERROR: Invalid lamport clock value. Might be cannot parse newClockValue to String");
-                    e.printStackTrace();
+                    // interrupted while waiting for recovery or the WAL: the server is shutting down
+                    Log.error("Listener interrupted while admitting a request, shutting down");
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (RuntimeException e) {
+                    // the listener keeps accepting, only this connection is lost
+                    Log.error("Error accepting or processing client connection: " + e);
                 }
             }
         } catch (IOException e) {
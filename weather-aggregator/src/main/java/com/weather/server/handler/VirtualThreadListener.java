@@ -0,0 +1,120 @@
+package com.weather.server.handler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+
+import com.weather.http.Request;
+import com.weather.http.Response;
+import com.weather.http.StatusCode;
+import com.weather.log.Log;
+import com.weather.server.AggregationServer;
+import com.weather.server.helper.HttpRequestParser;
+import com.weather.server.helper.RequestNode;
+import com.weather.server.helper.ResponseSender;
+
+/*
+ * Virtual thread per connection listener (--listener=virtual).
+ * The accept loop only accepts. Every connection gets its own virtual thread which parses the request,
+ * logs and enqueues it, then parks until the consumer thread has applied it and sends the response itself.
+ * Requests are still applied one at a time in Lamport order by the consumer thread, only the socket work moves here.
+ * Connections are persistent (see serve), limited by keep-alive-timeout and keep-alive-max.
+ */
+public class VirtualThreadListener implements Runnable {
+    private final AggregationServer server;
+    private final ServerSocket serverSocket;
+    private final Thread.Builder connectionThreads = Thread.ofVirtual().name("connection-", 0);
+
+    public VirtualThreadListener(AggregationServer server, ServerSocket serverSocket) {
+        this.server = server;
+        this.serverSocket = serverSocket;
+    }
+
+    @Override
+    public void run() {
+        System.out.println("VirtualThreadListener is running and listening for client connections.");
+        try {
+            // Set a timeout to prevent the thread from blocking indefinitely on serverSocket.accept()
+            this.serverSocket.setSoTimeout(1000);
+            while (!Thread.currentThread().isInterrupted() && !serverSocket.isClosed()) {
+                try {
+                    Socket clientSocket = serverSocket.accept();
+                    long accepted = System.nanoTime();
+                    connectionThreads.start(() -> serve(clientSocket, accepted));
+
+                } catch (SocketTimeoutException e) {
+                    // This is expected and allows the loop to check the thread's interruption status
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        Log.error("Error accepting client connection: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Listener thread failed to initialize or experienced a fatal error: " + e.getMessage());
+        } finally {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server socket: " + e.getMessage());
+            }
+        }
+        System.out.println("VirtualThreadListener thread shutting down.");
+    }
+
+    /*
+     * Runs on the connection's virtual thread: parse, enqueue, wait for the handler result, reply,
+     * then read the next request from the same connection until it is closed, idle or has hit the request cap.
+     * Pipelined requests simply wait in the parser's buffer and are answered in order.
+     */
+    private void serve(Socket clientSocket, long acceptedNanos) {
+        try (clientSocket) {
+            Log.info("Client connected from: " + clientSocket.getInetAddress());
+            server.getMetrics().getAccept().recordSince(acceptedNanos); // includes the wait for a carrier thread
+            // an idle persistent connection only parks this virtual thread, the timeout bounds how long
+            clientSocket.setSoTimeout(server.getConfig().getKeepAliveTimeoutMillis());
+            int maxRequests = server.getConfig().getKeepAliveMaxRequests();
+
+            InputStream in = clientSocket.getInputStream();
+            HttpRequestParser parser = new HttpRequestParser();
+            for (int served = 1; ; served++) {
+                Request request = parser.read(in);
+                if (request == null) {
+                    return; // client closed the connection
+                }
+
+                RequestNode requestNode = server.enqueueRequest(clientSocket, request, true);
+
+                Response response;
+                try {
+                    response = requestNode.awaitReply();
+                } catch (ExecutionException e) {
+                    Log.error("Error handling request: " + e.getCause());
+                    response = new Response(StatusCode.INTERNAL_SERVER_ERROR);
+                }
+
+                boolean keepAlive = request.isKeepAlive() && served < maxRequests && server.isRunning();
+                response.addHeaders("Connection", keepAlive ? "keep-alive" : "close");
+                long writeStart = System.nanoTime();
+                ResponseSender.sendResponse(clientSocket, response);
+                server.getMetrics().getResponseWrite().recordSince(writeStart);
+                if (!keepAlive) {
+                    return;
+                }
+            }
+
+        } catch (SocketTimeoutException e) {
+            // idle persistent connection, closed by the try-with-resources
+        } catch (IOException e) {
+            Log.error("Error processing client connection: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // only this connection is lost, the try-with-resources closes it
+            Log.error("Error processing client connection: " + e);
+        }
+    }
+}
@@ -1,16 +1,62 @@
 package com.weather.server.helper;
 
+import java.nio.charset.StandardCharsets;
+
+import com.weather.http.EncodedResponse;
+import com.weather.http.StatusCode;
+
+/*
+ * One station's latest data. The body never changes after construction, so a reader that gets an instance
+ * from the weatherData map sees a complete, consistent value without any lock. A new PUT publishes a new instance.
+ * The GET response for the station is encoded here, once per PUT, so serving it only copies bytes.
+ * The JSON body is kept only inside that encoded response; the typed values live in the StationTable row.
+ */
 public class ExpirableData {
-    private String jsonBody;
-    private long lastUpdated;
+    private final long lamportClockValue; // Lamport value of the PUT that produced this data
+    private final EncodedResponse encodedResponse;
+    private final boolean jsonObject; // the body is a JSON object and its values are in the station's StationTable row
+    private volatile long lastUpdated;
+
+    public ExpirableData(String jsonBody, long lamportClockValue) {
+        this(jsonBody, lamportClockValue, false);
+    }
 
-    public ExpirableData(String jsonBody) {
-        this.jsonBody = jsonBody;
+    public ExpirableData(String jsonBody, long lamportClockValue, boolean jsonObject) {
+        this.jsonObject = jsonObject;
+        this.lamportClockValue = lamportClockValue;
+        this.encodedResponse = EncodedResponse.of(StatusCode.OK, "application/json", jsonBody, etagOf(lamportClockValue));
         this.lastUpdated = System.currentTimeMillis();
     }
 
+    // decoded from the encoded response, for the rare callers that need the text (checkpoints)
     public String getJsonBody() {
-        return jsonBody;
+        return new String(encodedResponse.getBody(), StandardCharsets.UTF_8);
+    }
+
+    // true if the body is a JSON object (its values are then in the StationTable), false for any other text
+    public boolean isJsonObject() {
+        return jsonObject;
+    }
+
+    public long getLamportClockValue() {
+        return lamportClockValue;
+    }
+
+    /*
+     * The version of this data for conditional GETs: the Lamport value of its PUT, quoted as an entity tag.
+     * Lamport values only grow, also across restarts (recovery restores the clock), so a tag is never reused
+     * for different data.
+     */
+    public String getETag() {
+        return etagOf(lamportClockValue);
+    }
+
+    private static String etagOf(long lamportClockValue) {
+        return "\"" + lamportClockValue + "\"";
+    }
+
+    public EncodedResponse getEncodedResponse() {
+        return encodedResponse;
     }
 
     public long getLastUpdated() {
@@ -0,0 +1,366 @@
+package com.weather.server.helper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.weather.http.Request;
+import com.weather.http.RequestHeaders;
+
+/*
+ * Incremental HTTP/1.1 request parser working on bytes, one per connection.
+ *
+ * Bytes are appended as they arrive (from a non-blocking channel, or read() from a socket stream) and the header
+ * block is parsed in place once its blank line is there: the request line and every header are recorded as
+ * offsets into the buffer, nothing is decoded. toRequest() then builds the Request with
+ *  - method and version as shared constants for the usual values
+ *  - the headers as a RequestHeaders (a copy of the header bytes plus offsets), no HashMap and no String per header
+ *  - the body decoded from its Content-Length bytes in one go
+ *
+ * Limits: the header block (request line included) may not exceed MAX_HEADER_BYTES, nor hold more than
+ * MAX_HEADERS headers, and a body may not exceed MAX_BODY_BYTES. A request over a limit fails with an IOException
+ * and the listener closes the connection.
+ *
+ * On a persistent connection a client may send the next request before it got the first response (pipelining),
+ * so the buffer can hold more than one request. toRequest() only takes the first; isComplete() tells whether
+ * the next one is already whole. If the pipelined bytes are malformed, toRequest() still returns the request
+ * before them and the error is thrown by the next isComplete() or append() instead.
+ */
+public class HttpRequestParser {
+    public static final int MAX_HEADER_BYTES = 8 * 1024;
+    public static final int MAX_HEADERS = 64;
+    public static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private byte[] data = new byte[2048];
+    private int size = 0;          // buffered bytes, the current request starts at 0
+    private int scanned = 0;       // bytes already searched for the end of the header block
+    private int headerEnd = -1;    // index of the first body byte, -1 until the blank line is seen
+    private int contentLength = 0;
+    private long startNanos = 0;   // when the first byte of the current request arrived, 0 if it was already buffered
+
+    // the current request's head, offsets into data
+    private int methodEnd;
+    private int targetStart;
+    private int targetEnd;
+    private int versionStart;
+    private int versionEnd;
+    private int headersStart;
+    private int headerCount;
+    private final int[] headerOffsets = new int[MAX_HEADERS * 4];
+
+    private byte[] readBuffer; // for read(InputStream), allocated on first use
+    private IOException failure; // a malformed pipelined request, reported after the one before it was returned
+
+    /*
+     * Copy what is readable in the buffer and parse the header block if it is complete now.
+     * throws IOException if the request is malformed or over a limit
+     */
+    public void append(ByteBuffer buffer) throws IOException {
+        throwIfFailed();
+        int count = buffer.remaining();
+        markStart(count);
+        ensureCapacity(count);
+        buffer.get(data, size, count);
+        size += count;
+        parseHead();
+    }
+
+    public void append(byte[] bytes, int offset, int length) throws IOException {
+        throwIfFailed();
+        markStart(length);
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+        parseHead();
+    }
+
+    private void markStart(int count) {
+        if (size == 0 && count > 0) {
+            startNanos = System.nanoTime();
+        }
+    }
+
+    private void ensureCapacity(int count) throws IOException {
+        // room for one request at its limits plus the start of a pipelined one
+        if (size + count > 2 * (MAX_HEADER_BYTES + MAX_BODY_BYTES)) {
+            throw new IOException("More than " + 2 * (MAX_HEADER_BYTES + MAX_BODY_BYTES) + " bytes of requests buffered");
+        }
+        if (size + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + count));
+        }
+    }
+
+    /*
+     * throws IOException if the request pipelined after the last one returned is malformed or over a limit
+     */
+    public boolean isComplete() throws IOException {
+        throwIfFailed();
+        return headerEnd >= 0 && size - headerEnd >= contentLength;
+    }
+
+    /*
+     * Blocking use: read from the stream until a whole request is buffered and return it.
+     * return null if the stream ended cleanly between two requests
+     */
+    public Request read(InputStream in) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = new byte[8192];
+        }
+        while (!isComplete()) {
+            int count = in.read(readBuffer);
+            if (count < 0) {
+                if (size == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed in the middle of a request");
+            }
+            append(readBuffer, 0, count);
+        }
+        return toRequest();
+    }
+
+    /*
+     * Build the first complete request and drop its bytes from the buffer.
+     */
+    public Request toRequest() throws IOException {
+        if (!isComplete()) {
+            throw new IllegalStateException("No complete request buffered");
+        }
+
+        String method = method();
+        String target = new String(data, targetStart, targetEnd - targetStart, StandardCharsets.UTF_8);
+        String body = contentLength == 0 ? "" : new String(data, headerEnd, contentLength, StandardCharsets.UTF_8);
+
+        // the header bytes are copied so the buffer can be reused for the next request
+        byte[] headerBytes = Arrays.copyOfRange(data, headersStart, headerEnd);
+        int[] offsets = new int[headerCount * 4];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = headerOffsets[i] - headersStart;
+        }
+        Request request = new Request(method, target, body, new RequestHeaders(headerBytes, offsets, headerCount));
+        request.setVersion(version());
+        // a pipelined request was already buffered when its turn came, it starts now
+        request.setReceivedNanos(startNanos != 0 ? startNanos : System.nanoTime());
+        startNanos = 0;
+
+        // keep whatever was pipelined after it
+        int requestEnd = headerEnd + contentLength;
+        System.arraycopy(data, requestEnd, data, 0, size - requestEnd);
+        size -= requestEnd;
+        scanned = 0;
+        headerEnd = -1;
+        contentLength = 0;
+        try {
+            parseHead();
+        } catch (IOException e) {
+            // this request is whole and valid; the connection fails when the caller asks for the next one
+            failure = e;
+        }
+        return request;
+    }
+
+    private void throwIfFailed() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private String method() {
+        int length = methodEnd;
+        if (matches(0, length, "GET")) {
+            return "GET";
+        } else if (matches(0, length, "PUT")) {
+            return "PUT";
+        } else if (matches(0, length, "POST")) {
+            return "POST";
+        }
+        return new String(data, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private String version() {
+        int length = versionEnd - versionStart;
+        if (length == 0) {
+            return "HTTP/1.0"; // a request line without version is HTTP/0.9 style, treat it as the oldest we speak
+        } else if (matches(versionStart, length, "HTTP/1.1")) {
+            return "HTTP/1.1";
+        } else if (matches(versionStart, length, "HTTP/1.0")) {
+            return "HTTP/1.0";
+        }
+        return new String(data, versionStart, length, StandardCharsets.US_ASCII);
+    }
+
+    private boolean matches(int start, int length, String text) {
+        if (length != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Find the blank line that ends the header block and, once it is there, record the request line and headers.
+     * Lines end with "\r\n" or a bare "\n". Empty lines before the request line are skipped.
+     */
+    private void parseHead() throws IOException {
+        if (headerEnd >= 0) {
+            return;
+        }
+
+        // drop empty lines a client sent between two requests
+        int skip = 0;
+        while (skip < size && (data[skip] == '\r' || data[skip] == '\n')) {
+            skip++;
+        }
+        if (skip > 0) {
+            System.arraycopy(data, skip, data, 0, size - skip);
+            size -= skip;
+            scanned = 0;
+        }
+
+        int end = -1;
+        for (int i = Math.max(scanned, 1); i < size; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (data[i - 1] == '\n') {
+                end = i + 1;
+                break;
+            }
+            if (i >= 2 && data[i - 1] == '\r' && data[i - 2] == '\n') {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end < 0) {
+            scanned = size;
+            if (size > MAX_HEADER_BYTES) {
+                throw new IOException("Request header block larger than " + MAX_HEADER_BYTES + " bytes");
+            }
+            return;
+        }
+        if (end > MAX_HEADER_BYTES) {
+            throw new IOException("Request header block larger than " + MAX_HEADER_BYTES + " bytes");
+        }
+
+        int lineEnd = parseRequestLine();
+        headersStart = lineEnd;
+        parseHeaders(lineEnd, end);
+        headerEnd = end;
+    }
+
+    // "METHOD SP target SP version", return the index after the line
+    private int parseRequestLine() throws IOException {
+        int eol = indexOf((byte) '\n', 0);
+        int lineEnd = eol > 0 && data[eol - 1] == '\r' ? eol - 1 : eol;
+
+        methodEnd = indexOf((byte) ' ', 0, lineEnd);
+        if (methodEnd <= 0) {
+            throw new IOException("Invalid request line");
+        }
+        targetStart = methodEnd + 1;
+        while (targetStart < lineEnd && data[targetStart] == ' ') {
+            targetStart++;
+        }
+        targetEnd = indexOf((byte) ' ', targetStart, lineEnd);
+        if (targetEnd < 0) {
+            targetEnd = lineEnd;
+        }
+        if (targetEnd == targetStart) {
+            throw new IOException("Invalid request line");
+        }
+        versionStart = Math.min(targetEnd + 1, lineEnd);
+        versionEnd = lineEnd;
+        return eol + 1;
+    }
+
+    // "Name: value" lines up to the blank line; lines without a colon are ignored
+    private void parseHeaders(int from, int end) throws IOException {
+        headerCount = 0;
+        contentLength = 0;
+        int lineStart = from;
+        while (lineStart < end) {
+            int eol = indexOf((byte) '\n', lineStart, end);
+            int lineEnd = eol > lineStart && data[eol - 1] == '\r' ? eol - 1 : eol;
+            if (lineEnd == lineStart) {
+                break; // the blank line
+            }
+
+            int colon = indexOf((byte) ':', lineStart, lineEnd);
+            if (colon > lineStart) {
+                if (headerCount == MAX_HEADERS) {
+                    throw new IOException("More than " + MAX_HEADERS + " request headers");
+                }
+                int valueStart = colon + 1;
+                while (valueStart < lineEnd && (data[valueStart] == ' ' || data[valueStart] == '\t')) {
+                    valueStart++;
+                }
+                int valueEnd = lineEnd;
+                while (valueEnd > valueStart && (data[valueEnd - 1] == ' ' || data[valueEnd - 1] == '\t')) {
+                    valueEnd--;
+                }
+                int base = headerCount * 4;
+                headerOffsets[base] = lineStart;
+                headerOffsets[base + 1] = colon;
+                headerOffsets[base + 2] = valueStart;
+                headerOffsets[base + 3] = valueEnd;
+                headerCount++;
+
+                if (colon - lineStart == 14 && nameIs(lineStart, "content-length")) {
+                    contentLength = parseLength(valueStart, valueEnd);
+                }
+            }
+            lineStart = eol + 1;
+        }
+    }
+
+    private boolean nameIs(int start, String lowerName) {
+        for (int i = 0; i < lowerName.length(); i++) {
+            int b = data[start + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerName.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int parseLength(int start, int end) throws IOException {
+        if (start == end) {
+            throw new IOException("Invalid Content-Length");
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Invalid Content-Length");
+            }
+            value = value * 10 + digit;
+            if (value > MAX_BODY_BYTES) {
+                throw new IOException("Request body larger than " + MAX_BODY_BYTES + " bytes");
+            }
+        }
+        return (int) value;
+    }
+
+    private int indexOf(byte b, int from) {
+        return indexOf(b, from, size);
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
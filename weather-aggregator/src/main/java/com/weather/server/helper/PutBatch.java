@@ -0,0 +1,156 @@
+package com.weather.server.helper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/*
+ * Many stations in one PUT /weather/ request, for a gateway that fronts many stations.
+ *
+ * Body format: a JSON array of station objects, each with its station id in "id":
+ *  [{"id":"IDS60901","air_temp":"13.3",...}, {"id":"IDS60902",...}]
+ *
+ * Each object is kept as the exact text it was sent with (no re-serialization), so a station in a batch is stored
+ * exactly like the same object sent in a single PUT. The whole batch gets a run of consecutive Lamport values,
+ * one per object in array order, and is logged with one WAL write.
+ * An object without a string "id", with an id that could not be a /weather/<stationId> path (it contains '/' or
+ * '?'), or with a reserved one is not stored and reported back as 400; it does not fail the other stations.
+ *
+ * The listener that reads the request only count()s the objects, to reserve their Lamport values at admission
+ * like a single PUT gets its value, and logs the body as it is (one WalRecord.BATCH record) before it is queued.
+ * The body is parsed by the lane-0 consumer (RequestHandler) and, after a crash, by recovery (Storage).
+ */
+public class PutBatch {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final List<Item> items;
+
+    public static final class Item {
+        private final String stationId; // null if the object had none
+        private final String json;
+        private long lamport;
+
+        Item(String stationId, String json) {
+            this.stationId = stationId;
+            this.json = json;
+        }
+
+        public String getStationId() { return stationId; }
+        public String getJson() { return json; }
+        public long getLamport() { return lamport; }
+
+        // stored under its id: a station path id that is not reserved
+        public boolean isValid() {
+            return RequestLanes.isStationId(stationId) && !RequestLanes.isReservedStationId(stationId);
+        }
+    }
+
+    private PutBatch(List<Item> items) {
+        this.items = items;
+    }
+
+    /*
+     * Number of objects in the top-level array, without parsing them: a single pass over the characters that
+     * tracks nesting and skips strings. return 0 if the body does not start like a JSON array.
+     * For a body that parse() accepts, this is its size(); parse() catches everything this does not check.
+     */
+    public static int count(String body) {
+        if (body == null) {
+            return 0;
+        }
+        int start = 0;
+        while (start < body.length() && Character.isWhitespace(body.charAt(start))) {
+            start++;
+        }
+        if (start == body.length() || body.charAt(start) != '[') {
+            return 0;
+        }
+
+        int objects = 0;
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++; // the escaped character
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                if (c == '{' && depth == 1) {
+                    objects++;
+                }
+                depth++;
+            } else if (c == ']' || c == '}') {
+                depth--;
+                if (depth == 0) {
+                    break;
+                }
+            }
+        }
+        return objects;
+    }
+
+    /*
+     * return null if the body is not a JSON array of objects
+     */
+    public static PutBatch parse(String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+        List<Item> items = new ArrayList<>();
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return null;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                int start = (int) parser.currentTokenLocation().getCharOffset();
+                String stationId = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (name.equals("id") && value == JsonToken.VALUE_STRING && stationId == null) {
+                        stationId = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                // the parser now stands on the object's closing brace
+                int end = (int) parser.currentTokenLocation().getCharOffset() + 1;
+                items.add(new Item(stationId, body.substring(start, end)));
+            }
+            if (token != JsonToken.END_ARRAY) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null; // not valid JSON
+        }
+        return new PutBatch(items);
+    }
+
+    /*
+     * Hand out Lamport values first, first + 1, ... in array order
+     */
+    public void assignLamports(long first) {
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).lamport = first + i;
+        }
+    }
+
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public int size() {
+        return items.size();
+    }
+}
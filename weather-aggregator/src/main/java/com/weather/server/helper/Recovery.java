@@ -0,0 +1,179 @@
+package com.weather.server.helper;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * State of the crash recovery that runs in the background while the server already takes traffic.
+ *
+ *  SCANNING:  the log files are being indexed. Requests that need the data (and every PUT, which needs the
+ *             restored clock) wait for awaitIndexed(). This phase only reads record headers.
+ *  RESTORING: the newest record of every station is known. Stations are installed into weatherData one by one
+ *             in the background; a GET for a station that is still pending restores it on the spot.
+ *  DONE:      everything is back.
+ *
+ * A recovered station never overwrites a newer live PUT: installs keep whichever has the higher Lamport value.
+ */
+public class Recovery {
+    public enum Phase { SCANNING, RESTORING, DONE }
+
+    /*
+     * Newest record found for a station. body is a view into the mapped log file and is only decoded on install.
+     */
+    public static class RecoveredStation {
+        final long lamport;
+        final ByteBuffer body;
+
+        public RecoveredStation(long lamport, ByteBuffer body) {
+            this.lamport = lamport;
+            this.body = body;
+        }
+    }
+
+    private final ConcurrentHashMap<String, ExpirableData> weatherData;
+    private final StationTable stationTable;
+    private final StationHistory stationHistory;
+    private final ConcurrentHashMap<String, RecoveredStation> pending = new ConcurrentHashMap<>();
+    private final CountDownLatch indexed = new CountDownLatch(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Phase phase = Phase.SCANNING;
+
+    // progress
+    private final AtomicLong bytesScanned = new AtomicLong();
+    private volatile long bytesTotal = 0;
+    private volatile int stationsTotal = 0;
+    private final AtomicInteger stationsRestored = new AtomicInteger();
+    private final AtomicInteger restoredOnDemand = new AtomicInteger();
+
+    public Recovery(ConcurrentHashMap<String, ExpirableData> weatherData, StationTable stationTable, StationHistory stationHistory) {
+        this.weatherData = weatherData;
+        this.stationTable = stationTable;
+        this.stationHistory = stationHistory;
+    }
+
+    // called by Storage while scanning
+    void startScan(long totalBytes) {
+        this.bytesTotal = totalBytes;
+    }
+
+    void scanned(long bytes) {
+        bytesScanned.addAndGet(bytes);
+    }
+
+    /*
+     * The scan is finished: from now on every station is either in weatherData or in pending.
+     */
+    void indexed(Map<String, RecoveredStation> newest) {
+        pending.putAll(newest);
+        stationsTotal = newest.size();
+        phase = Phase.RESTORING;
+        indexed.countDown();
+    }
+
+    /*
+     * Background restore of every station nobody asked for yet.
+     */
+    void restoreAll() {
+        for (String stationId : pending.keySet()) {
+            restore(stationId);
+        }
+    }
+
+    void finish() {
+        if (indexed.getCount() > 0) {
+            indexed(Map.of()); // nothing was found
+        }
+        phase = Phase.DONE;
+        done.countDown();
+    }
+
+    public void awaitIndexed() throws InterruptedException {
+        indexed.await();
+    }
+
+    public void awaitDone() throws InterruptedException {
+        done.await();
+    }
+
+    public boolean isDone() {
+        return phase == Phase.DONE;
+    }
+
+    /*
+     * Make sure a station's recovered data is in weatherData before it is read.
+     * Cheap once recovery is done: a volatile read.
+     */
+    public void ensureRecovered(String stationId) throws InterruptedException {
+        if (phase == Phase.DONE) {
+            return;
+        }
+        awaitIndexed();
+        if (restore(stationId)) {
+            restoredOnDemand.incrementAndGet();
+        }
+    }
+
+    /*
+     * Ids of stations found in the log but not restored yet, so a station list can include them.
+     */
+    public Set<String> pendingStationIds() {
+        return phase == Phase.DONE ? Set.of() : new HashSet<>(pending.keySet());
+    }
+
+    // computeIfPresent holds the entry while installing, so a concurrent caller waits instead of seeing it missing
+    private boolean restore(String stationId) {
+        boolean[] installed = new boolean[1];
+        pending.computeIfPresent(stationId, (id, station) -> {
+            weatherData.compute(id, (key, current) -> {
+                if (current != null && current.getLamportClockValue() >= station.lamport) {
+                    return current; // a newer live PUT already arrived
+                }
+                String body = WalRecord.decodeBody(station.body);
+                int row = stationTable.stationRow(key);
+                StationTable.ParsedRecord record = stationTable.parse(body);
+                stationTable.write(row, record);
+                ExpirableData data = new ExpirableData(body, station.lamport, record != null);
+                stationHistory.add(key, data, record != null);
+                return data;
+            });
+            stationsRestored.incrementAndGet();
+            installed[0] = true;
+            return null;
+        });
+        return installed[0];
+    }
+
+    // recovery progress metric
+    public Phase getPhase() { return phase; }
+
+    public int getStationsTotal() { return stationsTotal; }
+
+    public int getStationsRestored() { return stationsRestored.get(); }
+
+    public int getRestoredOnDemand() { return restoredOnDemand.get(); }
+
+    /*
+     * 0.0 to 1.0. Scanning counts as the first half, restoring as the second.
+     */
+    public double getProgress() {
+        switch (phase) {
+            case SCANNING:
+                return bytesTotal == 0 ? 0 : 0.5 * bytesScanned.get() / bytesTotal;
+            case RESTORING:
+                return stationsTotal == 0 ? 1 : 0.5 + 0.5 * stationsRestored.get() / stationsTotal;
+            default:
+                return 1;
+        }
+    }
+
+    public String progressSummary() {
+        return String.format("Recovery %s %.0f%%: %d/%d stations restored (%d on demand), %d/%d bytes scanned",
+                phase, getProgress() * 100, stationsRestored.get(), stationsTotal, restoredOnDemand.get(), bytesScanned.get(), bytesTotal);
+    }
+}
@@ -0,0 +1,121 @@
+package com.weather.server.helper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import com.weather.http.Request;
+
+/*
+ * The request queue split into N ordered lanes.
+ * Requests are partitioned by the station id in their /weather/<id> path, so every request for a station lands
+ * in the same lane and is applied in Lamport order there, while different stations are handled by different
+ * consumer threads in parallel. Requests without a station id (e.g. GET /weather/) go to lane 0.
+ * With one lane this behaves exactly like the single PriorityBlockingQueue it replaces.
+ */
+public class RequestLanes {
+    private static final String STATION_PATH_PREFIX = "/weather/";
+
+    private final List<PriorityBlockingQueue<RequestNode>> lanes;
+
+    public RequestLanes(int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("Lane count must be at least 1");
+        }
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new PriorityBlockingQueue<RequestNode>(11, Comparator.comparingLong(request -> request.getLamportClockValue())));
+        }
+    }
+
+    /*
+     * Add the node to its station's lane.
+     * return the lane index it was added to
+     */
+    public int put(RequestNode node) {
+        int lane = laneFor(node.getRequest());
+        lanes.get(lane).put(node);
+        return lane;
+    }
+
+    public int laneFor(Request request) {
+        String stationId = stationIdOf(request.getPath());
+        if (stationId == null || lanes.size() == 1) {
+            return 0;
+        }
+        return Math.floorMod(stationId.hashCode(), lanes.size());
+    }
+
+    /*
+     * format path: "/weather/<stationId>". return null when the path does not name a station
+     */
+    public static String stationIdOf(String path) {
+        if (path == null || !path.startsWith(STATION_PATH_PREFIX)) {
+            return null;
+        }
+        int start = STATION_PATH_PREFIX.length();
+        int end = start;
+        while (end < path.length() && path.charAt(end) != '/' && path.charAt(end) != '?') {
+            end++;
+        }
+        return end > start ? path.substring(start, end) : null;
+    }
+
+    /*
+     * true if GET /weather/<stationId> would name exactly this station: not empty, no '/' or '?'
+     * (where stationIdOf stops)
+     */
+    public static boolean isStationId(String stationId) {
+        return stationId != null && !stationId.isEmpty() && stationId.indexOf('/') < 0 && stationId.indexOf('?') < 0;
+    }
+
+    /*
+     * Station ids that are GET routes of their own (/weather/stats, /weather/export), never stored
+     */
+    public static boolean isReservedStationId(String stationId) {
+        return "stats".equals(stationId) || "export".equals(stationId);
+    }
+
+    /*
+     * The station a single PUT writes to: only a path that is exactly "/weather/<stationId>" names one.
+     * Admission logs the PUT under this id, it picks the lane, and the handler stores the data under it,
+     * so recovery restores the data to the same station.
+     * return null for any other path (e.g. "/weather/A/touch", "/weather/A?x=1")
+     */
+    public static String stationPutIdOf(String path) {
+        String stationId = stationIdOf(path);
+        if (stationId == null || path.length() != STATION_PATH_PREFIX.length() + stationId.length()) {
+            return null;
+        }
+        return stationId;
+    }
+
+    public PriorityBlockingQueue<RequestNode> getLane(int index) {
+        return lanes.get(index);
+    }
+
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /*
+     * current queue depth of every lane, index = lane number
+     */
+    public int[] depths() {
+        int[] depths = new int[lanes.size()];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = lanes.get(i).size();
+        }
+        return depths;
+    }
+
+    // total number of queued requests over all lanes
+    public int size() {
+        int total = 0;
+        for (PriorityBlockingQueue<RequestNode> lane : lanes) {
+            total += lane.size();
+        }
+        return total;
+    }
+}
@@ -1,23 +1,78 @@
 package com.weather.server.helper;
 
 import com.weather.http.Request;
+import com.weather.http.Response;
 
 import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class RequestNode {
     private final Socket socket;
     private final Request request;
-    private final int lamportClockValue;
+    private final long lamportClockValue;
+    // set when the connection's own thread writes the response (virtual thread mode), null otherwise
+    private final CompletableFuture<Response> reply;
+    // hands the connection back to its listener for the next request once the response is sent, null to close it
+    private final Runnable keepAlive;
+    // batch PUT /weather/: Lamport values reserved at admission, one per object from lamportClockValue on
+    private int batchSize;
+    private final long enqueuedNanos = System.nanoTime(); // for the queue wait metric
 
-    public RequestNode(Socket socket, Request request, int lamportClockValue) {
+    public RequestNode(Socket socket, Request request, long lamportClockValue) {
+        this(socket, request, lamportClockValue, false);
+    }
+
+    public RequestNode(Socket socket, Request request, long lamportClockValue, boolean awaitReply) {
+        this(socket, request, lamportClockValue, awaitReply, null);
+    }
+
+    public RequestNode(Socket socket, Request request, long lamportClockValue, boolean awaitReply, Runnable keepAlive) {
         this.socket = socket;
         this.request = request;
         // Get the Lamport clock value from the request headers
         // this.lamportClockValue = Integer.parseInt(request.getHeaders().get("Lamport-Clock"));
         this.lamportClockValue = lamportClockValue;
+        this.reply = awaitReply ? new CompletableFuture<>() : null;
+        this.keepAlive = keepAlive;
     }
 
     public Socket getSocket() { return socket; }
     public Request getRequest() { return request; }
-    public int getLamportClockValue() { return lamportClockValue; }
+    public long getLamportClockValue() { return lamportClockValue; }
+    public long getEnqueuedNanos() { return enqueuedNanos; }
+    public int getBatchSize() { return batchSize; }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /*
+     * true when the thread that enqueued this node is waiting to send the response itself
+     */
+    public boolean isAwaitingReply() { return reply != null; }
+
+    /*
+     * true when the connection stays open after this response
+     */
+    public boolean isKeepAlive() { return keepAlive != null; }
+
+    public void resumeConnection() {
+        keepAlive.run();
+    }
+
+    public void completeReply(Response response) {
+        reply.complete(response);
+    }
+
+    public void failReply(Throwable cause) {
+        reply.completeExceptionally(cause);
+    }
+
+    /*
+     * Block the enqueuing thread until the consumer has handled this request.
+     */
+    public Response awaitReply() throws InterruptedException, ExecutionException {
+        return reply.get();
+    }
 }
@@ -1,46 +1,147 @@
 package com.weather.server.helper;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
+import com.weather.http.ChunkedOutputStream;
+import com.weather.http.EncodedResponse;
 import com.weather.http.Response;
+import com.weather.http.StatusCode;
 
 public class ResponseSender {
     /*
      * the data is sent directly back to the original client that made the request.
-     * 
+     *
      * Example format:
      *  HTTP/1.1 200 OK
         Content-Type: application/json
         Content-Length: 53
 
         {"location":"London","temperature":22.5,"wind_speed":15}
+     *
+     * The socket is left open: the caller decides whether the connection is kept alive for the next request
+     * or closed. Because of that the body is framed only by Content-Length, which is always the body's size
+     * in bytes, and nothing is written after the body.
      */
     public static void sendResponse(Socket clientSocket, Response response) throws IOException {
-        /*
-         * True: the auto-flush feature. It ensures that every time call println(), the data is immediately sent over the network to the client. 
-         * Without this, the data might remain buffered on the server side, and the client would not receive the response.
-         * 
-         * The PrintWriter is created on the clientSocket, so its output goes over the network to the specific machine that connected to your server.
-         */
-        try (PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)){
-
-            // Write the response status line
-            out.println("HTTP/1.1 " + response.getStatusCode() + " " + response.getStatusMessage());
-            
-            // Write the headers
-            for (String header : response.getHeaders().keySet()) {
-                out.println(header + ": " + response.getHeaders().get(header));
-            }
-            out.println(); // Blank line between headers and body
-
-            // Write the body if it exists
-            if (response.getBody() != null) {
-                out.println(response.getBody());
-            }
-        }
-    } 
+        if (response.getEncoded() != null) {
+            sendEncoded(clientSocket, response.getEncoded(), response.getHeaders());
+            return;
+        }
+        if (response.getStreamingBody() != null) {
+            sendStreaming(clientSocket, response);
+            return;
+        }
+
+        byte[] body = response.getBody() == null ? new byte[0] : response.getBody().getBytes(StandardCharsets.UTF_8);
+        if (response.getStatusCode() != StatusCode.NOT_MODIFIED.getStatusCode()) {
+            // a 304 never has a body, so it ends after the headers
+            response.addHeaders("Content-Length", String.valueOf(body.length));
+        }
+
+        StringBuilder head = new StringBuilder();
+        // Write the response status line
+        head.append("HTTP/1.1 ").append(response.getStatusCode()).append(' ').append(response.getStatusMessage()).append("\r\n");
+
+        // Write the headers
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n"); // Blank line between headers and body
+
+        // one write for the whole response, so a small response goes out in a single segment
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(head.length() + body.length);
+        buffer.write(head.toString().getBytes(StandardCharsets.UTF_8));
+        buffer.write(body);
+
+        OutputStream out = clientSocket.getOutputStream();
+        buffer.writeTo(out);
+        out.flush();
+    }
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /*
+     * Streaming body: the head goes out first, then the body in chunks as it is produced
+     * (Transfer-Encoding: chunked instead of Content-Length). With "Content-Encoding: gzip" set by the handler
+     * the body is compressed on the way. The chunked framing ends the body, so the connection can stay open.
+     */
+    private static void sendStreaming(Socket clientSocket, Response response) throws IOException {
+        response.addHeaders("Transfer-Encoding", "chunked");
+
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.getStatusCode()).append(' ').append(response.getStatusMessage()).append("\r\n");
+        for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n");
+
+        OutputStream socketOut = new BufferedOutputStream(clientSocket.getOutputStream(), CHUNK_SIZE + 16);
+        socketOut.write(head.toString().getBytes(StandardCharsets.UTF_8));
+
+        ChunkedOutputStream chunked = new ChunkedOutputStream(socketOut, CHUNK_SIZE);
+        if ("gzip".equals(response.getHeaders().get("Content-Encoding"))) {
+            GZIPOutputStream gzip = new GZIPOutputStream(chunked, CHUNK_SIZE);
+            response.getStreamingBody().writeTo(gzip);
+            gzip.finish(); // writes the gzip trailer, leaves the chunked stream open
+        } else {
+            response.getStreamingBody().writeTo(chunked);
+        }
+        chunked.finish();
+    }
+
+    // per thread scratch buffer for encoded responses, grown when a response does not fit
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    /*
+     * Pre-encoded response: copy the cached head, the per-request headers and the cached body into one buffer
+     * and write it with a single call. The per-request headers are ASCII and copied char by char,
+     * so no String is encoded here.
+     */
+    private static void sendEncoded(Socket clientSocket, EncodedResponse encoded, Map<String, String> headers) throws IOException {
+        byte[] head = encoded.getHead();
+        byte[] body = encoded.getBody();
 
+        int size = head.length + body.length + 2;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            size += header.getKey().length() + header.getValue().length() + 4;
+        }
+        byte[] buffer = SCRATCH.get();
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+            SCRATCH.set(buffer);
+        }
 
+        System.arraycopy(head, 0, buffer, 0, head.length);
+        int position = head.length;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            position = putAscii(buffer, position, header.getKey());
+            buffer[position++] = ':';
+            buffer[position++] = ' ';
+            position = putAscii(buffer, position, header.getValue());
+            buffer[position++] = '\r';
+            buffer[position++] = '\n';
+        }
+        buffer[position++] = '\r'; // Blank line between headers and body
+        buffer[position++] = '\n';
+        System.arraycopy(body, 0, buffer, position, body.length);
+        position += body.length;
+
+        OutputStream out = clientSocket.getOutputStream();
+        out.write(buffer, 0, position);
+        out.flush();
+    }
+
+    private static int putAscii(byte[] buffer, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
 }
@@ -0,0 +1,87 @@
+package com.weather.server.helper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.weather.log.Log;
+import com.weather.metrics.LatencyHistogram;
+import com.weather.server.AggregationServer;
+
+/*
+ * Latency of every stage a request goes through, for GET /metrics.
+ *
+ * Stages (each one a LatencyHistogram, its count doubles as the stage's counter):
+ *  - accept:         from accept() returning a connection to the connection being ready to read
+ *                    (nio: registered with the selector, virtual: its thread running)
+ *  - parse:          from the first byte of a request arriving to the Request being handed to admission
+ *  - wal_append:     one append to the write-ahead log, waiting for the force() included (kept by WriteAheadLog)
+ *  - queue_wait:     from the RequestNode entering its lane to a consumer taking it
+ *  - handler:        RequestHandler applying the request and building the response
+ *  - response_write: writing the response to the socket
+ *  - expiry_sweep:   one run of the DataExpirer (kept by DataExpirer)
+ *
+ * Recording is a System.nanoTime() difference into a lock-free histogram, nothing is allocated, so the
+ * metrics are always on. Only building the /metrics response allocates.
+ */
+public class ServerMetrics {
+    private final long startMillis = System.currentTimeMillis();
+
+    private final LatencyHistogram accept = new LatencyHistogram();
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram handler = new LatencyHistogram();
+    private final LatencyHistogram responseWrite = new LatencyHistogram();
+
+    public LatencyHistogram getAccept() { return accept; }
+    public LatencyHistogram getParse() { return parse; }
+    public LatencyHistogram getQueueWait() { return queueWait; }
+    public LatencyHistogram getHandler() { return handler; }
+    public LatencyHistogram getResponseWrite() { return responseWrite; }
+
+    /*
+     * Everything /metrics reports: the server's current state and the stage histograms, latencies in microseconds.
+     */
+    public Map<String, Object> snapshot(AggregationServer server) {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("uptime_seconds", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startMillis));
+        metrics.put("clock_mode", server.getClock().getMode());
+        metrics.put("lamport_clock", server.getClock().get());
+        metrics.put("stations", server.getWeatherData().size());
+        metrics.put("queue_depth", server.getRequestLanes().size());
+        metrics.put("lane_depths", server.getRequestLanes().depths());
+        metrics.put("wal_bytes", server.getStorage().getWal().getBytesWritten());
+        metrics.put("wal_records", server.getStorage().getWal().getRecordCount());
+        metrics.put("long_poll_waiting", server.getStationSubscriptions().getWaiting());
+        metrics.put("log_pending", Log.getPending());
+        metrics.put("log_dropped", Log.getDropped());
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        stages.put("accept", describe(accept));
+        stages.put("parse", describe(parse));
+        stages.put("wal_append", describe(server.getStorage().getWal().getAppendLatency()));
+        stages.put("queue_wait", describe(queueWait));
+        stages.put("handler", describe(handler));
+        stages.put("response_write", describe(responseWrite));
+        stages.put("expiry_sweep", describe(server.getDataExpirer().getSweepLatency()));
+        metrics.put("stages", stages);
+        return metrics;
+    }
+
+    private static Map<String, Object> describe(LatencyHistogram histogram) {
+        Map<String, Object> stage = new LinkedHashMap<>();
+        stage.put("count", histogram.getCount());
+        stage.put("mean_us", micros(histogram.getMean()));
+        stage.put("p50_us", micros(histogram.percentile(50)));
+        stage.put("p90_us", micros(histogram.percentile(90)));
+        stage.put("p99_us", micros(histogram.percentile(99)));
+        stage.put("p999_us", micros(histogram.percentile(99.9)));
+        stage.put("max_us", micros(histogram.getMax()));
+        return stage;
+    }
+
+    // nanoseconds to microseconds with one decimal
+    private static double micros(double nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.weather.server.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.weather.http.StreamingBody;
+
+/*
+ * Body of GET /weather/export: every live station's latest data in one JSON object, keyed by station id:
+ *  {"IDS60901":{"id":"IDS60901",...},"IDS60902":{...}}
+ * A body that is not a JSON object is exported as a JSON string.
+ *
+ * The snapshot is taken when the export is created: only the (id, ExpirableData) references are copied, which
+ * takes no lock. Each ExpirableData is immutable, so every station is exported as one complete version, the one
+ * it had when the snapshot reached it. PUTs that land while the export is being sent do not change it.
+ * The station bodies are copied straight from their encoded GET responses, nothing is serialized again.
+ */
+public class StationExport implements StreamingBody {
+    private final List<String> stationIds;
+    private final List<ExpirableData> stations;
+
+    public StationExport(ConcurrentHashMap<String, ExpirableData> weatherData) {
+        int size = weatherData.size();
+        this.stationIds = new ArrayList<>(size);
+        this.stations = new ArrayList<>(size);
+        for (Map.Entry<String, ExpirableData> entry : weatherData.entrySet()) {
+            stationIds.add(entry.getKey());
+            stations.add(entry.getValue());
+        }
+    }
+
+    public int size() {
+        return stations.size();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        out.write('{');
+        for (int i = 0; i < stations.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write('"');
+            out.write(encoder.quoteAsUTF8(stationIds.get(i)));
+            out.write('"');
+            out.write(':');
+
+            ExpirableData data = stations.get(i);
+            byte[] body = data.getEncodedResponse().getBody();
+            if (data.isJsonObject()) {
+                out.write(body);
+            } else {
+                out.write('"');
+                out.write(encoder.quoteAsUTF8(new String(body, StandardCharsets.UTF_8)));
+                out.write('"');
+            }
+        }
+        out.write('}');
+    }
+}
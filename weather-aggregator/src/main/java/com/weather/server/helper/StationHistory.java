@@ -0,0 +1,119 @@
+package com.weather.server.helper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/*
+ * The last N observations of every station, for GET /weather/<id>/history?from=&to=.
+ *
+ * Each station has a fixed-size ring: when it is full the oldest observation is overwritten, so the memory per
+ * station is bounded by N no matter how often it reports. A slot is two longs (Lamport value, arrival time in epoch
+ * milliseconds) and a reference to the body bytes of the observation's encoded GET response, which are immutable
+ * and shared with ExpirableData, so keeping history does not copy any body.
+ *
+ * A station's ring is dropped when the station expires (DataExpirer, under the same bin lock that removes it from
+ * weatherData), so the number of rings follows the live stations instead of every id that ever reported. A station
+ * that reports again after expiring starts a new history.
+ */
+public class StationHistory {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Ring> rings = new ConcurrentHashMap<>();
+
+    private static final class Ring {
+        final long[] lamports;
+        final long[] arrivals;
+        final byte[][] bodies;
+        final boolean[] isJson; // false if the body is not a JSON object, it is then returned as a string
+        int next = 0;  // slot written by the next add
+        int count = 0;
+
+        Ring(int capacity) {
+            lamports = new long[capacity];
+            arrivals = new long[capacity];
+            bodies = new byte[capacity][];
+            isJson = new boolean[capacity];
+        }
+    }
+
+    public StationHistory(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /*
+     * Record an observation that was just stored for the station.
+     */
+    public void add(String stationId, ExpirableData data, boolean isJson) {
+        Ring ring = rings.computeIfAbsent(stationId, id -> new Ring(capacity));
+        synchronized (ring) {
+            int slot = ring.next;
+            ring.lamports[slot] = data.getLamportClockValue();
+            ring.arrivals[slot] = data.getLastUpdated();
+            ring.bodies[slot] = data.getEncodedResponse().getBody();
+            ring.isJson[slot] = isJson;
+            ring.next = (slot + 1) % capacity;
+            ring.count = Math.min(ring.count + 1, capacity);
+        }
+    }
+
+    /*
+     * Forget the station's observations. Called when it expires.
+     */
+    public void remove(String stationId) {
+        rings.remove(stationId);
+    }
+
+    public boolean hasHistory(String stationId) {
+        return rings.containsKey(stationId);
+    }
+
+    /*
+     * Observations with from <= arrival time <= to, oldest first, as a JSON array:
+     *  [{"lamport":12,"time":1700000000000,"data":{...the PUT body...}}, ...]
+     * return null if the station has no history
+     */
+    public String toJson(String stationId, long from, long to) throws IOException {
+        Ring ring = rings.get(stationId);
+        if (ring == null) {
+            return null;
+        }
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            json.writeStartArray();
+            synchronized (ring) {
+                int oldest = (ring.next - ring.count + capacity) % capacity;
+                for (int i = 0; i < ring.count; i++) {
+                    int slot = (oldest + i) % capacity;
+                    long arrival = ring.arrivals[slot];
+                    if (arrival < from || arrival > to) {
+                        continue;
+                    }
+                    json.writeStartObject();
+                    json.writeNumberField("lamport", ring.lamports[slot]);
+                    json.writeNumberField("time", arrival);
+                    json.writeFieldName("data");
+                    String body = new String(ring.bodies[slot], StandardCharsets.UTF_8);
+                    if (ring.isJson[slot]) {
+                        json.writeRawValue(body);
+                    } else {
+                        json.writeString(body);
+                    }
+                    json.writeEndObject();
+                }
+            }
+            json.writeEndArray();
+        }
+        return out.toString();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
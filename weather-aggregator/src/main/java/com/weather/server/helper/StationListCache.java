@@ -0,0 +1,73 @@
+package com.weather.server.helper;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weather.http.EncodedResponse;
+import com.weather.http.StatusCode;
+
+/*
+ * The encoded response of GET /weather/ (the JSON list of station ids).
+ * It only changes when a station is added or removed, so it is serialized once per change of the key set
+ * instead of once per request. Whoever adds or removes a key calls invalidate() after changing the map;
+ * a list built while that happens is tagged with the old version and simply rebuilt on the next GET.
+ */
+public class StationListCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper(); // thread safe once configured
+
+    private final ConcurrentHashMap<String, ExpirableData> weatherData;
+    private final Recovery recovery;
+    private final AtomicLong version = new AtomicLong();
+    private volatile Cached cached;
+
+    private static class Cached {
+        final long version;
+        final EncodedResponse response;
+
+        Cached(long version, EncodedResponse response) {
+            this.version = version;
+            this.response = response;
+        }
+    }
+
+    public StationListCache(ConcurrentHashMap<String, ExpirableData> weatherData, Recovery recovery) {
+        this.weatherData = weatherData;
+        this.recovery = recovery;
+    }
+
+    /*
+     * The key set of weatherData changed
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    public EncodedResponse get() throws JsonProcessingException {
+        long current = version.get();
+        Cached entry = cached;
+        if (entry != null && entry.version == current) {
+            return entry.response;
+        }
+
+        // while recovery runs, stations found in the log but not restored yet are listed too
+        Set<String> pending = recovery.pendingStationIds();
+        Set<String> stationIds = new HashSet<>(weatherData.keySet());
+        stationIds.addAll(pending);
+        // Before: JsON object ["ID001", "ID002"] --> After ObjectMapper "[\"ID001\",\"ID002\"]"
+        EncodedResponse response = EncodedResponse.of(StatusCode.OK, "application/json", MAPPER.writeValueAsString(stationIds));
+
+        if (pending.isEmpty() && recovery.isDone()) {
+            // restores during recovery do not invalidate, so only a list built afterwards is kept
+            cached = new Cached(current, response);
+        }
+        return response;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+}
@@ -0,0 +1,112 @@
+package com.weather.server.helper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Count, min, max and mean of a few configured numeric fields (e.g. air_temp) over all live stations,
+ * for GET /weather/stats?field=...
+ *
+ * The aggregates are never computed by walking the stations. They are kept up to date from StationTable:
+ * every row write (a PUT, a recovered station, an expired station being cleared) reports the station's old
+ * and new value of each field, and the aggregate swaps one for the other:
+ *  count and sum are adjusted, so the mean is O(1)
+ *  values are kept in a sorted multiset (value -> number of stations); min and max are read from its ends
+ *  after every update, O(log distinct values), and cached, so reading them is O(1)
+ */
+public class StationStats implements StationTable.WriteListener {
+    private final StationTable table;
+    private final Map<String, FieldAggregate> aggregates = new LinkedHashMap<>(); // fixed after construction
+    private final int[] fields;
+    private final FieldAggregate[] byIndex;
+
+    /*
+     * Aggregate of one field. Updates come from any consumer lane, so every method locks the aggregate itself.
+     */
+    public static final class FieldAggregate {
+        private final String field;
+        private final TreeMap<Double, Integer> values = new TreeMap<>();
+        private long count = 0;
+        private double sum = 0;
+        private double min = Double.NaN; // values.firstKey() and lastKey() as of the last update
+        private double max = Double.NaN;
+
+        FieldAggregate(String field) {
+            this.field = field;
+        }
+
+        synchronized void replace(double oldValue, double newValue) {
+            if (Double.compare(oldValue, newValue) == 0) {
+                return; // same value (or both NaN)
+            }
+            if (!Double.isNaN(oldValue)) {
+                values.computeIfPresent(oldValue, (value, stations) -> stations == 1 ? null : stations - 1);
+                count--;
+                sum -= oldValue;
+            }
+            if (!Double.isNaN(newValue)) {
+                values.merge(newValue, 1, Integer::sum);
+                count++;
+                sum += newValue;
+            }
+            if (count == 0) {
+                sum = 0; // drop the rounding error collected so far
+                min = Double.NaN;
+                max = Double.NaN;
+            } else {
+                min = values.firstKey();
+                max = values.lastKey();
+            }
+        }
+
+        /*
+         * {"field":"air_temp","count":3,"min":10.5,"max":14.0,"mean":12.1}, min/max/mean are null without values
+         */
+        public synchronized Map<String, Object> snapshot() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("field", field);
+            result.put("count", count);
+            result.put("min", count == 0 ? null : min);
+            result.put("max", count == 0 ? null : max);
+            result.put("mean", count == 0 ? null : sum / count);
+            return result;
+        }
+    }
+
+    public StationStats(StationTable table, List<String> fieldNames) {
+        this.table = table;
+        this.fields = new int[fieldNames.size()];
+        this.byIndex = new FieldAggregate[fieldNames.size()];
+        for (int i = 0; i < fieldNames.size(); i++) {
+            String name = fieldNames.get(i);
+            FieldAggregate aggregate = new FieldAggregate(name);
+            aggregates.put(name, aggregate);
+            byIndex[i] = aggregate;
+            fields[i] = table.internField(name); // so the column exists before the first PUT
+        }
+        table.setWriteListener(this);
+    }
+
+    /*
+     * Called by StationTable.write while the station's row still holds its old values
+     */
+    @Override
+    public void beforeWrite(int row, StationTable.ParsedRecord record) {
+        for (int i = 0; i < fields.length; i++) {
+            double oldValue = table.getNumber(row, fields[i]);
+            double newValue = record == null ? Double.NaN : record.getNumber(fields[i]);
+            byIndex[i].replace(oldValue, newValue);
+        }
+    }
+
+    // null if the field is not one of the configured ones
+    public FieldAggregate get(String field) {
+        return aggregates.get(field);
+    }
+
+    public Iterable<String> getFields() {
+        return aggregates.keySet();
+    }
+}
@@ -0,0 +1,166 @@
+package com.weather.server.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Long-poll subscriptions: GET /weather/<id>?wait=ms parks here until the station gets new data or the wait is over.
+ *
+ * A parked request holds no thread. It is only a Waiter in the station's list plus a timeout on one shared
+ * timer thread. When a PUT is applied, publish() takes the whole list of the station and wakes every waiter on
+ * a virtual thread, so the consumer lane that applied the PUT goes on at once and thousands of subscribers
+ * are answered in parallel.
+ *
+ * Every waiter is woken exactly once: by publish, by its timeout or right away by subscribe when the station
+ * already changed while it was being registered. The first of those to claim it runs its wake action.
+ */
+public class StationSubscriptions {
+    public static final long MAX_WAIT_MILLIS = 60000; // longer waits are cut to this
+
+    // station id -> parked waiters, only changed inside compute() so publish never misses a new waiter
+    private final ConcurrentHashMap<String, List<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "long-poll-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService wakers = Executors.newVirtualThreadPerTaskExecutor();
+
+    // fan-out metrics
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong woken = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong publishes = new AtomicLong();
+    private final AtomicLong publishNanos = new AtomicLong();
+    private volatile int largestFanOut = 0;
+
+    private static final class Waiter {
+        final Runnable wake;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        volatile ScheduledFuture<?> timeout;
+
+        Waiter(Runnable wake) {
+            this.wake = wake;
+        }
+    }
+
+    /*
+     * Park a request on the station.
+     * changed: checked once more after registering, true if the station moved on in the meantime
+     * wake: sends the response, runs once on a virtual thread (new data, timeout, or changed)
+     */
+    public void subscribe(String stationId, long waitMillis, BooleanSupplier changed, Runnable wake) {
+        Waiter waiter = new Waiter(wake);
+        waiting.incrementAndGet();
+        waiters.compute(stationId, (id, list) -> {
+            List<Waiter> current = list == null ? new ArrayList<>() : list;
+            current.add(waiter);
+            return current;
+        });
+        waiter.timeout = timer.schedule(() -> {
+            if (claim(waiter)) {
+                timedOut.incrementAndGet();
+                waiters.computeIfPresent(stationId, (id, list) -> {
+                    list.remove(waiter);
+                    return list.isEmpty() ? null : list;
+                });
+                run(waiter);
+            }
+        }, Math.min(waitMillis, MAX_WAIT_MILLIS), TimeUnit.MILLISECONDS);
+
+        // a PUT that landed between the caller's check and the registration above did not see this waiter
+        if (changed.getAsBoolean()) {
+            wakeNow(stationId, waiter);
+        }
+    }
+
+    /*
+     * The station has new data: wake everything parked on it. Called after the data is visible in the map.
+     */
+    public void publish(String stationId) {
+        List<Waiter> list = waiters.remove(stationId);
+        if (list == null) {
+            return; // nobody is waiting, the common case costs one map lookup
+        }
+        long start = System.nanoTime();
+        int count = 0;
+        for (Waiter waiter : list) {
+            if (claim(waiter)) {
+                cancelTimeout(waiter);
+                run(waiter);
+                count++;
+            }
+        }
+        woken.addAndGet(count);
+        publishes.incrementAndGet();
+        publishNanos.addAndGet(System.nanoTime() - start);
+        largestFanOut = Math.max(largestFanOut, count);
+    }
+
+    private void wakeNow(String stationId, Waiter waiter) {
+        if (claim(waiter)) {
+            cancelTimeout(waiter);
+            waiters.computeIfPresent(stationId, (id, list) -> {
+                list.remove(waiter);
+                return list.isEmpty() ? null : list;
+            });
+            woken.incrementAndGet();
+            run(waiter);
+        }
+    }
+
+    // on a virtual thread; once close() has shut the wakers down (a lane still finishing a PUT), on the caller's thread
+    private void run(Waiter waiter) {
+        try {
+            wakers.execute(waiter.wake);
+        } catch (RejectedExecutionException e) {
+            waiter.wake.run();
+        }
+    }
+
+    // the timeout may not be set yet if the waiter is woken while subscribe() is still running; it then finds it claimed
+    private static void cancelTimeout(Waiter waiter) {
+        ScheduledFuture<?> timeout = waiter.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    private boolean claim(Waiter waiter) {
+        if (waiter.claimed.compareAndSet(false, true)) {
+            waiting.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void close() {
+        timer.shutdownNow();
+        wakers.shutdown();
+    }
+
+    // metrics
+    public int getWaiting() { return waiting.get(); }
+
+    public long getWoken() { return woken.get(); }
+
+    public long getTimedOut() { return timedOut.get(); }
+
+    public String statsSummary() {
+        long count = publishes.get();
+        return String.format("Long-poll: %d waiting, %d woken by updates, %d timed out, largest fan-out %d, avg publish %.1f us",
+                waiting.get(), woken.get(), timedOut.get(), largestFanOut,
+                count == 0 ? 0.0 : publishNanos.get() / 1000.0 / count);
+    }
+}
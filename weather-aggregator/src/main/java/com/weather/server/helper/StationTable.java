@@ -0,0 +1,361 @@
+package com.weather.server.helper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/*
+ * Typed, column oriented copy of the latest observation of every station.
+ *
+ * A PUT body is parsed once (parse()) into its top-level fields. Numeric values, JSON numbers as well as numeric
+ * strings like "13.3" (the ContentServer sends everything as strings), go into one double column per field;
+ * other strings go into one String column per field and are deduplicated, so "SA" or "Partly cloudy" is held once
+ * no matter how many stations report it. Nested objects, arrays, booleans and nulls are only kept in the raw JSON.
+ *
+ * Station ids and field names are interned to int indexes: row = station, column = field. An expired station gives
+ * its id and row back (release()) and the row goes to the next new station, so the table grows with the stations
+ * that are live at the same time, not with every id that ever reported. Columns are split in pages of PAGE_SIZE
+ * rows that are never copied, so growing the table does not move values under a concurrent writer.
+ *
+ * The raw JSON stays available for GET in ExpirableData's encoded response; this table is for reading single
+ * values (aggregates, history) without parsing JSON again.
+ *
+ * Writes to a row must be serialized per station. RequestHandler and Recovery look the row up and write it inside
+ * weatherData.compute() for the station and DataExpirer releases the row inside the computeIfPresent() that
+ * removes it, so a row always matches the ExpirableData in the map and is never written after it was handed to
+ * another station. Readers take no lock and may see a row halfway through an update.
+ */
+public class StationTable {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_DEDUPLICATED_STRINGS = 64 * 1024; // beyond this new values are kept as they are
+    private static final int MAX_FIELDS = 256; // fields beyond this are only kept in the raw JSON
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final ConcurrentHashMap<String, Integer> stationRows = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRow = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Integer> freeRows = new ConcurrentLinkedQueue<>(); // released, all cleared
+    private final ConcurrentHashMap<String, Integer> fieldIndexes = new ConcurrentHashMap<>();
+    private final List<String> fieldNames = new ArrayList<>(); // guarded by fieldIndexes' computeIfAbsent
+    private volatile Column[] columns = new Column[0];
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+
+    /*
+     * One PUT body, decoded. Field indexes refer to this table.
+     */
+    public static final class ParsedRecord {
+        final int[] numericFields;
+        final double[] numericValues;
+        final int[] stringFields;
+        final String[] stringValues;
+
+        ParsedRecord(int[] numericFields, double[] numericValues, int[] stringFields, String[] stringValues) {
+            this.numericFields = numericFields;
+            this.numericValues = numericValues;
+            this.stringFields = stringFields;
+            this.stringValues = stringValues;
+        }
+
+        // NaN if the record has no numeric value for the field
+        public double getNumber(int field) {
+            for (int i = 0; i < numericFields.length; i++) {
+                if (numericFields[i] == field) {
+                    return numericValues[i];
+                }
+            }
+            return Double.NaN;
+        }
+    }
+
+    /*
+     * Told about every row write before it happens, while the row still holds the old values (see StationStats).
+     * Runs under the same per-station serialization as the write itself.
+     */
+    public interface WriteListener {
+        void beforeWrite(int row, ParsedRecord record);
+    }
+
+    private volatile WriteListener writeListener;
+
+    // one field: a numeric and a string page directory, each page allocated when first written
+    private static final class Column {
+        volatile double[][] numbers = new double[0][];
+        volatile String[][] texts = new String[0][];
+    }
+
+    /*
+     * The station's row, taking a released one (or a new one) if it has none.
+     * Call it under the station's serialization (see the class comment), like write().
+     */
+    public int stationRow(String stationId) {
+        return stationRows.computeIfAbsent(stationId, id -> {
+            Integer free = freeRows.poll();
+            return free != null ? free : nextRow.getAndIncrement();
+        });
+    }
+
+    /*
+     * The station expired: clear its row and give the row and the id back.
+     */
+    public void release(String stationId) {
+        Integer row = stationRows.remove(stationId);
+        if (row != null) {
+            write(row, null);
+            freeRows.add(row);
+        }
+    }
+
+    // -1 if the field was never seen
+    public int fieldIndex(String name) {
+        Integer index = fieldIndexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    public String fieldName(int field) {
+        synchronized (fieldNames) {
+            return fieldNames.get(field);
+        }
+    }
+
+    public int getFieldCount() {
+        return columns.length;
+    }
+
+    public int getStationCount() {
+        return stationRows.size();
+    }
+
+    // rows ever allocated, released ones included
+    public int getRowCount() {
+        return nextRow.get();
+    }
+
+    public void setWriteListener(WriteListener writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    int internField(String name) {
+        Integer index = fieldIndexes.get(name);
+        if (index != null) {
+            return index;
+        }
+        if (fieldIndexes.size() >= MAX_FIELDS) {
+            return -1;
+        }
+        return fieldIndexes.computeIfAbsent(name, key -> {
+            synchronized (fieldNames) {
+                int field = fieldNames.size();
+                fieldNames.add(key);
+                Column[] grown = Arrays.copyOf(columns, field + 1);
+                grown[field] = new Column();
+                columns = grown;
+                return field;
+            }
+        });
+    }
+
+    private String dedupe(String value) {
+        String shared = strings.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (strings.size() >= MAX_DEDUPLICATED_STRINGS) {
+            return value;
+        }
+        shared = strings.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
+    /*
+     * Decode a PUT body. return null if it is not a JSON object, the station is then only kept as raw JSON
+     */
+    public ParsedRecord parse(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        int[] numericFields = new int[8];
+        double[] numericValues = new double[8];
+        int numericCount = 0;
+        int[] stringFields = new int[8];
+        String[] stringValues = new String[8];
+        int stringCount = 0;
+
+        try (JsonParser parser = JSON.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                token = parser.nextToken();
+
+                double number = Double.NaN;
+                String text = null;
+                if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    number = parser.getDoubleValue();
+                } else if (token == JsonToken.VALUE_STRING) {
+                    text = parser.getText();
+                    number = parseNumber(text);
+                } else {
+                    parser.skipChildren(); // objects, arrays, booleans, null: raw JSON only
+                    continue;
+                }
+
+                int field = internField(name);
+                if (field < 0) {
+                    continue;
+                }
+                if (!Double.isNaN(number)) {
+                    if (numericCount == numericFields.length) {
+                        numericFields = Arrays.copyOf(numericFields, numericCount * 2);
+                        numericValues = Arrays.copyOf(numericValues, numericCount * 2);
+                    }
+                    numericFields[numericCount] = field;
+                    numericValues[numericCount++] = number;
+                } else {
+                    if (stringCount == stringFields.length) {
+                        stringFields = Arrays.copyOf(stringFields, stringCount * 2);
+                        stringValues = Arrays.copyOf(stringValues, stringCount * 2);
+                    }
+                    stringFields[stringCount] = field;
+                    stringValues[stringCount++] = dedupe(text);
+                }
+            }
+            if (token != JsonToken.END_OBJECT) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null; // not valid JSON
+        }
+
+        return new ParsedRecord(Arrays.copyOf(numericFields, numericCount), Arrays.copyOf(numericValues, numericCount),
+                Arrays.copyOf(stringFields, stringCount), Arrays.copyOf(stringValues, stringCount));
+    }
+
+    // NaN unless the whole string is a finite decimal number
+    private static double parseNumber(String text) {
+        if (text.isEmpty() || text.length() > 32) {
+            return Double.NaN;
+        }
+        char first = text.charAt(0);
+        if (!(first == '-' || first == '+' || first == '.' || (first >= '0' && first <= '9'))) {
+            return Double.NaN; // cheap reject before the exception path
+        }
+        try {
+            double value = Double.parseDouble(text);
+            return Double.isInfinite(value) ? Double.NaN : value;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /*
+     * Replace the row with the record: fields the record does not carry are cleared. A null record clears the row.
+     * Callers serialize writes per station (see the class comment).
+     */
+    public void write(int row, ParsedRecord record) {
+        WriteListener listener = writeListener;
+        if (listener != null) {
+            listener.beforeWrite(row, record);
+        }
+
+        Column[] current = columns;
+        int page = row >>> PAGE_BITS;
+        int slot = row & (PAGE_SIZE - 1);
+
+        // clear what is already there, then set the new values
+        for (Column column : current) {
+            double[][] numbers = column.numbers;
+            if (page < numbers.length && numbers[page] != null) {
+                numbers[page][slot] = Double.NaN;
+            }
+            String[][] texts = column.texts;
+            if (page < texts.length && texts[page] != null) {
+                texts[page][slot] = null;
+            }
+        }
+        if (record == null) {
+            return;
+        }
+        for (int i = 0; i < record.numericFields.length; i++) {
+            numericPage(current[record.numericFields[i]], page)[slot] = record.numericValues[i];
+        }
+        for (int i = 0; i < record.stringFields.length; i++) {
+            textPage(current[record.stringFields[i]], page)[slot] = record.stringValues[i];
+        }
+    }
+
+    // NaN when the station has no numeric value for the field
+    public double getNumber(int row, int field) {
+        Column[] current = columns;
+        if (row < 0 || field < 0 || field >= current.length) {
+            return Double.NaN;
+        }
+        double[][] numbers = current[field].numbers;
+        int page = row >>> PAGE_BITS;
+        if (page >= numbers.length || numbers[page] == null) {
+            return Double.NaN;
+        }
+        return numbers[page][row & (PAGE_SIZE - 1)];
+    }
+
+    // null when the station has no string value for the field
+    public String getString(int row, int field) {
+        Column[] current = columns;
+        if (row < 0 || field < 0 || field >= current.length) {
+            return null;
+        }
+        String[][] texts = current[field].texts;
+        int page = row >>> PAGE_BITS;
+        if (page >= texts.length || texts[page] == null) {
+            return null;
+        }
+        return texts[page][row & (PAGE_SIZE - 1)];
+    }
+
+    private static double[] numericPage(Column column, int page) {
+        double[][] numbers = column.numbers;
+        if (page < numbers.length && numbers[page] != null) {
+            return numbers[page];
+        }
+        synchronized (column) {
+            numbers = column.numbers;
+            if (page >= numbers.length) {
+                numbers = Arrays.copyOf(numbers, page + 1); // copies page pointers only
+            }
+            if (numbers[page] == null) {
+                double[] fresh = new double[PAGE_SIZE];
+                Arrays.fill(fresh, Double.NaN);
+                numbers[page] = fresh;
+            }
+            column.numbers = numbers;
+            return numbers[page];
+        }
+    }
+
+    private static String[] textPage(Column column, int page) {
+        String[][] texts = column.texts;
+        if (page < texts.length && texts[page] != null) {
+            return texts[page];
+        }
+        synchronized (column) {
+            texts = column.texts;
+            if (page >= texts.length) {
+                texts = Arrays.copyOf(texts, page + 1);
+            }
+            if (texts[page] == null) {
+                texts[page] = new String[PAGE_SIZE];
+            }
+            column.texts = texts;
+            return texts[page];
+        }
+    }
+}
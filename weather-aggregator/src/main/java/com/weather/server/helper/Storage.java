@@ -1,33 +1,96 @@
 package com.weather.server.helper;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import com.weather.log.Log;
 import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
 
 /*
  * write-ahead log for persistent  storage.
- * handle the file I/O and the logic for crash recovery, using text file
- * Only store PUT request because if the GET client dont need to be stored its request. 
+ * handle the file I/O and the logic for crash recovery
+ * Only store PUT request because if the GET client dont need to be stored its request.
  * Because if server crash the GET client will recognise this as communication fail and resend
+ *
+ * The log file stays open in a WriteAheadLog, which batches concurrent appends into one write and one force().
+ * Records use the binary, checksummed WalRecord format (data/server.wal).
+ *
+ * Checkpoints keep the log from growing forever. A checkpoint rolls data/server.wal over to a numbered segment
+ * (data/server.wal.<n>), writes data/snapshot.wal with the latest body and Lamport value of every station plus
+ * the PUTs that are logged but not committed yet, and then deletes the rolled segments.
+ * Recovery reads the snapshot, any segments left by an interrupted checkpoint and then the live log, in the
+ * background (see Recovery).
+ *
+ * Logs written by older versions in the text format (data/server.log, data/server.log.<n>, data/snapshot.log)
+ * are read once on startup, folded into a binary checkpoint and deleted.
+ *
+ * Locking: appends need none, WriteAheadLog serializes them itself. checkpoint() and loadAndRecover() are
+ * synchronized, so a checkpoint never rotates or truncates the log while recovery is still reading it.
  */
 public class Storage {
-    private static final String LOG_FILE_PATH = "data/server.log";
+    private static final String LOG_FILE = "server.wal";
+    private static final String SNAPSHOT_FILE = "snapshot.wal";
+    private static final String SEGMENT_PREFIX = "server.wal.";
+
+    // text format used before the binary log, only read for migration
+    private static final String LEGACY_LOG_FILE = "server.log";
+    private static final String LEGACY_SNAPSHOT_FILE = "snapshot.log";
+    private static final String LEGACY_SEGMENT_PREFIX = "server.log.";
+
     private AggregationServer server;
-    private Semaphore fileLock;
+    private final Path dataDir; // --data-dir, "data" by default
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final WriteAheadLog wal;
+
+    // PUT records that are in the log but not committed yet, uniqueId -> encoded record
+    private final ConcurrentHashMap<String, byte[]> uncommitted = new ConcurrentHashMap<>();
+
+    private final long checkpointIntervalMillis;
+    private final long checkpointLogBytes;
+    private long lastCheckpointMillis = System.currentTimeMillis();
+    private long walBytesAtLastCheckpoint = 0;
+    private long recoveredLogBytes = 0; // size of the log files read by loadAndRecover, not covered by a snapshot yet
+    private long nextSegment;
 
-    public Storage(AggregationServer server, Semaphore fileLock) {
+    public Storage(AggregationServer server) {
         this.server = server;
-        this.fileLock = fileLock;
 
-        new File("data").mkdirs(); //ensure the data directory exists
+        ServerConfig config = server.getConfig();
+        this.dataDir = Paths.get(config.getDataDir());
+        this.logFile = dataDir.resolve(LOG_FILE);
+        this.snapshotFile = dataDir.resolve(SNAPSHOT_FILE);
+        dataDir.toFile().mkdirs(); //ensure the data directory exists
+        this.checkpointIntervalMillis = TimeUnit.SECONDS.toMillis(config.getCheckpointIntervalSeconds());
+        this.checkpointLogBytes = config.getCheckpointLogBytes();
 
+        List<Long> segments = segmentNumbers(SEGMENT_PREFIX);
+        this.nextSegment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+
+        try {
+            this.wal = new WriteAheadLog(logFile, config.getWalSyncMode(), config.getWalBatchMillis(), config.getWalBatchRecords());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open write-ahead log " + logFile, e);
+        }
     }
 
     /*
@@ -35,85 +98,338 @@ public class Storage {
      * param uniqueId: this is the Lamport-Clock which we is unique on each request
      */
     public void logPutRequest(String uniqueId, String stationId, String jsonBody) throws IOException, InterruptedException {
-        fileLock.acquire();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE_PATH, true))) {
-            writer.write("PUT:" + uniqueId + ":" + stationId + ":" + jsonBody);
-            writer.newLine();
-            writer.flush(); // explitcitly flsuh the stream
-        } finally {
-            fileLock.release();
-        }
+        byte[] record = WalRecord.encode(WalRecord.PUT, Long.parseLong(uniqueId), stationId, jsonBody);
+        // tracked before the append so a checkpoint never misses a record that is already in the log
+        uncommitted.put(uniqueId, record);
+        wal.append(record);
     }
 
     public void logCompletion(String uniqueId) throws IOException, InterruptedException {
-        fileLock.acquire();
+        wal.append(WalRecord.commit(Long.parseLong(uniqueId)));
+        uncommitted.remove(uniqueId);
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE_PATH, true))) {
-            writer.write("COMMIT:" + uniqueId);
-            writer.newLine();
-            writer.flush();
+    /*
+     * Log a batch PUT before it is queued: the body as it was sent, in one BATCH record, without parsing it.
+     * uniqueId is the Lamport value of its first object; logCompletion(uniqueId) commits the whole batch.
+     * Recovery parses the body and treats every object like a single PUT with its own Lamport value.
+     */
+    public void logPutBatch(String uniqueId, String jsonArray) throws IOException, InterruptedException {
+        byte[] record = WalRecord.encode(WalRecord.BATCH, Long.parseLong(uniqueId), null, jsonArray);
+        uncommitted.put(uniqueId, record);
+        wal.append(record);
+    }
 
-        } finally {
-            fileLock.release();
+    public WriteAheadLog getWal() {
+        return wal;
+    }
+
+    /*
+     * Flush and close the log on shutdown
+     */
+    public void close() {
+        try {
+            wal.close();
+        } catch (IOException e) {
+            System.err.println("ERROR: Could not close the write-ahead log: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Called periodically by the server. Takes a checkpoint when the interval has passed
+     * or the log has grown by more than the configured number of bytes since the last one.
+     */
+    public void checkpointIfDue() {
+        if (!server.getRecovery().isDone()) {
+            return; // a snapshot now would miss the stations that are not restored yet
+        }
+        long logBytes = recoveredLogBytes + wal.getBytesWritten() - walBytesAtLastCheckpoint;
+        boolean intervalPassed = System.currentTimeMillis() - lastCheckpointMillis >= checkpointIntervalMillis;
+        if (logBytes == 0 || (!intervalPassed && logBytes < checkpointLogBytes)) {
+            return;
+        }
+
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            Log.error("Checkpoint failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Write a snapshot of the current station data and drop the log prefix it covers.
+     */
+    public synchronized void checkpoint() throws IOException, InterruptedException {
+        long walBytes = wal.getBytesWritten();
+
+        // 1. new appends go to a fresh log file from here on
+        long segment = nextSegment++;
+        wal.rotate(segmentPath(SEGMENT_PREFIX, segment));
+
+        // 2. uncommitted PUTs first: a PUT that commits after this point is already in weatherData below
+        List<byte[]> pending = new ArrayList<>(uncommitted.values());
+
+        // 3. write the snapshot next to the old one and swap it in atomically
+        Path tmp = dataDir.resolve(SNAPSHOT_FILE + ".tmp");
+        int stations = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, WalRecord.encode(WalRecord.SNAPSHOT, server.getClock().get(), null, null));
+            for (Map.Entry<String, ExpirableData> entry : server.getWeatherData().entrySet()) {
+                ExpirableData data = entry.getValue();
+                write(out, WalRecord.encode(WalRecord.STATION, data.getLamportClockValue(), entry.getKey(), data.getJsonBody()));
+                stations++;
+            }
+            for (byte[] record : pending) {
+                write(out, record);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // 4. the snapshot covers every rolled segment up to this one
+        int removed = 0;
+        for (long number : segmentNumbers(SEGMENT_PREFIX)) {
+            if (number <= segment && Files.deleteIfExists(segmentPath(SEGMENT_PREFIX, number))) {
+                removed++;
+            }
+        }
+
+        lastCheckpointMillis = System.currentTimeMillis();
+        walBytesAtLastCheckpoint = walBytes;
+        recoveredLogBytes = 0;
+        Log.info("Checkpoint written: " + stations + " stations, " + pending.size() + " uncommitted requests, " + removed + " log segments removed.");
+    }
+
+    private static void write(FileChannel out, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
         }
     }
 
     /*
      * Method to load data and perform crash recovery on restart
+     * Runs on a background thread while the server already accepts requests; progress is published in recovery.
+     * Every station gets the body of the newest (highest Lamport value) PUT found in the snapshot or the log.
+     * PUTs without a COMMIT are committed again once their data is restored.
+     * The scan only indexes records; a body is decoded once, for the record that wins its station.
      */
-    public synchronized void loadAndRecover() throws IOException, InterruptedException {
-        File logFile = new File(LOG_FILE_PATH);
-        if (!logFile.exists() || logFile.length() == 0) {
+    public synchronized void loadAndRecover(Recovery recovery) throws IOException, InterruptedException {
+        try {
+            recover(recovery);
+        } finally {
+            // never leave requests waiting on a recovery that failed
+            recovery.finish();
+        }
+        System.out.println(recovery.progressSummary());
+    }
+
+    private void recover(Recovery recovery) throws IOException, InterruptedException {
+        List<File> legacyFiles = legacyFiles();
+        List<Path> files = new ArrayList<>();
+        if (Files.exists(snapshotFile)) {
+            files.add(snapshotFile);
+        }
+        for (long number : segmentNumbers(SEGMENT_PREFIX)) {
+            files.add(segmentPath(SEGMENT_PREFIX, number));
+        }
+        if (Files.size(logFile) > 0) {
+            files.add(logFile);
+        }
+
+        if (files.isEmpty() && legacyFiles.isEmpty()) {
             System.out.println("No log file found or log is empty. Starting fresh");
             return;
         }
 
         System.out.println("Log file found. Beginning crash recovery");
-        ConcurrentHashMap<String, String> incompleteRequests = new ConcurrentHashMap<>();
-
-        fileLock.acquire();
+        RecoveryIndex index = new RecoveryIndex();
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("PUT:")) {
-                    String[] parts = line.split(":", 4);
-
-                    // this is the PUT log
-                    if (parts.length != 4) {
-                        System.err.println("ERROR: Wrong PUT log request format for line: " + line);
-                        continue;
-                    }
+        long totalBytes = 0;
+        for (File file : legacyFiles) {
+            totalBytes += file.length();
+        }
+        for (Path file : files) {
+            totalBytes += Files.size(file);
+        }
+        recovery.startScan(totalBytes);
 
-                    String uniqueId = parts[1];
-                    // String stationId = parts[2];
-                    String jsonBody = parts[3];
-                    incompleteRequests.put(uniqueId, jsonBody);
+        // older text logs come first, they were written before any binary record
+        for (File file : legacyFiles) {
+            System.out.println("Migrating text log " + file);
+            recoveredLogBytes += file.length();
+            readLegacyFile(file, index);
+            recovery.scanned(file.length());
+        }
 
-                } else if (line.startsWith("COMMIT:")) {
-                    String[] parts = line.split(":", 2);
-                    String uniqueId = parts[1];
-                    incompleteRequests.remove(uniqueId); // remove if find the matching
+        for (Path file : files) {
+            long size = Files.size(file);
+            if (!file.equals(snapshotFile)) {
+                recoveredLogBytes += size;
+            }
+            long valid = WalRecord.scan(file, index);
+            if (valid < size) {
+                System.err.println("WARNING: " + file + " ends with " + (size - valid) + " bytes of torn or corrupt data, ignored.");
+                if (file.equals(logFile)) {
+                    // new records must not land behind the torn one
+                    wal.truncate(valid);
                 }
             }
-        } finally {
-            fileLock.release();
+            recovery.scanned(size);
         }
 
-        if (incompleteRequests.isEmpty()) {
+        // new requests must get Lamport values above everything already in the log
+        server.getClock().update(index.maxClock);
+        System.out.println("Indexed " + index.newest.size() + " stations. Server clock is now " + server.getClock().get());
+
+        // PUTs and GETs may go ahead from here; GETs restore their station on demand
+        recovery.indexed(index.newest);
+        recovery.restoreAll();
+
+        if (index.incomplete.isEmpty()) {
             System.out.println("Recovery complete. No incomplete requests found.");
         } else {
-            System.out.println("Found " + incompleteRequests.size() + " incomplete requests. Re-processing...");
-            for (String uniqueId : incompleteRequests.keySet()) {
-                String bodyOfIncompleteRequest = incompleteRequests.get(uniqueId);
-                server.getWeatherData().put(uniqueId, new ExpirableData(bodyOfIncompleteRequest));
-
+            System.out.println("Found " + index.incomplete.size() + " incomplete requests. Re-processing...");
+            for (Map.Entry<Long, String> entry : index.incomplete.entrySet()) {
                 // Re-logging the completion to ensure consistency after recovery
-                logCompletion(uniqueId);
-                System.out.println("Recovered and re-processed data for station " + uniqueId);
+                logCompletion(String.valueOf(entry.getKey()));
+                System.out.println("Recovered and re-processed data for " + entry.getValue());
             }
             System.out.println("Recovery complete. All data is consistent.");
         }
+
+        if (!legacyFiles.isEmpty()) {
+            // everything from the text log is now in memory: write it out as a binary snapshot and drop the old files
+            checkpoint();
+            for (File file : legacyFiles) {
+                Files.deleteIfExists(file.toPath());
+            }
+            System.out.println("Migrated " + legacyFiles.size() + " text log files to the binary format.");
+        }
+    }
+
+    private static class RecoveryIndex implements WalRecord.Visitor {
+        final Map<String, Recovery.RecoveredStation> newest = new HashMap<>();
+        final LinkedHashMap<Long, String> incomplete = new LinkedHashMap<>();
+        long maxClock = 0;
+
+        @Override
+        public void record(byte type, long lamport, String stationId, ByteBuffer body) {
+            maxClock = Math.max(maxClock, lamport);
+            switch (type) {
+                case WalRecord.PUT:
+                    incomplete.put(lamport, "station " + stationId);
+                    offer(stationId, lamport, body);
+                    break;
+                case WalRecord.BATCH:
+                    batch(lamport, body);
+                    break;
+                case WalRecord.STATION:
+                    offer(stationId, lamport, body);
+                    break;
+                case WalRecord.COMMIT:
+                    incomplete.remove(lamport); // remove if find the matching
+                    break;
+                default:
+                    // SNAPSHOT only carries the clock
+                    break;
+            }
+        }
+
+        // the objects the handler would have stored, each with its own Lamport value from lamport on
+        private void batch(long lamport, ByteBuffer body) {
+            PutBatch batch = PutBatch.parse(WalRecord.decodeBody(body));
+            if (batch == null) {
+                return; // answered 400 when it was handled
+            }
+            batch.assignLamports(lamport);
+            maxClock = Math.max(maxClock, lamport + batch.size() - 1);
+            incomplete.put(lamport, "a batch of " + batch.size() + " stations");
+            for (PutBatch.Item item : batch.getItems()) {
+                if (item.isValid()) {
+                    offer(item.getStationId(), item.getLamport(), ByteBuffer.wrap(item.getJson().getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+        }
+
+        private void offer(String stationId, long lamport, ByteBuffer body) {
+            Recovery.RecoveredStation current = newest.get(stationId);
+            if (current == null || current.lamport < lamport) {
+                newest.put(stationId, new Recovery.RecoveredStation(lamport, body));
+            }
+        }
+    }
+
+    // text files from before the binary format: snapshot, rolled segments, then the live log
+    private List<File> legacyFiles() {
+        List<File> files = new ArrayList<>();
+        File snapshot = dataDir.resolve(LEGACY_SNAPSHOT_FILE).toFile();
+        if (snapshot.exists()) {
+            files.add(snapshot);
+        }
+        for (long number : segmentNumbers(LEGACY_SEGMENT_PREFIX)) {
+            files.add(segmentPath(LEGACY_SEGMENT_PREFIX, number).toFile());
+        }
+        File legacyLog = dataDir.resolve(LEGACY_LOG_FILE).toFile();
+        if (legacyLog.exists()) {
+            files.add(legacyLog);
+        }
+        return files;
+    }
+
+    /*
+     * Read one text format file (PUT:/COMMIT:/STATION:/SNAPSHOT: lines) into the recovery index.
+     */
+    private static void readLegacyFile(File file, RecoveryIndex index) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    if (line.startsWith("PUT:") || line.startsWith("STATION:")) {
+                        String[] parts = line.split(":", 4);
+                        if (parts.length != 4) {
+                            System.err.println("ERROR: Wrong PUT log request format for line: " + line);
+                            continue;
+                        }
+                        byte type = line.startsWith("PUT:") ? WalRecord.PUT : WalRecord.STATION;
+                        ByteBuffer body = ByteBuffer.wrap(parts[3].getBytes(StandardCharsets.UTF_8));
+                        index.record(type, Long.parseLong(parts[1]), parts[2], body);
+
+                    } else if (line.startsWith("COMMIT:")) {
+                        index.record(WalRecord.COMMIT, Long.parseLong(line.substring("COMMIT:".length())), null, null);
+
+                    } else if (line.startsWith("SNAPSHOT:")) {
+                        index.record(WalRecord.SNAPSHOT, Long.parseLong(line.substring("SNAPSHOT:".length())), null, null);
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("ERROR: Wrong log format for line: " + line);
+                }
+            }
+        }
     }
 
+    private Path segmentPath(String prefix, long number) {
+        return dataDir.resolve(prefix + number);
+    }
+
+    // numbers of the rolled log segments on disk, oldest first
+    private List<Long> segmentNumbers(String prefix) {
+        TreeMap<Long, String> numbers = new TreeMap<>();
+        String[] names = dataDir.toFile().list();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                try {
+                    numbers.put(Long.parseLong(name.substring(prefix.length())), name);
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        return new ArrayList<>(numbers.keySet());
+    }
 }
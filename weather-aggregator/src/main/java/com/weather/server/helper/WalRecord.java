@@ -0,0 +1,137 @@
+package com.weather.server.helper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/*
+ * Binary record format used by the write-ahead log and the snapshot file.
+ *
+ * Every record is length-prefixed and checksummed (all numbers big-endian):
+ *   int    payload length (bytes from type to the end of body)
+ *   byte   type            PUT, COMMIT, STATION, SNAPSHOT or BATCH
+ *   long   lamport         Lamport value of the request (server clock for SNAPSHOT, first object's value for BATCH)
+ *   short  station length, then the station id in UTF-8 (0 for COMMIT, SNAPSHOT and BATCH)
+ *   int    body length,    then the JSON body in UTF-8 (0 for COMMIT and SNAPSHOT, the whole array for BATCH)
+ *   int    CRC32C of the payload
+ *
+ * Bodies may contain any byte, newlines included. A record cut short by a crash, or one whose checksum
+ * does not match, ends the scan: everything before it is valid, nothing after it is trusted.
+ */
+public final class WalRecord {
+    public static final byte PUT = 1;      // logged before a PUT is queued
+    public static final byte COMMIT = 2;   // logged after the PUT is applied
+    public static final byte STATION = 3;  // one per live station, snapshot file only
+    public static final byte SNAPSHOT = 4; // first record of the snapshot file, carries the server clock
+    public static final byte BATCH = 5;    // logged before a batch PUT is queued, committed with one COMMIT
+
+    private static final int FIXED_PAYLOAD_BYTES = 1 + 8 + 2 + 4;
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    /*
+     * Callback for scan(). body is a read-only view into the mapped file, position 0 to limit,
+     * so a visitor that does not need the body never copies or decodes it.
+     */
+    public interface Visitor {
+        void record(byte type, long lamport, String stationId, ByteBuffer body) throws IOException;
+    }
+
+    private WalRecord() {}
+
+    public static byte[] encode(byte type, long lamport, String stationId, String body) {
+        byte[] station = stationId == null ? new byte[0] : stationId.getBytes(StandardCharsets.UTF_8);
+        byte[] json = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        if (station.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Station id too long");
+        }
+
+        int payloadLength = FIXED_PAYLOAD_BYTES + station.length + json.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payloadLength + 4);
+        buffer.putInt(payloadLength);
+        buffer.put(type);
+        buffer.putLong(lamport);
+        buffer.putShort((short) station.length);
+        buffer.put(station);
+        buffer.putInt(json.length);
+        buffer.put(json);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 4, payloadLength);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    public static byte[] commit(long lamport) {
+        return encode(COMMIT, lamport, null, null);
+    }
+
+    /*
+     * Scan every intact record of the file through a read-only memory mapping.
+     * return the number of valid bytes, i.e. the offset right after the last intact record
+     */
+    public static long scan(Path file, Visitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return 0;
+            }
+            if (size > Integer.MAX_VALUE) {
+                // checkpoints keep segments far below this
+                throw new IOException("Log file too large to map: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return scan(mapped, visitor);
+        }
+    }
+
+    static long scan(ByteBuffer buffer, Visitor visitor) throws IOException {
+        CRC32C crc = new CRC32C();
+        int position = 0;
+        int limit = buffer.limit();
+
+        while (limit - position >= 4) {
+            int payloadLength = buffer.getInt(position);
+            if (payloadLength < FIXED_PAYLOAD_BYTES || payloadLength > MAX_RECORD_BYTES
+                    || (long) position + 4 + payloadLength + 4 > limit) {
+                break; // torn or garbage length
+            }
+            int payloadStart = position + 4;
+            int payloadEnd = payloadStart + payloadLength;
+
+            crc.reset();
+            crc.update(buffer.slice(payloadStart, payloadLength));
+            if ((int) crc.getValue() != buffer.getInt(payloadEnd)) {
+                break; // torn write or corruption
+            }
+
+            byte type = buffer.get(payloadStart);
+            long lamport = buffer.getLong(payloadStart + 1);
+            int stationLength = buffer.getShort(payloadStart + 9);
+            int stationStart = payloadStart + 11;
+            if (stationLength < 0 || stationStart + stationLength + 4 > payloadEnd) {
+                break;
+            }
+            int bodyLength = buffer.getInt(stationStart + stationLength);
+            int bodyStart = stationStart + stationLength + 4;
+            if (bodyLength < 0 || bodyStart + bodyLength != payloadEnd) {
+                break;
+            }
+
+            String stationId = stationLength == 0 ? null
+                    : StandardCharsets.UTF_8.decode(buffer.slice(stationStart, stationLength)).toString();
+            visitor.record(type, lamport, stationId, buffer.slice(bodyStart, bodyLength).asReadOnlyBuffer());
+
+            position = payloadEnd + 4;
+        }
+        return position;
+    }
+
+    public static String decodeBody(ByteBuffer body) {
+        return StandardCharsets.UTF_8.decode(body.duplicate()).toString();
+    }
+}
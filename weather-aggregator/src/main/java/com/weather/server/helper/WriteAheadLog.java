@@ -0,0 +1,417 @@
+package com.weather.server.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.weather.log.Log;
+import com.weather.metrics.LatencyHistogram;
+
+/*
+ * Append-only log file kept open on one FileChannel for the life of the server.
+ *
+ * Appends from many threads are collected in a pending buffer and a single flusher thread writes the whole
+ * buffer with one write() and one force() (group commit). How long an append waits depends on the SyncMode:
+ *  ALWAYS: the append returns once its record has been forced to disk. Concurrent appends share one force().
+ *  BATCH:  the append returns at once. The flusher writes and forces every batchMillis or batchRecords records,
+ *          whichever comes first, so a crash can lose at most that window.
+ *  OS:     the record is written straight to the channel and left in the OS page cache, never forced.
+ *
+ * rotate() renames the current file to a rolled segment and continues in a fresh file at the same path.
+ * The rotation happens between two flushes, so reading the rolled segments and then the live file gives
+ * the records back in the order they were appended.
+ */
+public class WriteAheadLog implements Closeable {
+    public enum SyncMode { ALWAYS, BATCH, OS }
+
+    private final Path path;
+    private FileChannel channel;
+    private final SyncMode syncMode;
+    private final long batchNanos;
+    private final int batchRecords;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition(); // wakes the flusher
+    private final Condition flushed = lock.newCondition();    // wakes appenders waiting for durability
+
+    // guarded by lock
+    private byte[] pending = new byte[8192];
+    private int pendingBytes = 0;
+    private int pendingRecords = 0;
+    private long firstPendingNanos;
+    private long appendedSeq = 0; // sequence number of the last record appended
+    private long durableSeq = 0;  // sequence number of the last record written (and forced, unless OS)
+    private boolean closed = false;
+    private IOException failure;  // set if the flusher could not write, reported to every later append
+    private Path rotateTarget;    // set while a rotation is waiting for the flusher
+    private IOException rotateFailure;
+
+    private final Thread flusher;
+
+    // statistics, guarded by lock
+    private long batchCount = 0;
+    private long recordCount = 0;
+    private long bytesWritten = 0;
+    private long totalSyncNanos = 0;
+    private long maxSyncNanos = 0;
+    private final LatencyHistogram appendLatency = new LatencyHistogram(); // lock-free, recorded outside the lock
+
+    public WriteAheadLog(Path path, SyncMode syncMode, long batchMillis, int batchRecords) throws IOException {
+        this.path = path;
+        this.channel = open(path);
+        this.syncMode = syncMode;
+        this.batchNanos = TimeUnit.MILLISECONDS.toNanos(batchMillis);
+        this.batchRecords = batchRecords;
+
+        if (syncMode == SyncMode.OS) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::flushLoop, "wal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /*
+     * Append one encoded record (see WalRecord).
+     */
+    public void append(byte[] bytes) throws IOException, InterruptedException {
+        appendAll(Collections.singletonList(bytes));
+    }
+
+    /*
+     * Append several records as one unit: they land next to each other in the same flush, and with ALWAYS
+     * the caller waits for a single force() for all of them (see PutBatch).
+     */
+    public void appendAll(List<byte[]> records) throws IOException, InterruptedException {
+        if (records.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Write-ahead log is closed");
+            }
+            if (failure != null) {
+                throw new IOException("Write-ahead log failed earlier", failure);
+            }
+
+            if (syncMode == SyncMode.OS) {
+                byte[] bytes = concat(records);
+                writeFully(ByteBuffer.wrap(bytes));
+                recordWritten(records.size(), bytes.length, 0);
+                return;
+            }
+
+            for (byte[] bytes : records) {
+                addPending(bytes);
+            }
+            appendedSeq += records.size();
+            long seq = appendedSeq;
+            hasPending.signal();
+
+            if (syncMode == SyncMode.ALWAYS) {
+                // wait for the flusher to force the batch that contains this record
+                while (durableSeq < seq && failure == null) {
+                    flushed.await();
+                }
+                if (durableSeq < seq) {
+                    throw new IOException("Write-ahead log append was not persisted", failure);
+                }
+            }
+        } finally {
+            lock.unlock();
+            appendLatency.recordSince(start);
+        }
+    }
+
+    private static byte[] concat(List<byte[]> records) {
+        if (records.size() == 1) {
+            return records.get(0);
+        }
+        int size = 0;
+        for (byte[] bytes : records) {
+            size += bytes.length;
+        }
+        byte[] all = new byte[size];
+        int position = 0;
+        for (byte[] bytes : records) {
+            System.arraycopy(bytes, 0, all, position, bytes.length);
+            position += bytes.length;
+        }
+        return all;
+    }
+
+    private void addPending(byte[] bytes) {
+        if (pendingRecords == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+        if (pendingBytes + bytes.length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingBytes + bytes.length));
+        }
+        System.arraycopy(bytes, 0, pending, pendingBytes, bytes.length);
+        pendingBytes += bytes.length;
+        pendingRecords++;
+    }
+
+    /*
+     * Flusher thread: take everything pending, write it in one go and force it once.
+     * Appends keep filling a fresh buffer while the write and force run outside the lock.
+     */
+    private void flushLoop() {
+        byte[] spare = new byte[pending.length];
+
+        while (true) {
+            byte[] batch;
+            int batchBytes;
+            int records;
+            long upToSeq;
+
+            lock.lock();
+            try {
+                while (pendingRecords == 0 && !closed && rotateTarget == null) {
+                    hasPending.await();
+                }
+                if (rotateTarget != null) {
+                    // everything already flushed stays in the old file, the pending buffer goes to the new one
+                    try {
+                        switchFile(rotateTarget);
+                    } catch (IOException e) {
+                        rotateFailure = e;
+                    }
+                    rotateTarget = null;
+                    flushed.signalAll();
+                    continue;
+                }
+                if (pendingRecords == 0) {
+                    return; // closed and drained
+                }
+                if (syncMode == SyncMode.BATCH) {
+                    // let the batch fill up to batchRecords or until the oldest record is batchMillis old
+                    long waitNanos;
+                    while (!closed && rotateTarget == null && pendingRecords < batchRecords
+                            && (waitNanos = batchNanos - (System.nanoTime() - firstPendingNanos)) > 0) {
+                        hasPending.awaitNanos(waitNanos);
+                    }
+                }
+
+                // swap buffers so appenders can continue while this batch is written
+                batch = pending;
+                batchBytes = pendingBytes;
+                records = pendingRecords;
+                upToSeq = appendedSeq;
+                pending = spare.length >= batch.length ? spare : new byte[batch.length];
+                pendingBytes = 0;
+                pendingRecords = 0;
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            long syncNanos = 0;
+            try {
+                writeFully(ByteBuffer.wrap(batch, 0, batchBytes));
+                long start = System.nanoTime();
+                channel.force(false);
+                syncNanos = System.nanoTime() - start;
+            } catch (IOException e) {
+                error = e;
+            }
+            spare = batch;
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                    Log.error("Write-ahead log flush failed: " + error.getMessage());
+                } else {
+                    durableSeq = upToSeq;
+                    recordWritten(records, batchBytes, syncNanos);
+                }
+                flushed.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // called with the lock held
+    private void recordWritten(int records, int bytes, long syncNanos) {
+        batchCount++;
+        recordCount += records;
+        bytesWritten += bytes;
+        totalSyncNanos += syncNanos;
+        maxSyncNanos = Math.max(maxSyncNanos, syncNanos);
+    }
+
+    /*
+     * Roll the current file over to rolledPath and continue writing in a new, empty file.
+     * Returns once the switch is done; records appended before the call are in rolledPath or the new file,
+     * never lost, and their order is kept.
+     */
+    public void rotate(Path rolledPath) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Write-ahead log is closed");
+            }
+            if (flusher == null) {
+                // OS mode writes under the lock, so nothing can be in flight
+                switchFile(rolledPath);
+                return;
+            }
+
+            rotateTarget = rolledPath;
+            rotateFailure = null;
+            hasPending.signal();
+            while (rotateTarget != null && failure == null) {
+                flushed.await();
+            }
+            if (rotateTarget != null || rotateFailure != null) {
+                rotateTarget = null;
+                throw new IOException("Could not rotate write-ahead log", rotateFailure != null ? rotateFailure : failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held and no write in progress
+    private void switchFile(Path rolledPath) throws IOException {
+        channel.force(false);
+        channel.close();
+        Files.move(path, rolledPath, StandardCopyOption.ATOMIC_MOVE);
+        channel = open(path);
+    }
+
+    /*
+     * Cut a torn record off the end of the file. Only used by recovery, before anything is appended.
+     */
+    public void truncate(long size) throws IOException {
+        lock.lock();
+        try {
+            channel.truncate(size);
+            channel.force(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /*
+     * Flush whatever is pending, force it and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            hasPending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.force(false);
+        channel.close();
+    }
+
+    // statistics
+    public SyncMode getSyncMode() { return syncMode; }
+
+    public double getAverageBatchSize() {
+        lock.lock();
+        try {
+            return batchCount == 0 ? 0 : (double) recordCount / batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getAverageSyncMillis() {
+        lock.lock();
+        try {
+            return batchCount == 0 ? 0 : totalSyncNanos / 1_000_000.0 / batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getMaxSyncMillis() {
+        lock.lock();
+        try {
+            return maxSyncNanos / 1_000_000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRecordCount() {
+        lock.lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBytesWritten() {
+        lock.lock();
+        try {
+            return bytesWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // time appendAll() took, waiting for durability included (ALWAYS)
+    public LatencyHistogram getAppendLatency() {
+        return appendLatency;
+    }
+
+    public String statsSummary() {
+        return String.format("WAL %s: %d records, avg batch %.1f records, avg sync %.3f ms, max sync %.3f ms",
+                syncMode, getRecordCount(), getAverageBatchSize(), getAverageSyncMillis(), getMaxSyncMillis());
+    }
+}
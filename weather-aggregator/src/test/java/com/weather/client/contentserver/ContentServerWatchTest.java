@@ -0,0 +1,103 @@
+package com.weather.client.contentserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestServers;
+import com.weather.server.helper.ExpirableData;
+
+/*
+ * Watch mode against a running server: the station is uploaded once, saving the file without changes sends
+ * nothing, idle periods are bridged with touches that restart the expiry clock, a changed file is uploaded again,
+ * and a station the server lost is uploaded again after the touch is answered 404. All on one connection.
+ */
+public class ContentServerWatchTest {
+    private static final long POLL_MILLIS = 50;
+    private static final long TOUCH_MILLIS = 400;
+
+    @TempDir
+    Path dataDir;
+
+    @TempDir
+    Path watchDir;
+
+    @Test
+    public void watchKeepsTheStationOnTheServer() throws Exception {
+        ServerConfig config = TestServers.config(dataDir);
+        config.setListenerMode(ServerConfig.ListenerMode.NIO);
+        AggregationServer server = TestServers.started(config);
+
+        Path file = watchDir.resolve("station.txt");
+        save(file, "id:W1\nair_temp:13.3\n", 1_000_000);
+        ContentServer contentServer = new ContentServer("localhost", config.getPort(), "station.txt");
+        contentServer.dir = watchDir.toString();
+        Thread watcher = new Thread(() -> {
+            try {
+                contentServer.watch(POLL_MILLIS, TOUCH_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "content-server-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+
+        try {
+            awaitTrue(() -> server.getWeatherData().get("W1") != null, "first upload");
+            ExpirableData uploaded = server.getWeatherData().get("W1");
+            assertTrue(uploaded.getJsonBody().contains("\"air_temp\":\"13.3\""), uploaded.getJsonBody());
+            long accepted = server.getMetrics().getAccept().getCount();
+
+            // saved again with the same content: the file stamp changes, the body does not
+            save(file, "id:W1\nair_temp:13.3\n", 2_000_000);
+            Thread.sleep(4 * POLL_MILLIS);
+            assertEquals(uploaded.getLamportClockValue(), server.getWeatherData().get("W1").getLamportClockValue(),
+                    "an unchanged file was uploaded again");
+
+            // idle: a touch restarts the expiry clock of the data already stored
+            long lastUpdated = uploaded.getLastUpdated();
+            awaitTrue(() -> server.getWeatherData().get("W1").getLastUpdated() > lastUpdated, "touch");
+            assertEquals(uploaded.getLamportClockValue(), server.getWeatherData().get("W1").getLamportClockValue());
+
+            save(file, "id:W1\nair_temp:14.0\n", 3_000_000);
+            awaitTrue(() -> server.getWeatherData().get("W1").getJsonBody().contains("\"air_temp\":\"14.0\""),
+                    "changed file uploaded");
+            assertTrue(server.getWeatherData().get("W1").getLamportClockValue() > uploaded.getLamportClockValue());
+
+            // the server no longer has the station: the next touch gets 404 and the data is sent again
+            server.getWeatherData().remove("W1");
+            awaitTrue(() -> server.getWeatherData().get("W1") != null, "upload after the touch was answered 404");
+            assertTrue(server.getWeatherData().get("W1").getJsonBody().contains("\"air_temp\":\"14.0\""));
+
+            assertEquals(accepted, server.getMetrics().getAccept().getCount(), "a new connection was opened");
+        } finally {
+            watcher.interrupt();
+            watcher.join(5000);
+            contentServer.stop();
+            server.close();
+        }
+    }
+
+    // the modification time is set explicitly, two saves within the file system's time resolution still differ
+    private static void save(Path file, String content, long lastModified) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.toFile().setLastModified(lastModified));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out waiting for: " + what);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.weather.client.loadgen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.log.Log;
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestServers;
+
+/*
+ * Load generator options, and short runs against a started server: every station is loaded first, an open loop
+ * sends exactly rate x duration measured requests whatever the server's speed, and a healthy server reports no
+ * errors.
+ */
+public class LoadGeneratorTest {
+    private static final Pattern REQUESTS = Pattern.compile("Requests: (\\d+) in 1s");
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void options() {
+        LoadConfig defaults = LoadConfig.fromArgs(new String[] {"localhost:4567"});
+        assertEquals("localhost", defaults.getHostname());
+        assertEquals(4567, defaults.getPort());
+        assertEquals(LoadConfig.Mode.CLOSED, defaults.getMode());
+        assertEquals(8, defaults.getConnections());
+
+        LoadConfig config = LoadConfig.fromArgs(new String[] {"host:80", "--mode=open", "--rate=250",
+                "--connections=2", "--stations=10", "--put-ratio=0.5", "--duration=3", "--warmup=0"});
+        assertEquals(LoadConfig.Mode.OPEN, config.getMode());
+        assertEquals(250, config.getRate());
+        assertEquals(2, config.getConnections());
+        assertEquals(10, config.getStations());
+        assertEquals(0.5, config.getPutRatio());
+        assertEquals(3, config.getDurationSeconds());
+        assertEquals(0, config.getWarmupSeconds());
+
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"--mode=open"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"localhost"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"h:1", "--mode=sideways"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"h:1", "--put-ratio=1.5"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"h:1", "--put-ratio=NaN"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"h:1", "--connections=0"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"h:1", "--rate"}));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.fromArgs(new String[] {"h:1", "--speed=9"}));
+    }
+
+    @Test
+    public void openLoopSendsRateTimesDuration() throws Exception {
+        String report = run("--mode=open", "--rate=200");
+        assertEquals(200, measuredRequests(report), report);
+    }
+
+    @Test
+    public void closedLoopKeepsEveryConnectionBusy() throws Exception {
+        String report = run("--mode=closed");
+        assertTrue(measuredRequests(report) > 0, report);
+    }
+
+    // a one second run without warmup, 20 stations and half of the requests PUTs; returns what it printed
+    private String run(String... options) throws Exception {
+        ServerConfig serverConfig = TestServers.config(dataDir);
+        serverConfig.setListenerMode(ServerConfig.ListenerMode.NIO);
+        AggregationServer server = TestServers.started(serverConfig);
+
+        String[] args = new String[options.length + 6];
+        args[0] = "localhost:" + serverConfig.getPort();
+        args[1] = "--connections=2";
+        args[2] = "--stations=20";
+        args[3] = "--put-ratio=0.5";
+        args[4] = "--duration=1";
+        args[5] = "--warmup=0";
+        System.arraycopy(options, 0, args, 6, options.length);
+
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        Log.flush(1000);
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            new LoadGenerator(LoadConfig.fromArgs(args)).run();
+        } finally {
+            Log.flush(1000);
+            System.setOut(out);
+        }
+        try {
+            assertEquals(20, server.getWeatherData().size(), "not every station was loaded");
+        } finally {
+            server.close();
+        }
+
+        String report = printed.toString(StandardCharsets.UTF_8);
+        assertTrue(report.contains("Errors: 0 failed, 0 not found (404), 0 other non-2xx"), report);
+        return report;
+    }
+
+    private static long measuredRequests(String report) {
+        Matcher matcher = REQUESTS.matcher(report);
+        assertTrue(matcher.find(), report);
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,63 @@
+package com.weather.clock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The Lamport rule in both modes, and received values at or above MAX_RECEIVED_TIME, which are clamped instead
+ * of wrapping the clock around to negative values.
+ */
+public class LamportClockTest {
+    @Test
+    public void lamportModeTakesMaxPlusOne() {
+        LamportClock clock = new LamportClock(LamportClock.Mode.LAMPORT);
+        assertEquals(1, clock.updateAndGet(0));
+        assertEquals(11, clock.updateAndGet(10));
+        assertEquals(12, clock.updateAndGet(5), "a received value below the clock still moves it forward");
+        assertEquals(13, clock.updateAndReserve(0, 3), "the first of three reserved values");
+        assertEquals(15, clock.get());
+    }
+
+    @Test
+    public void hybridModeFollowsTheWallClock() {
+        LamportClock clock = new LamportClock(LamportClock.Mode.HYBRID);
+        long before = System.currentTimeMillis();
+        long value = clock.updateAndGet(0);
+        long after = System.currentTimeMillis();
+
+        long wall = LamportClock.wallMillis(value);
+        assertTrue(wall >= before && wall <= after, "wall time " + wall + " not in [" + before + ", " + after + "]");
+        assertTrue(clock.updateAndGet(0) > value);
+        assertTrue(clock.updateAndGet(value + 1000) > value + 1000);
+    }
+
+    @Test
+    public void receivedValuesAreClampedInLamportMode() {
+        assertClamped(new LamportClock(LamportClock.Mode.LAMPORT));
+    }
+
+    @Test
+    public void receivedValuesAreClampedInHybridMode() {
+        assertClamped(new LamportClock(LamportClock.Mode.HYBRID));
+    }
+
+    private static void assertClamped(LamportClock clock) {
+        long max = LamportClock.MAX_RECEIVED_TIME;
+        assertEquals(max + 1, clock.updateAndGet(max));
+
+        // Long.MAX_VALUE + 1 would wrap to Long.MIN_VALUE
+        long value = clock.updateAndGet(Long.MAX_VALUE);
+        assertEquals(max + 2, value);
+
+        long first = clock.updateAndReserve(Long.MAX_VALUE, 5);
+        assertEquals(value + 1, first);
+        assertEquals(first + 4, clock.get());
+        assertTrue(clock.get() > 0);
+
+        clock.update(Long.MAX_VALUE - 1);
+        clock.increment();
+        assertEquals(first + 6, clock.get(), "the clock keeps counting by one from where it is");
+    }
+}
@@ -0,0 +1,97 @@
+package com.weather.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * With the writer stuck on a slow console the ring buffer fills up: the callers do not wait, every message that
+ * did not fit is counted as dropped, messages below the level are neither queued nor counted, and once the
+ * console moves again the writer prints the queued messages and how many were dropped.
+ */
+public class LogTest {
+    private static final int MESSAGES = 20_000; // more than the ring buffer holds
+
+    @Test
+    public void fullBufferDropsAndCountsInsteadOfWaiting() throws Exception {
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // the console: the writer's first print blocks until released
+        OutputStream slowConsole = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                block();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                block();
+            }
+
+            private void block() throws IOException {
+                writerBlocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+        };
+        ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+
+        Log.flush(1000);
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        Log.Level level = Log.getLevel();
+        System.setOut(new PrintStream(slowConsole, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(errBytes, true, StandardCharsets.UTF_8));
+        try {
+            Log.setLevel(Log.Level.INFO);
+            Log.info("first");
+            assertTrue(writerBlocked.await(5, TimeUnit.SECONDS), "the writer never printed");
+
+            long droppedBefore = Log.getDropped();
+            long pendingBefore = Log.getPending();
+            for (int i = 0; i < 100; i++) {
+                Log.debug("below the level " + i);
+            }
+            assertEquals(droppedBefore, Log.getDropped(), "a message below the level was counted as dropped");
+            assertEquals(pendingBefore, Log.getPending(), "a message below the level was queued");
+
+            long started = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                Log.info("message " + i);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            assertTrue(elapsedMillis < 2000, "logging waited for the console: " + elapsedMillis + " ms");
+
+            long drops = Log.getDropped() - droppedBefore;
+            long queued = Log.getPending() - pendingBefore;
+            assertTrue(drops > 0, "nothing was dropped");
+            assertTrue(queued > 0, "nothing was queued");
+            assertEquals(MESSAGES, drops + queued, "every message is either queued or counted as dropped");
+
+            release.countDown();
+            Log.flush(5000);
+            assertEquals(0, Log.getPending());
+            String printed = errBytes.toString(StandardCharsets.UTF_8);
+            assertTrue(printed.contains("WARNING: " + drops + " log messages dropped"), printed);
+        } finally {
+            release.countDown();
+            Log.flush(5000);
+            System.setOut(out);
+            System.setErr(err);
+            Log.setLevel(level);
+        }
+    }
+}
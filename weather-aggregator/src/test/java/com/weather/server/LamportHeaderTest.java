@@ -0,0 +1,60 @@
+package com.weather.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.clock.LamportClock;
+import com.weather.http.Request;
+import com.weather.server.helper.RequestNode;
+
+/*
+ * Admission of the Lamport-Clock header: a value that is not a number from 0 to LamportClock.MAX_RECEIVED_TIME is
+ * answered 400 on the admitting thread and never reaches the clock, the log or a lane.
+ */
+public class LamportHeaderTest {
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void parseLamportHeader() {
+        assertEquals(0, AggregationServer.parseLamportHeader(null));
+        assertEquals(42, AggregationServer.parseLamportHeader(" 42 "));
+        assertEquals(LamportClock.MAX_RECEIVED_TIME,
+                AggregationServer.parseLamportHeader(String.valueOf(LamportClock.MAX_RECEIVED_TIME)));
+        assertEquals(-1, AggregationServer.parseLamportHeader(String.valueOf(LamportClock.MAX_RECEIVED_TIME + 1)));
+        assertEquals(-1, AggregationServer.parseLamportHeader("9223372036854775807"));
+        assertEquals(-1, AggregationServer.parseLamportHeader("9223372036854775808"));
+        assertEquals(-1, AggregationServer.parseLamportHeader("-1"));
+        assertEquals(-1, AggregationServer.parseLamportHeader("abc"));
+    }
+
+    @Test
+    public void outOfRangeHeaderIsRejectedWithoutTouchingTheClock() throws Exception {
+        AggregationServer server = TestServers.recovered(dataDir);
+        for (String header : new String[] {"9223372036854775807", "-5", "x"}) {
+            RequestNode node = server.enqueueRequest(null, put("A", header), true);
+            assertEquals(400, node.awaitReply().getStatusCode(), "Lamport-Clock: " + header);
+        }
+        assertEquals(0, server.getClock().get());
+        assertEquals(0, server.getRequestLanes().size());
+        assertTrue(server.getWeatherData().isEmpty());
+
+        // the largest accepted value is admitted and leaves room for the values after it
+        RequestNode node = server.enqueueRequest(null, put("A", String.valueOf(LamportClock.MAX_RECEIVED_TIME)), true);
+        assertEquals(LamportClock.MAX_RECEIVED_TIME + 1, node.getLamportClockValue());
+        assertEquals(1, server.getRequestLanes().size());
+        server.close();
+    }
+
+    private static Request put(String id, String lamportClock) {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Lamport-Clock", lamportClock);
+        return new Request("PUT", "/weather/" + id, "{\"id\":\"" + id + "\"}", headers);
+    }
+}
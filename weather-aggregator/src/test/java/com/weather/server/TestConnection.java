@@ -0,0 +1,130 @@
+package com.weather.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * One raw client connection to a started server, for tests of the wire format: requests are written exactly as
+ * given (so they can be pipelined or split), responses are read as bytes with their headers and how they were
+ * framed, and nothing is decoded or retried like AbstractClient does.
+ */
+public class TestConnection implements AutoCloseable {
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+
+    /*
+     * One response. Header names are case-insensitive; a chunked body is joined and its chunk count kept.
+     */
+    public static final class Reply {
+        public final int status;
+        public final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        public byte[] body = new byte[0];
+        public int chunks = 0; // 0 unless the body was sent with Transfer-Encoding: chunked
+
+        Reply(int status) {
+            this.status = status;
+        }
+
+        public String header(String name) {
+            return headers.get(name);
+        }
+
+        public String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    public TestConnection(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setSoTimeout(5000);
+        out = socket.getOutputStream();
+        in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    public void send(String request) throws IOException {
+        out.write(request.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    public static String get(String path, String... headers) {
+        StringBuilder request = new StringBuilder("GET ").append(path).append(" HTTP/1.1\r\n");
+        for (String header : headers) {
+            request.append(header).append("\r\n");
+        }
+        return request.append("\r\n").toString();
+    }
+
+    public static String put(String stationId, String body) {
+        return "PUT /weather/" + stationId + " HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: "
+                + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body;
+    }
+
+    public Reply read() throws IOException {
+        String statusLine = readLine();
+        if (statusLine == null) {
+            throw new EOFException("Server closed the connection");
+        }
+        Reply reply = new Reply(Integer.parseInt(statusLine.split(" ", 3)[1]));
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            reply.headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+        }
+
+        if ("chunked".equalsIgnoreCase(reply.header("Transfer-Encoding"))) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int size;
+            while ((size = Integer.parseInt(readLine().trim(), 16)) > 0) {
+                body.write(readFully(size));
+                readLine();
+                reply.chunks++;
+            }
+            readLine(); // end of the empty trailer
+            reply.body = body.toByteArray();
+        } else if (reply.header("Content-Length") != null) {
+            reply.body = readFully(Integer.parseInt(reply.header("Content-Length")));
+        }
+        return reply;
+    }
+
+    // true if the server closed its end: the next read finds the end of the stream
+    public boolean isClosedByServer() throws IOException {
+        return in.read() == -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private byte[] readFully(int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Server closed the connection in the middle of a response");
+        }
+        return bytes;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+}
@@ -0,0 +1,77 @@
+package com.weather.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import com.weather.http.Request;
+import com.weather.http.Response;
+import com.weather.server.handler.RequestHandler;
+import com.weather.server.helper.RequestNode;
+import com.weather.server.helper.WriteAheadLog;
+
+/*
+ * Servers for tests: a config on a temp data directory, a server with its log recovered as run() does in the
+ * background, and a PUT handled the way a consumer lane handles it. Tests of the wire protocol start a real server
+ * with started() and talk to it through a TestConnection.
+ */
+public final class TestServers {
+    private TestServers() {
+    }
+
+    // port 0 and an OS-synced log, so tests neither collide on a port nor wait for fsync
+    public static ServerConfig config(Path dataDir) {
+        ServerConfig config = new ServerConfig(0);
+        config.setDataDir(dataDir.toString());
+        config.setWalSyncMode(WriteAheadLog.SyncMode.OS);
+        return config;
+    }
+
+    public static AggregationServer recovered(Path dataDir) throws Exception {
+        return recovered(config(dataDir));
+    }
+
+    public static AggregationServer recovered(ServerConfig config) throws Exception {
+        AggregationServer server = new AggregationServer(config);
+        server.getStorage().loadAndRecover(server.getRecovery());
+        return server;
+    }
+
+    /*
+     * Run the server (listener, consumer lanes, background recovery) on a free port and return once it accepts
+     * connections and recovery is done. The port is in getConfig().getPort(); close() the server when done.
+     */
+    public static AggregationServer started(ServerConfig config) throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            config.setPort(probe.getLocalPort());
+        }
+        AggregationServer server = new AggregationServer(config);
+        new Thread(server, "server-under-test").start();
+
+        long giveUp = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                new Socket(InetAddress.getLoopbackAddress(), config.getPort()).close();
+                break;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > giveUp) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+        server.getRecovery().awaitDone();
+        return server;
+    }
+
+    // admits a single PUT, takes it off its lane and handles it on the calling thread
+    public static Response put(AggregationServer server, String id, String body) throws Exception {
+        Request request = new Request("PUT", "/weather/" + id, body, new HashMap<>());
+        server.enqueueRequest(null, request);
+        RequestNode node = server.getRequestLanes().getLane(server.getRequestLanes().laneFor(request)).take();
+        return new RequestHandler(node, server, server.getStorage()).process();
+    }
+}
@@ -0,0 +1,143 @@
+package com.weather.server.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.http.Request;
+import com.weather.http.Response;
+import com.weather.server.AggregationServer;
+import com.weather.server.TestServers;
+import com.weather.server.helper.PutBatch;
+import com.weather.server.helper.RequestNode;
+
+/*
+ * Batch PUT /weather/: per-object outcomes for a mix of valid, invalid and reserved ids, the run of Lamport values
+ * reserved at admission, ordering against single PUTs, and what a restart recovers from the log. The server is never started: requests go through
+ * enqueueRequest and a RequestHandler, like a consumer lane.
+ */
+public class BatchPutTest {
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void mixedBatchStoresOnlyValidStationsWithConsecutiveLamportValues() throws Exception {
+        AggregationServer server = TestServers.recovered(dataDir);
+        String body = "[{\"id\":\"A\",\"air_temp\":\"1.0\"},"
+                + "{\"air_temp\":\"2.0\"},"
+                + "{\"id\":\"a/b\"},"
+                + "{\"id\":\"c?x=1\"},"
+                + "{\"id\":\"stats\"},"
+                + "{\"id\":\"\"},"
+                + "{\"id\":\"B\",\"air_temp\":\"3.0\"}]";
+
+        // admission reserves one value per object, the first one is the request's own
+        RequestNode node = server.enqueueRequest(null, new Request("PUT", "/weather/", body, new HashMap<>()));
+        long admitted = node.getLamportClockValue();
+        assertEquals(7, node.getBatchSize());
+        assertEquals(admitted + 6, server.getClock().get());
+
+        Response response = process(server);
+        assertEquals(200, response.getStatusCode());
+        assertEquals("[{\"id\":\"A\",\"status\":200},{\"id\":null,\"status\":400},{\"id\":\"a/b\",\"status\":400},"
+                + "{\"id\":\"c?x=1\",\"status\":400},{\"id\":\"stats\",\"status\":400},{\"id\":\"\",\"status\":400},"
+                + "{\"id\":\"B\",\"status\":200}]", response.getBody());
+
+        assertEquals(Set.of("A", "B"), server.getWeatherData().keySet());
+        assertEquals("{\"id\":\"A\",\"air_temp\":\"1.0\"}", server.getWeatherData().get("A").getJsonBody());
+        // one value per object in array order, rejected ones included
+        assertEquals(admitted, server.getWeatherData().get("A").getLamportClockValue());
+        assertEquals(admitted + 6, server.getWeatherData().get("B").getLamportClockValue());
+        assertEquals(admitted + 6, server.getClock().get(), "handling the batch hands out no more values");
+        assertEquals(String.valueOf(admitted + 6), response.getHeaders().get("Lamport-Clock"));
+        server.close();
+
+        AggregationServer restarted = TestServers.recovered(dataDir);
+        assertEquals(Set.of("A", "B"), restarted.getWeatherData().keySet(), "only the valid objects are recovered");
+        assertEquals(admitted + 6, restarted.getWeatherData().get("B").getLamportClockValue());
+        assertTrue(restarted.getClock().get() >= admitted + 6);
+        restarted.close();
+    }
+
+    @Test
+    public void batchIsLoggedAtAdmissionAndSurvivesACrashBeforeItIsHandled() throws Exception {
+        AggregationServer server = TestServers.recovered(dataDir);
+        RequestNode node = server.enqueueRequest(null, new Request("PUT", "/weather/",
+                "[{\"id\":\"A\",\"air_temp\":\"1.0\"},{\"id\":\"B\",\"air_temp\":\"2.0\"}]", new HashMap<>()));
+        long first = node.getLamportClockValue();
+        // "crashes" with the batch still queued: nothing was applied
+        server.close();
+
+        AggregationServer restarted = TestServers.recovered(dataDir);
+        assertEquals("{\"id\":\"A\",\"air_temp\":\"1.0\"}", restarted.getWeatherData().get("A").getJsonBody());
+        assertEquals(first, restarted.getWeatherData().get("A").getLamportClockValue());
+        assertEquals(first + 1, restarted.getWeatherData().get("B").getLamportClockValue());
+        assertTrue(restarted.getClock().get() >= first + 1);
+        restarted.close();
+    }
+
+    @Test
+    public void bodyThatIsNotAnArrayIsRejected() throws Exception {
+        AggregationServer server = TestServers.recovered(dataDir);
+        RequestNode node = server.enqueueRequest(null, new Request("PUT", "/weather/", "{\"id\":\"A\"}", new HashMap<>()));
+        assertEquals(0, node.getBatchSize(), "not counted, not logged");
+        assertEquals(node.getLamportClockValue(), server.getClock().get());
+        assertEquals(400, process(server).getStatusCode());
+
+        // counted and logged at admission, but not valid JSON: 400 on the lane and nothing to recover
+        node = server.enqueueRequest(null, new Request("PUT", "/weather/", "[{\"id\":\"B\"}, 5]", new HashMap<>()));
+        assertEquals(1, node.getBatchSize());
+        assertEquals(400, process(server).getStatusCode());
+        assertTrue(server.getWeatherData().isEmpty());
+        server.close();
+
+        AggregationServer restarted = TestServers.recovered(dataDir);
+        assertTrue(restarted.getWeatherData().isEmpty());
+        restarted.close();
+    }
+
+    @Test
+    public void singlePutAdmittedAfterTheBatchSurvivesIt() throws Exception {
+        AggregationServer server = TestServers.recovered(dataDir);
+        server.enqueueRequest(null, new Request("PUT", "/weather/", "[{\"id\":\"A\",\"air_temp\":\"1.0\"}]", new HashMap<>()));
+        RequestNode batch = server.getRequestLanes().getLane(0).take();
+
+        // admitted after the batch, so it has the higher Lamport value; A's lane applies it before lane 0
+        // gets to the batch
+        Request single = new Request("PUT", "/weather/A", "{\"id\":\"A\",\"air_temp\":\"2.0\"}", new HashMap<>());
+        RequestNode node = server.enqueueRequest(null, single);
+        assertTrue(node.getLamportClockValue() > batch.getLamportClockValue());
+        server.getRequestLanes().getLane(server.getRequestLanes().laneFor(single)).take();
+        assertEquals(200, new RequestHandler(node, server, server.getStorage()).process().getStatusCode());
+
+        // the batch's older data does not overwrite it
+        assertEquals(200, new RequestHandler(batch, server, server.getStorage()).process().getStatusCode());
+        assertEquals("{\"id\":\"A\",\"air_temp\":\"2.0\"}", server.getWeatherData().get("A").getJsonBody());
+        assertEquals(node.getLamportClockValue(), server.getWeatherData().get("A").getLamportClockValue());
+        server.close();
+
+        // and recovery agrees
+        AggregationServer restarted = TestServers.recovered(dataDir);
+        assertEquals("{\"id\":\"A\",\"air_temp\":\"2.0\"}", restarted.getWeatherData().get("A").getJsonBody());
+        restarted.close();
+    }
+
+    @Test
+    public void countSkipsStringsAndNestedValues() {
+        assertEquals(2, PutBatch.count(" [{\"id\":\"{[\\\"}\"},{\"a\":{\"b\":[{},{}]}}]"));
+        assertEquals(0, PutBatch.count("[]"));
+        assertEquals(0, PutBatch.count("{\"id\":\"A\"}"));
+        assertEquals(0, PutBatch.count(""));
+    }
+
+    private static Response process(AggregationServer server) throws Exception {
+        RequestNode node = server.getRequestLanes().getLane(0).take();
+        return new RequestHandler(node, server, server.getStorage()).process();
+    }
+}
@@ -0,0 +1,96 @@
+package com.weather.server.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestConnection;
+import com.weather.server.TestServers;
+import com.weather.server.helper.ExpirableData;
+
+/*
+ * GET /weather/<id> from the response encoded at PUT time: the exact bytes of that encoding with its ETag, 304
+ * for an If-None-Match that has the current version (strong, weak, in a list or "*"), and a new ETag once a PUT
+ * replaces the data.
+ */
+public class ConditionalGetTest {
+    private static final String BODY = "{\"id\":\"A\",\"name\":\"Adelaide (West Terrace / ngayirdapira)\"}";
+
+    @TempDir
+    Path dataDir;
+
+    private AggregationServer server;
+    private TestConnection connection;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        ServerConfig config = TestServers.config(dataDir);
+        config.setListenerMode(ServerConfig.ListenerMode.NIO);
+        server = TestServers.started(config);
+        connection = new TestConnection(config.getPort());
+        connection.send(TestConnection.put("A", BODY));
+        assertEquals(200, connection.read().status);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.close();
+        server.close();
+    }
+
+    @Test
+    public void getServesTheResponseEncodedAtPutTime() throws Exception {
+        ExpirableData data = server.getWeatherData().get("A");
+        connection.send(TestConnection.get("/weather/A"));
+        TestConnection.Reply reply = connection.read();
+
+        assertEquals(200, reply.status);
+        assertArrayEquals(data.getEncodedResponse().getBody(), reply.body);
+        assertEquals(BODY, reply.text());
+        assertEquals("application/json", reply.header("Content-Type"));
+        assertEquals(data.getETag(), reply.header("ETag"));
+        assertEquals("\"" + data.getLamportClockValue() + "\"", reply.header("ETag"));
+        assertNotNull(reply.header("Lamport-Clock"));
+    }
+
+    @Test
+    public void matchingIfNoneMatchIsAnswered304() throws Exception {
+        String etag = server.getWeatherData().get("A").getETag();
+        for (String ifNoneMatch : new String[] {etag, "W/" + etag, "\"stale\", " + etag, "*"}) {
+            connection.send(TestConnection.get("/weather/A", "If-None-Match: " + ifNoneMatch));
+            TestConnection.Reply reply = connection.read();
+            assertEquals(304, reply.status, "If-None-Match: " + ifNoneMatch);
+            assertEquals(etag, reply.header("ETag"));
+            assertEquals(0, reply.body.length);
+        }
+
+        connection.send(TestConnection.get("/weather/A", "If-None-Match: \"stale\""));
+        assertEquals(200, connection.read().status);
+    }
+
+    @Test
+    public void newPutChangesTheETag() throws Exception {
+        String etag = server.getWeatherData().get("A").getETag();
+        connection.send(TestConnection.put("A", "{\"id\":\"A\",\"v\":2}"));
+        assertEquals(200, connection.read().status);
+
+        connection.send(TestConnection.get("/weather/A", "If-None-Match: " + etag));
+        TestConnection.Reply reply = connection.read();
+        assertEquals(200, reply.status, "the old version must not be answered 304");
+        assertEquals("{\"id\":\"A\",\"v\":2}", reply.text());
+        assertNotEquals(etag, reply.header("ETag"));
+
+        connection.send(TestConnection.get("/weather/missing", "If-None-Match: *"));
+        assertEquals(404, connection.read().status);
+    }
+}
@@ -0,0 +1,153 @@
+package com.weather.server.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestServers;
+import com.weather.server.helper.ExpirableData;
+import com.weather.server.helper.StationTable;
+
+/*
+ * Expiry timing with --expiry-seconds=1 and --expiry-precision-ms=100: a station is removed no earlier than the
+ * expiry time after its last update and at most one tick (plus scheduling slack) later, and takes its history
+ * and its StationTable row with it. The server is never started, so the test drives the timing wheel itself by
+ * calling run() more often than the scheduler would.
+ */
+public class DataExpirerTest {
+    private static final long EXPIRY_MILLIS = 1000;
+    private static final long TICK_MILLIS = 100;
+    private static final long SLACK_MILLIS = 150; // test thread sleeps and run() calls that come late
+
+    @TempDir
+    Path dataDir;
+
+    private AggregationServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        ServerConfig config = TestServers.config(dataDir);
+        config.setExpirySeconds(EXPIRY_MILLIS / 1000);
+        config.setExpiryPrecisionMillis(TICK_MILLIS);
+        server = TestServers.recovered(config);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void stationExpiresWithinOneTickAfterTheExpiryTime() throws Exception {
+        put("A", "{\"id\":\"A\"}");
+        long lastUpdated = server.getWeatherData().get("A").getLastUpdated();
+
+        long removedAfter = runUntilRemoved("A") - lastUpdated;
+        assertTrue(removedAfter >= EXPIRY_MILLIS, "removed " + removedAfter + " ms after the last update");
+        assertTrue(removedAfter <= EXPIRY_MILLIS + TICK_MILLIS + SLACK_MILLIS,
+                "removed " + removedAfter + " ms after the last update");
+    }
+
+    @Test
+    public void stationUpdatedAgainIsNotRemovedByItsOldEntry() throws Exception {
+        put("A", "{\"id\":\"A\",\"air_temp\":\"1.0\"}");
+        long firstUpdate = server.getWeatherData().get("A").getLastUpdated();
+        runFor(EXPIRY_MILLIS / 2);
+
+        // the second PUT is tracked with its own entry, the first one is dropped when it comes due
+        put("A", "{\"id\":\"A\",\"air_temp\":\"2.0\"}");
+        long secondUpdate = server.getWeatherData().get("A").getLastUpdated();
+        runFor(firstUpdate + EXPIRY_MILLIS + TICK_MILLIS + SLACK_MILLIS - System.currentTimeMillis());
+        ExpirableData data = server.getWeatherData().get("A");
+        assertNotNull(data, "removed at the deadline of the replaced data");
+        assertEquals("{\"id\":\"A\",\"air_temp\":\"2.0\"}", data.getJsonBody());
+
+        long removedAfter = runUntilRemoved("A") - secondUpdate;
+        assertTrue(removedAfter >= EXPIRY_MILLIS, "removed " + removedAfter + " ms after the second update");
+    }
+
+    @Test
+    public void touchedStationIsRescheduledToItsNewDeadline() throws Exception {
+        put("A", "{\"id\":\"A\"}");
+        ExpirableData data = server.getWeatherData().get("A");
+        runFor(EXPIRY_MILLIS / 2);
+
+        // same instance, newer timestamp: its entry comes due at the old deadline and goes back in the wheel
+        data.updateTimestamp();
+        long touched = data.getLastUpdated();
+        long removedAfter = runUntilRemoved("A") - touched;
+        assertTrue(removedAfter >= EXPIRY_MILLIS, "removed " + removedAfter + " ms after it was touched");
+        assertTrue(removedAfter <= EXPIRY_MILLIS + TICK_MILLIS + SLACK_MILLIS,
+                "removed " + removedAfter + " ms after it was touched");
+    }
+
+    @Test
+    public void expiredStationLosesItsHistory() throws Exception {
+        put("A", "{\"id\":\"A\",\"air_temp\":\"1.0\"}");
+        put("A", "{\"id\":\"A\",\"air_temp\":\"2.0\"}");
+        assertTrue(server.getStationHistory().hasHistory("A"));
+
+        runUntilRemoved("A");
+        assertFalse(server.getStationHistory().hasHistory("A"), "the ring of an expired station is kept");
+        assertNull(server.getStationHistory().toJson("A", Long.MIN_VALUE, Long.MAX_VALUE));
+
+        // reporting again starts over
+        put("A", "{\"id\":\"A\",\"air_temp\":\"3.0\"}");
+        String history = server.getStationHistory().toJson("A", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertFalse(history.contains("\"2.0\""), history);
+        assertTrue(history.contains("\"3.0\""), history);
+    }
+
+    @Test
+    public void expiredStationGivesItsRowToTheNextNewStation() throws Exception {
+        StationTable table = server.getStationTable();
+        put("A", "{\"id\":\"A\",\"air_temp\":\"1.0\"}");
+        int row = table.stationRow("A");
+        int airTemp = table.fieldIndex("air_temp");
+
+        runUntilRemoved("A");
+        assertEquals(0, table.getStationCount());
+        assertTrue(Double.isNaN(table.getNumber(row, airTemp)), "the released row is cleared");
+
+        put("B", "{\"id\":\"B\",\"air_temp\":\"2.0\"}");
+        assertEquals(row, table.stationRow("B"));
+        assertEquals(1, table.getRowCount(), "no new row for B");
+        assertEquals(2.0, table.getNumber(row, airTemp));
+    }
+
+    private void put(String id, String body) throws Exception {
+        assertEquals(200, TestServers.put(server, id, body).getStatusCode());
+    }
+
+    private void runFor(long millis) throws InterruptedException {
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            server.getDataExpirer().run();
+            Thread.sleep(10);
+        }
+    }
+
+    // the time the station was gone after a run(), or a failure after three expiry times
+    private long runUntilRemoved(String id) throws InterruptedException {
+        long giveUp = System.currentTimeMillis() + 3 * EXPIRY_MILLIS;
+        while (System.currentTimeMillis() < giveUp) {
+            server.getDataExpirer().run();
+            if (!server.getWeatherData().containsKey(id)) {
+                return System.currentTimeMillis();
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("station " + id + " was never removed");
+    }
+}
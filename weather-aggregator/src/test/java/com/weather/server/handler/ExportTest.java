@@ -0,0 +1,114 @@
+package com.weather.server.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestConnection;
+import com.weather.server.TestServers;
+
+/*
+ * GET /weather/export round trip on every listener: the body is sent chunked without a Content-Length, gzip only
+ * when the client accepts it, decodes to one JSON object with the latest data of every station, and the
+ * connection stays usable afterwards.
+ */
+public class ExportTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int STATIONS = 300;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void nioListener() throws Exception {
+        checkExport(ServerConfig.ListenerMode.NIO);
+    }
+
+    @Test
+    public void virtualThreadListener() throws Exception {
+        checkExport(ServerConfig.ListenerMode.VIRTUAL);
+    }
+
+    @Test
+    public void blockingListener() throws Exception {
+        checkExport(ServerConfig.ListenerMode.BLOCKING);
+    }
+
+    private void checkExport(ServerConfig.ListenerMode mode) throws Exception {
+        ServerConfig config = TestServers.config(dataDir);
+        config.setListenerMode(mode);
+        AggregationServer server = TestServers.started(config);
+        try {
+            for (int i = 0; i < STATIONS; i++) {
+                put(config.getPort(), "S" + i, "{\"id\":\"S" + i + "\",\"air_temp\":\"" + i + ".5\"}");
+            }
+            put(config.getPort(), "S0", "{\"id\":\"S0\",\"air_temp\":\"99.5\"}");
+
+            try (TestConnection connection = new TestConnection(config.getPort())) {
+                connection.send(TestConnection.get("/weather/export"));
+                TestConnection.Reply plain = connection.read();
+                assertEquals(200, plain.status);
+                assertEquals("chunked", plain.header("Transfer-Encoding"));
+                assertNull(plain.header("Content-Length"));
+                assertNull(plain.header("Content-Encoding"));
+                assertEquals("Accept-Encoding", plain.header("Vary"));
+                assertTrue(plain.chunks > 0);
+                assertStations(MAPPER.readTree(plain.body));
+
+                if (mode != ServerConfig.ListenerMode.BLOCKING) {
+                    // the connection is still in step after a streamed body
+                    connection.send(TestConnection.get("/weather/S1"));
+                    assertEquals("{\"id\":\"S1\",\"air_temp\":\"1.5\"}", connection.read().text());
+                }
+            }
+
+            try (TestConnection connection = new TestConnection(config.getPort())) {
+                connection.send(TestConnection.get("/weather/export", "Accept-Encoding: deflate, gzip;q=0.8"));
+                TestConnection.Reply gzip = connection.read();
+                assertEquals(200, gzip.status);
+                assertEquals("chunked", gzip.header("Transfer-Encoding"));
+                assertEquals("gzip", gzip.header("Content-Encoding"));
+                assertTrue(gzip.chunks > 0);
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.body))) {
+                    assertStations(MAPPER.readTree(in));
+                }
+            }
+
+            try (TestConnection connection = new TestConnection(config.getPort())) {
+                connection.send(TestConnection.get("/weather/export", "Accept-Encoding: gzip;q=0"));
+                assertNull(connection.read().header("Content-Encoding"), "gzip;q=0 refuses gzip");
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    // one connection per PUT: the blocking listener closes after every response
+    private static void put(int port, String stationId, String body) throws Exception {
+        try (TestConnection connection = new TestConnection(port)) {
+            connection.send(TestConnection.put(stationId, body));
+            assertEquals(200, connection.read().status);
+        }
+    }
+
+    private static void assertStations(JsonNode export) {
+        assertEquals(STATIONS, export.size());
+        assertEquals("99.5", export.get("S0").get("air_temp").asText(), "not the latest data of S0");
+        for (int i = 1; i < STATIONS; i++) {
+            assertEquals("S" + i, export.get("S" + i).get("id").asText());
+            assertEquals(i + ".5", export.get("S" + i).get("air_temp").asText());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.weather.server.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestConnection;
+import com.weather.server.TestServers;
+
+/*
+ * Persistent connections and pipelining with the nio and virtual listeners: several requests on one connection,
+ * pipelined requests answered in order, and the connection closed after "Connection: close", an HTTP/1.0 request,
+ * keep-alive-max requests or keep-alive-timeout of silence. The blocking listener closes after every response.
+ */
+public class KeepAliveTest {
+    private static final int MAX_REQUESTS = 5;
+    private static final int IDLE_TIMEOUT_MILLIS = 300;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void nioListener() throws Exception {
+        checkPersistentConnections(ServerConfig.ListenerMode.NIO);
+    }
+
+    @Test
+    public void virtualThreadListener() throws Exception {
+        checkPersistentConnections(ServerConfig.ListenerMode.VIRTUAL);
+    }
+
+    @Test
+    public void blockingListenerClosesAfterEachResponse() throws Exception {
+        AggregationServer server = start(ServerConfig.ListenerMode.BLOCKING);
+        try (TestConnection connection = new TestConnection(server.getConfig().getPort())) {
+            connection.send(TestConnection.put("A", "{\"id\":\"A\"}"));
+            assertEquals("close", connection.read().header("Connection"));
+            assertTrue(connection.isClosedByServer());
+        } finally {
+            server.close();
+        }
+    }
+
+    private void checkPersistentConnections(ServerConfig.ListenerMode mode) throws Exception {
+        AggregationServer server = start(mode);
+        int port = server.getConfig().getPort();
+        try {
+            // one request after the other on the same connection
+            try (TestConnection connection = new TestConnection(port)) {
+                connection.send(TestConnection.put("A", "{\"id\":\"A\",\"v\":1}"));
+                TestConnection.Reply reply = connection.read();
+                assertEquals(200, reply.status);
+                assertEquals("keep-alive", reply.header("Connection"));
+
+                connection.send(TestConnection.get("/weather/A"));
+                assertEquals("{\"id\":\"A\",\"v\":1}", connection.read().text());
+            }
+
+            // pipelined in one write: answered in the order sent, the GETs see the PUTs before them
+            try (TestConnection connection = new TestConnection(port)) {
+                connection.send(TestConnection.put("B", "{\"id\":\"B\",\"v\":1}")
+                        + TestConnection.get("/weather/B")
+                        + TestConnection.put("B", "{\"id\":\"B\",\"v\":2}")
+                        + TestConnection.get("/weather/B"));
+                assertEquals(200, connection.read().status);
+                assertEquals("{\"id\":\"B\",\"v\":1}", connection.read().text());
+                assertEquals(200, connection.read().status);
+                assertEquals("{\"id\":\"B\",\"v\":2}", connection.read().text());
+            }
+
+            // the client asks to close
+            try (TestConnection connection = new TestConnection(port)) {
+                connection.send(TestConnection.get("/weather/A", "Connection: close"));
+                assertEquals("close", connection.read().header("Connection"));
+                assertTrue(connection.isClosedByServer());
+            }
+
+            // HTTP/1.0 is not persistent unless it asks for it
+            try (TestConnection connection = new TestConnection(port)) {
+                connection.send("GET /weather/A HTTP/1.0\r\n\r\n");
+                assertEquals("close", connection.read().header("Connection"));
+                assertTrue(connection.isClosedByServer());
+            }
+
+            // the last request a connection may carry is answered with "Connection: close"
+            try (TestConnection connection = new TestConnection(port)) {
+                for (int i = 1; i <= MAX_REQUESTS; i++) {
+                    connection.send(TestConnection.get("/weather/A"));
+                    assertEquals(i < MAX_REQUESTS ? "keep-alive" : "close", connection.read().header("Connection"),
+                            "request " + i);
+                }
+                assertTrue(connection.isClosedByServer());
+            }
+
+            // idle for longer than the timeout
+            try (TestConnection connection = new TestConnection(port)) {
+                connection.send(TestConnection.get("/weather/A"));
+                assertEquals("keep-alive", connection.read().header("Connection"));
+                long idleSince = System.currentTimeMillis();
+                assertTrue(connection.isClosedByServer());
+                long idle = System.currentTimeMillis() - idleSince;
+                assertTrue(idle >= IDLE_TIMEOUT_MILLIS - 50, "closed after " + idle + " ms");
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private AggregationServer start(ServerConfig.ListenerMode mode) throws Exception {
+        ServerConfig config = TestServers.config(dataDir);
+        config.setListenerMode(mode);
+        config.setKeepAliveMaxRequests(MAX_REQUESTS);
+        config.setKeepAliveTimeoutMillis(IDLE_TIMEOUT_MILLIS);
+        return TestServers.started(config);
+    }
+}
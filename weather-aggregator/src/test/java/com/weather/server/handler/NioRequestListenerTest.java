@@ -0,0 +1,90 @@
+package com.weather.server.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestConnection;
+import com.weather.server.TestServers;
+
+/*
+ * The selector listener (--listener=nio) on a real socket: a request is framed however its bytes arrive, a client
+ * that sent half a request does not hold up the others on the selector thread, and a malformed request only costs
+ * its own connection.
+ */
+public class NioRequestListenerTest {
+    @TempDir
+    Path dataDir;
+
+    private AggregationServer server;
+    private int port;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        ServerConfig config = TestServers.config(dataDir);
+        config.setListenerMode(ServerConfig.ListenerMode.NIO);
+        server = TestServers.started(config);
+        port = config.getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void requestSentInPiecesIsFramedWhole() throws Exception {
+        String put = TestConnection.put("A", "{\"id\":\"A\",\"air_temp\":\"13.3\"}");
+        try (TestConnection connection = new TestConnection(port)) {
+            // split inside the request line, the blank line and the body, each piece its own read on the server
+            int[] cuts = {3, 20, put.indexOf("\r\n\r\n") + 2, put.length() - 5, put.length()};
+            int from = 0;
+            for (int cut : cuts) {
+                connection.send(put.substring(from, cut));
+                from = cut;
+                Thread.sleep(20);
+            }
+            assertEquals(200, connection.read().status);
+
+            connection.send(TestConnection.get("/weather/A"));
+            TestConnection.Reply reply = connection.read();
+            assertEquals(200, reply.status);
+            assertEquals("{\"id\":\"A\",\"air_temp\":\"13.3\"}", reply.text());
+        }
+    }
+
+    @Test
+    public void halfSentRequestDoesNotBlockOtherClients() throws Exception {
+        try (TestConnection slow = new TestConnection(port); TestConnection fast = new TestConnection(port)) {
+            String put = TestConnection.put("A", "{\"id\":\"A\"}");
+            slow.send(put.substring(0, put.length() / 2));
+
+            fast.send(TestConnection.put("B", "{\"id\":\"B\"}"));
+            assertEquals(200, fast.read().status);
+            fast.send(TestConnection.get("/weather/B"));
+            assertEquals("{\"id\":\"B\"}", fast.read().text());
+
+            slow.send(put.substring(put.length() / 2));
+            assertEquals(200, slow.read().status);
+        }
+    }
+
+    @Test
+    public void malformedRequestClosesOnlyItsConnection() throws Exception {
+        try (TestConnection good = new TestConnection(port); TestConnection bad = new TestConnection(port)) {
+            bad.send("PUT /weather/A HTTP/1.1\r\nContent-Length: 1x\r\n\r\n");
+            assertTrue(bad.isClosedByServer());
+
+            good.send(TestConnection.put("A", "{\"id\":\"A\"}"));
+            assertEquals(200, good.read().status);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.weather.server.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.TestServers;
+
+/*
+ * The blocking listener when it is interrupted while a request waits for admission: the log is never recovered,
+ * so enqueueRequest blocks in awaitIndexed() until the interrupt. The listener must close that client's socket
+ * and its server socket and stop, not log the interrupt away and accept the next connection.
+ */
+public class RequestListenerTest {
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void interruptWhileAdmittingClosesTheClientAndStops() throws Exception {
+        AggregationServer server = new AggregationServer(TestServers.config(dataDir));
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread listener = new Thread(new RequestListener(server, serverSocket), "listener-under-test");
+        listener.start();
+
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+            client.setSoTimeout(5000);
+            OutputStream out = client.getOutputStream();
+            out.write("PUT /weather/A HTTP/1.1\r\nContent-Length: 10\r\n\r\n{\"id\":\"A\"}".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            // parked in awaitIndexed() with the request read
+            long giveUp = System.currentTimeMillis() + 5000;
+            while (listener.getState() != Thread.State.WAITING && System.currentTimeMillis() < giveUp) {
+                Thread.sleep(10);
+            }
+            assertEquals(Thread.State.WAITING, listener.getState());
+
+            listener.interrupt();
+            listener.join(5000);
+            assertFalse(listener.isAlive(), "the listener kept running after the interrupt");
+            assertEquals(-1, client.getInputStream().read(), "the client's socket was left open");
+            assertTrue(serverSocket.isClosed());
+            assertEquals(0, server.getRequestLanes().size());
+        } finally {
+            server.close();
+        }
+    }
+}
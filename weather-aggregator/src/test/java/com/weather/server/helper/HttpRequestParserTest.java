@@ -0,0 +1,195 @@
+package com.weather.server.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.weather.http.Request;
+
+/*
+ * The byte-level request parser: pipelined requests in one buffer or split over many appends, Content-Length
+ * in UTF-8 bytes, a malformed request pipelined after a valid one, the header, header count and body limits,
+ * and bare "\n" line endings.
+ */
+public class HttpRequestParserTest {
+    private static final String PUT_A = "PUT /weather/A HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: 10\r\n\r\n{\"id\":\"A\"}";
+    private static final String GET_A = "GET /weather/A HTTP/1.1\r\nLamport-Clock: 7\r\n\r\n";
+
+    @Test
+    public void pipelinedRequestsInOneBuffer() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(ByteBuffer.wrap(bytes(PUT_A + GET_A)));
+
+        assertTrue(parser.isComplete());
+        Request put = parser.toRequest();
+        assertEquals("PUT", put.getMethod());
+        assertEquals("/weather/A", put.getPath());
+        assertEquals("{\"id\":\"A\"}", put.getBody());
+        assertEquals("application/json", put.getHeader("content-type"));
+
+        assertTrue(parser.isComplete(), "the pipelined GET is already buffered");
+        Request get = parser.toRequest();
+        assertEquals("GET", get.getMethod());
+        assertEquals("HTTP/1.1", get.getVersion());
+        assertEquals("7", get.getHeader("Lamport-Clock"));
+        assertEquals("", get.getBody());
+        assertFalse(parser.isComplete());
+    }
+
+    @Test
+    public void pipelinedRequestsSplitAcrossAppends() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        byte[] stream = bytes(PUT_A + GET_A);
+        int putLength = bytes(PUT_A).length;
+
+        // one byte at a time: every split point, including inside "\r\n\r\n" and the body
+        for (int i = 0; i < putLength; i++) {
+            assertFalse(parser.isComplete(), "complete after " + i + " bytes");
+            parser.append(stream, i, 1);
+        }
+        assertTrue(parser.isComplete());
+        assertEquals("{\"id\":\"A\"}", parser.toRequest().getBody());
+
+        parser.append(stream, putLength, 5);
+        assertFalse(parser.isComplete());
+        parser.append(ByteBuffer.wrap(stream, putLength + 5, stream.length - putLength - 5));
+        assertEquals("/weather/A", parser.toRequest().getPath());
+        assertFalse(parser.isComplete());
+    }
+
+    @Test
+    public void readFromStreamReturnsEachRequestThenNull() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes(PUT_A + GET_A));
+
+        assertEquals("PUT", parser.read(in).getMethod());
+        assertEquals("GET", parser.read(in).getMethod());
+        assertNull(parser.read(in), "a clean end between two requests");
+    }
+
+    @Test
+    public void contentLengthCountsUtf8Bytes() throws IOException {
+        String body = "{\"id\":\"Z\u00fcrich\",\"air_temp\":\"\u22125\u00b0\"}"; // 2- and 3-byte characters
+        int length = bytes(body).length;
+        assertTrue(length > body.length());
+
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(ByteBuffer.wrap(bytes("PUT /weather/Z HTTP/1.1\r\nContent-Length: " + length + "\r\n\r\n" + body + GET_A)));
+
+        assertEquals(body, parser.toRequest().getBody());
+        assertEquals("/weather/A", parser.toRequest().getPath(), "the next request starts right after the body bytes");
+    }
+
+    @Test
+    public void headerBlockUpToTheLimitIsAccepted() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(ByteBuffer.wrap(bytes(headerBlockOf(HttpRequestParser.MAX_HEADER_BYTES))));
+        assertTrue(parser.isComplete());
+        assertEquals("/", parser.toRequest().getPath());
+    }
+
+    @Test
+    public void headerBlockOverTheLimitIsRejected() {
+        HttpRequestParser complete = new HttpRequestParser();
+        assertThrows(IOException.class,
+                () -> complete.append(ByteBuffer.wrap(bytes(headerBlockOf(HttpRequestParser.MAX_HEADER_BYTES + 1)))));
+
+        // without its blank line yet: rejected as soon as more than the limit is buffered
+        HttpRequestParser unfinished = new HttpRequestParser();
+        byte[] head = bytes(headerBlockOf(HttpRequestParser.MAX_HEADER_BYTES + 100));
+        assertThrows(IOException.class, () -> unfinished.append(head, 0, HttpRequestParser.MAX_HEADER_BYTES + 1));
+    }
+
+    @Test
+    public void headerCountLimit() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(ByteBuffer.wrap(bytes(requestWithHeaders(HttpRequestParser.MAX_HEADERS))));
+        assertEquals(HttpRequestParser.MAX_HEADERS, parser.toRequest().getHeaders().size());
+
+        HttpRequestParser over = new HttpRequestParser();
+        assertThrows(IOException.class,
+                () -> over.append(ByteBuffer.wrap(bytes(requestWithHeaders(HttpRequestParser.MAX_HEADERS + 1)))));
+    }
+
+    @Test
+    public void bodyLimit() throws IOException {
+        int max = HttpRequestParser.MAX_BODY_BYTES;
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(ByteBuffer.wrap(bytes("PUT /weather/A HTTP/1.1\r\nContent-Length: " + max + "\r\n\r\n")));
+        assertFalse(parser.isComplete());
+        parser.append(ByteBuffer.wrap(new byte[max]));
+        assertTrue(parser.isComplete());
+        assertEquals(max, parser.toRequest().getBody().length());
+
+        HttpRequestParser over = new HttpRequestParser();
+        assertThrows(IOException.class, () -> over.append(
+                ByteBuffer.wrap(bytes("PUT /weather/A HTTP/1.1\r\nContent-Length: " + (max + 1) + "\r\n\r\n"))));
+    }
+
+    @Test
+    public void invalidContentLengthIsRejected() {
+        HttpRequestParser parser = new HttpRequestParser();
+        assertThrows(IOException.class, () -> parser.append(
+                ByteBuffer.wrap(bytes("PUT /weather/A HTTP/1.1\r\nContent-Length: 1x\r\n\r\n"))));
+    }
+
+    @Test
+    public void malformedPipelinedRequestFailsOnlyAfterTheOneBeforeIt() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(ByteBuffer.wrap(bytes(PUT_A + "GET /weather/A HTTP/1.1\r\nContent-Length: 1x\r\n\r\n")));
+
+        assertEquals("{\"id\":\"A\"}", parser.toRequest().getBody(), "the valid request is returned");
+        assertThrows(IOException.class, parser::isComplete);
+        assertThrows(IOException.class, () -> parser.append(ByteBuffer.wrap(bytes(GET_A))), "the error stays");
+
+        // the same through read(): the first request, then the error instead of a clean end
+        HttpRequestParser reader = new HttpRequestParser();
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes(PUT_A + "GET\r\n\r\n"));
+        assertEquals("PUT", reader.read(in).getMethod());
+        assertThrows(IOException.class, () -> reader.read(in));
+    }
+
+    @Test
+    public void lineFeedOnlyLineEndings() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(ByteBuffer.wrap(bytes("PUT /weather/A HTTP/1.1\nContent-Length: 2\nLamport-Clock: 3\n\nab"
+                + "\n" // a stray empty line between two requests is skipped
+                + "GET /weather/ HTTP/1.0\n\n")));
+
+        Request put = parser.toRequest();
+        assertEquals("ab", put.getBody());
+        assertEquals("3", put.getHeader("Lamport-Clock"));
+        Request get = parser.toRequest();
+        assertEquals("/weather/", get.getPath());
+        assertEquals("HTTP/1.0", get.getVersion());
+        assertFalse(parser.isComplete());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // "GET / HTTP/1.1" and one padding header, exactly totalBytes long with its blank line
+    private static String headerBlockOf(int totalBytes) {
+        String prefix = "GET / HTTP/1.1\r\nX-Pad: ";
+        String suffix = "\r\n\r\n";
+        return prefix + "x".repeat(totalBytes - prefix.length() - suffix.length()) + suffix;
+    }
+
+    private static String requestWithHeaders(int count) {
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < count; i++) {
+            request.append("X-Header-").append(i).append(": ").append(i).append("\r\n");
+        }
+        return request.append("\r\n").toString();
+    }
+}
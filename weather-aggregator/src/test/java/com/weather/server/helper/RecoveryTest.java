@@ -0,0 +1,85 @@
+package com.weather.server.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The phases of background recovery, driven by hand the way Storage drives them: requests wait while the log is
+ * scanned, a station asked for while it is still pending is restored on the spot, and a restored station never
+ * replaces a newer live PUT.
+ */
+public class RecoveryTest {
+    private final ConcurrentHashMap<String, ExpirableData> weatherData = new ConcurrentHashMap<>();
+    private final Recovery recovery = new Recovery(weatherData, new StationTable(), new StationHistory(10));
+
+    @Test
+    public void requestsWaitUntilTheLogIsIndexed() throws Exception {
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread request = new Thread(() -> {
+            try {
+                recovery.awaitIndexed();
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        request.start();
+
+        assertFalse(admitted.await(100, TimeUnit.MILLISECONDS), "admitted while still scanning");
+        assertEquals(Recovery.Phase.SCANNING, recovery.getPhase());
+
+        recovery.indexed(Map.of("A", station(5, "{\"id\":\"A\"}")));
+        assertTrue(admitted.await(1, TimeUnit.SECONDS));
+        assertEquals(Recovery.Phase.RESTORING, recovery.getPhase());
+        request.join();
+    }
+
+    @Test
+    public void pendingStationIsRestoredWhenItIsAskedFor() throws Exception {
+        recovery.indexed(Map.of("A", station(5, "{\"id\":\"A\"}"), "B", station(6, "{\"id\":\"B\"}")));
+        assertEquals(Set.of("A", "B"), recovery.pendingStationIds());
+        assertTrue(weatherData.isEmpty(), "nothing is installed before the restore");
+
+        recovery.ensureRecovered("A");
+        assertEquals("{\"id\":\"A\"}", weatherData.get("A").getJsonBody());
+        assertEquals(5, weatherData.get("A").getLamportClockValue());
+        assertNull(weatherData.get("B"), "only the station asked for");
+        assertEquals(Set.of("B"), recovery.pendingStationIds());
+        assertEquals(1, recovery.getRestoredOnDemand());
+
+        recovery.restoreAll();
+        recovery.finish();
+        assertTrue(recovery.isDone());
+        assertEquals(Set.of(), recovery.pendingStationIds());
+        assertEquals(2, recovery.getStationsRestored());
+        assertEquals("{\"id\":\"B\"}", weatherData.get("B").getJsonBody());
+    }
+
+    @Test
+    public void newerLivePutIsNotOverwrittenByTheRestore() {
+        recovery.indexed(Map.of("A", station(5, "{\"id\":\"A\",\"v\":\"old\"}")));
+        // a PUT admitted after the scan has a higher Lamport value than anything in the log
+        weatherData.put("A", new ExpirableData("{\"id\":\"A\",\"v\":\"live\"}", 9, true));
+
+        recovery.restoreAll();
+        recovery.finish();
+        assertEquals("{\"id\":\"A\",\"v\":\"live\"}", weatherData.get("A").getJsonBody());
+        assertEquals(9, weatherData.get("A").getLamportClockValue());
+    }
+
+    private static Recovery.RecoveredStation station(long lamport, String body) {
+        return new Recovery.RecoveredStation(lamport, ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,123 @@
+package com.weather.server.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weather.http.Request;
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.TestConnection;
+import com.weather.server.TestServers;
+
+/*
+ * Station-sharded lanes: every request for a station goes to the same lane and is taken in Lamport order there,
+ * stations are spread over the lanes, and on a running server with four lanes the PUTs of each station are applied
+ * in the order they were sent while the stations are handled in parallel.
+ */
+public class RequestLanesTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void everyRequestForAStationGoesToTheSameLane() {
+        RequestLanes lanes = new RequestLanes(4);
+        int lane = lanes.laneFor(request("PUT", "/weather/IDS60901"));
+        assertEquals(lane, lanes.laneFor(request("GET", "/weather/IDS60901")));
+        assertEquals(lane, lanes.laneFor(request("GET", "/weather/IDS60901?wait=1000")));
+        assertEquals(lane, lanes.laneFor(request("GET", "/weather/IDS60901/history")));
+        assertEquals(lane, lanes.laneFor(request("POST", "/weather/IDS60901/touch")));
+
+        assertEquals(0, lanes.laneFor(request("GET", "/weather/")));
+        assertEquals(0, lanes.laneFor(request("PUT", "/weather/")), "a batch PUT has no single station");
+        assertEquals(0, lanes.laneFor(request("GET", "/metrics")));
+    }
+
+    @Test
+    public void stationsAreSpreadOverAllLanes() {
+        RequestLanes lanes = new RequestLanes(4);
+        int[] perLane = new int[4];
+        for (int i = 0; i < 200; i++) {
+            perLane[lanes.laneFor(request("PUT", "/weather/IDS" + (60000 + i)))]++;
+        }
+        for (int lane = 0; lane < 4; lane++) {
+            assertTrue(perLane[lane] >= 20, "lane " + lane + " got " + perLane[lane] + " of 200 stations");
+        }
+    }
+
+    @Test
+    public void laneIsTakenInLamportOrder() throws Exception {
+        RequestLanes lanes = new RequestLanes(2);
+        Request put = request("PUT", "/weather/A");
+        for (long lamport : new long[] {5, 3, 4}) {
+            lanes.put(new RequestNode(null, put, lamport));
+        }
+        int lane = lanes.laneFor(put);
+        assertEquals(3, lanes.getLane(lane).size());
+        assertEquals(0, lanes.getLane(1 - lane).size());
+        assertEquals(3, lanes.getLane(lane).take().getLamportClockValue());
+        assertEquals(4, lanes.getLane(lane).take().getLamportClockValue());
+        assertEquals(5, lanes.getLane(lane).take().getLamportClockValue());
+    }
+
+    @Test
+    public void pipelinedPutsOfEachStationAreAppliedInOrderAcrossLanes() throws Exception {
+        ServerConfig config = TestServers.config(dataDir);
+        config.setListenerMode(ServerConfig.ListenerMode.NIO);
+        config.setLaneCount(4);
+        config.setHistorySize(50);
+        AggregationServer server = TestServers.started(config);
+        try {
+            int puts = 50;
+            List<TestConnection> connections = new ArrayList<>();
+            for (int station = 0; station < 4; station++) {
+                StringBuilder pipelined = new StringBuilder();
+                for (int i = 0; i < puts; i++) {
+                    pipelined.append(TestConnection.put("S" + station, "{\"id\":\"S" + station + "\",\"seq\":" + i + "}"));
+                }
+                TestConnection connection = new TestConnection(config.getPort());
+                connection.send(pipelined.toString());
+                connections.add(connection);
+            }
+            for (TestConnection connection : connections) {
+                for (int i = 0; i < puts; i++) {
+                    assertEquals(200, connection.read().status);
+                }
+                connection.close();
+            }
+
+            for (int station = 0; station < 4; station++) {
+                String id = "S" + station;
+                assertEquals("{\"id\":\"" + id + "\",\"seq\":" + (puts - 1) + "}",
+                        server.getWeatherData().get(id).getJsonBody(), "last PUT of " + id + " not applied last");
+
+                // applied in the order sent: the history has every PUT, seq and Lamport value both increasing
+                JsonNode history = MAPPER.readTree(server.getStationHistory().toJson(id, Long.MIN_VALUE, Long.MAX_VALUE));
+                assertEquals(puts, history.size());
+                for (int i = 0; i < puts; i++) {
+                    assertEquals(i, history.get(i).get("data").get("seq").asInt());
+                    if (i > 0) {
+                        assertTrue(history.get(i).get("lamport").asLong() > history.get(i - 1).get("lamport").asLong());
+                    }
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private static Request request(String method, String path) {
+        return new Request(method, path, "", new HashMap<>());
+    }
+}
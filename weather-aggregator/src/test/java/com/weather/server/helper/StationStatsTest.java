@@ -0,0 +1,115 @@
+package com.weather.server.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weather.http.Request;
+import com.weather.http.Response;
+import com.weather.server.AggregationServer;
+import com.weather.server.TestServers;
+import com.weather.server.handler.RequestHandler;
+
+/*
+ * Aggregates kept up to date from StationTable row writes: a new value, a replaced one, a cleared or released
+ * row and a value shared by several stations each move count, min, max and mean without walking the stations,
+ * and GET /weather/stats reports them.
+ */
+public class StationStatsTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path dataDir;
+
+    private final StationTable table = new StationTable();
+    private final StationStats stats = new StationStats(table, List.of("air_temp"));
+
+    @Test
+    public void rowWritesMoveTheAggregates() {
+        write("A", "{\"air_temp\":\"10.0\"}");
+        write("B", "{\"air_temp\":14}");
+        write("C", "{\"air_temp\":\"-\"}"); // not a number: not counted
+        write("D", "{\"air_temp\":\"12.5\"}");
+        assertAggregate(3, 10.0, 14.0, 36.5 / 3);
+
+        write("A", "{\"air_temp\":\"20.0\"}");
+        assertAggregate(3, 12.5, 20.0, 46.5 / 3);
+
+        table.write(table.stationRow("B"), null);
+        assertAggregate(2, 12.5, 20.0, 32.5 / 2);
+
+        table.release("D");
+        assertAggregate(1, 20.0, 20.0, 20.0);
+
+        write("A", "{\"rel_hum\":50}"); // the field is gone from the station
+        assertAggregate(0, null, null, null);
+    }
+
+    @Test
+    public void valueSharedByStationsStaysUntilTheLastOneLeaves() {
+        write("A", "{\"air_temp\":15}");
+        write("B", "{\"air_temp\":15}");
+        write("C", "{\"air_temp\":30}");
+
+        write("C", "{\"air_temp\":15}");
+        assertAggregate(3, 15.0, 15.0, 15.0);
+        write("A", "{\"air_temp\":5}");
+        assertAggregate(3, 5.0, 15.0, 35.0 / 3);
+        write("B", "{\"air_temp\":5}");
+        write("C", "{\"air_temp\":5}");
+        assertAggregate(3, 5.0, 5.0, 5.0);
+    }
+
+    @Test
+    public void statsEndpoint() throws Exception {
+        AggregationServer server = TestServers.recovered(dataDir);
+        TestServers.put(server, "A", "{\"id\":\"A\",\"air_temp\":\"10.0\",\"rel_hum\":\"60\"}");
+        TestServers.put(server, "B", "{\"id\":\"B\",\"air_temp\":\"20.0\"}");
+
+        JsonNode airTemp = MAPPER.readTree(get(server, "/weather/stats?field=air_temp").getBody());
+        assertEquals("air_temp", airTemp.get("field").asText());
+        assertEquals(2, airTemp.get("count").asInt());
+        assertEquals(10.0, airTemp.get("min").asDouble());
+        assertEquals(20.0, airTemp.get("max").asDouble());
+        assertEquals(15.0, airTemp.get("mean").asDouble());
+
+        JsonNode all = MAPPER.readTree(get(server, "/weather/stats").getBody());
+        assertEquals(server.getConfig().getStatsFields().size(), all.size());
+        assertEquals(400, get(server, "/weather/stats?field=not_configured").getStatusCode());
+        server.close();
+    }
+
+    private void write(String stationId, String json) {
+        table.write(table.stationRow(stationId), table.parse(json));
+    }
+
+    private void assertAggregate(long count, Double min, Double max, Double mean) {
+        Map<String, Object> snapshot = stats.get("air_temp").snapshot();
+        assertEquals(count, snapshot.get("count"));
+        assertEquals(min, snapshot.get("min"));
+        assertEquals(max, snapshot.get("max"));
+        if (mean == null) {
+            assertNull(snapshot.get("mean"));
+        } else {
+            double actual = (Double) snapshot.get("mean");
+            assertTrue(Math.abs(mean - actual) < 1e-9, "mean " + actual + ", expected " + mean);
+        }
+    }
+
+    private static Response get(AggregationServer server, String path) throws Exception {
+        Request request = new Request("GET", path, "", new HashMap<>());
+        RequestNode node = server.enqueueRequest(null, request);
+        server.getRequestLanes().getLane(server.getRequestLanes().laneFor(request)).take();
+        return new RequestHandler(node, server, server.getStorage()).process();
+    }
+}
@@ -0,0 +1,72 @@
+package com.weather.server.helper;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Long-poll wake-ups: each waiter is woken exactly once, by publish, by the change check in subscribe, or by its
+ * timeout, and a publish that comes after close() still answers its waiters instead of throwing on the lane.
+ */
+public class StationSubscriptionsTest {
+    @Test
+    public void publishWakesEachWaiterOnce() throws Exception {
+        StationSubscriptions subscriptions = new StationSubscriptions();
+        AtomicInteger wakes = new AtomicInteger();
+        CountDownLatch woken = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            subscriptions.subscribe("A", 200, () -> false, () -> {
+                wakes.incrementAndGet();
+                woken.countDown();
+            });
+        }
+        assertEquals(2, subscriptions.getWaiting());
+
+        subscriptions.publish("A");
+        assertTrue(woken.await(1, TimeUnit.SECONDS));
+        Thread.sleep(400); // past the timeout, which must not wake them again
+        assertEquals(2, wakes.get());
+        assertEquals(0, subscriptions.getWaiting());
+        assertEquals(0, subscriptions.getTimedOut());
+        subscriptions.close();
+    }
+
+    @Test
+    public void stationChangedBeforeRegistrationWakesRightAway() throws Exception {
+        StationSubscriptions subscriptions = new StationSubscriptions();
+        CountDownLatch woken = new CountDownLatch(1);
+        subscriptions.subscribe("A", StationSubscriptions.MAX_WAIT_MILLIS, () -> true, woken::countDown);
+
+        assertTrue(woken.await(1, TimeUnit.SECONDS), "a PUT applied before the waiter was registered was missed");
+        assertEquals(0, subscriptions.getWaiting());
+        subscriptions.close();
+    }
+
+    @Test
+    public void timeoutWakesWaiterWithoutPublish() throws Exception {
+        StationSubscriptions subscriptions = new StationSubscriptions();
+        CountDownLatch woken = new CountDownLatch(1);
+        subscriptions.subscribe("A", 50, () -> false, woken::countDown);
+
+        assertTrue(woken.await(1, TimeUnit.SECONDS));
+        assertEquals(1, subscriptions.getTimedOut());
+        subscriptions.close();
+    }
+
+    @Test
+    public void publishAfterCloseStillWakesWaiters() {
+        StationSubscriptions subscriptions = new StationSubscriptions();
+        AtomicInteger wakes = new AtomicInteger();
+        subscriptions.subscribe("A", StationSubscriptions.MAX_WAIT_MILLIS, () -> false, wakes::incrementAndGet);
+        subscriptions.close();
+
+        assertDoesNotThrow(() -> subscriptions.publish("A"));
+        assertEquals(1, wakes.get(), "woken on the publishing thread once the wakers are shut down");
+    }
+}
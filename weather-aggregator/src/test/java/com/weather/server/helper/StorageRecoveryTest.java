@@ -0,0 +1,131 @@
+package com.weather.server.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.TestServers;
+
+/*
+ * Crash recovery from a log written by hand: PUTs without a COMMIT are restored and committed again,
+ * a torn tail is cut off before new records are appended, and a text log from before the binary
+ * format is migrated.
+ */
+public class StorageRecoveryTest {
+    @TempDir
+    Path dataDir;
+
+    @Test
+    public void putsWithoutCommitAreRestoredAndCommitted() throws Exception {
+        writeLog(
+                WalRecord.encode(WalRecord.PUT, 5, "A", "{\"id\":\"A\"}"),
+                WalRecord.encode(WalRecord.PUT, 6, "B", "{\"id\":\"B\"}"),
+                WalRecord.commit(6),
+                WalRecord.encode(WalRecord.PUT, 7, "A", "{\"id\":\"A\",\"v\":2}"));
+
+        AggregationServer server = TestServers.recovered(dataDir);
+        assertEquals("{\"id\":\"A\",\"v\":2}", server.getWeatherData().get("A").getJsonBody(), "the newest PUT wins");
+        assertEquals(7, server.getWeatherData().get("A").getLamportClockValue());
+        assertEquals("{\"id\":\"B\"}", server.getWeatherData().get("B").getJsonBody());
+        assertTrue(server.getClock().get() >= 7);
+        server.close();
+
+        // both uncommitted PUTs got their COMMIT appended to the live log
+        List<Long> commits = new ArrayList<>();
+        WalRecord.scan(dataDir.resolve("server.wal"), (type, lamport, stationId, body) -> {
+            if (type == WalRecord.COMMIT) {
+                commits.add(lamport);
+            }
+        });
+        assertEquals(List.of(6L, 5L, 7L), commits);
+
+        // and a second restart finds nothing left to re-commit
+        AggregationServer again = TestServers.recovered(dataDir);
+        assertEquals(3, countRecords(WalRecord.COMMIT));
+        again.close();
+    }
+
+    @Test
+    public void tornTailIsCutOffBeforeNewRecords() throws Exception {
+        byte[] intact = WalRecord.encode(WalRecord.PUT, 3, "A", "{\"id\":\"A\"}");
+        byte[] torn = WalRecord.encode(WalRecord.PUT, 4, "B", "{\"id\":\"B\"}");
+        writeLog(intact, Arrays.copyOf(torn, torn.length / 2));
+
+        AggregationServer server = TestServers.recovered(dataDir);
+        assertEquals("{\"id\":\"A\"}", server.getWeatherData().get("A").getJsonBody());
+        assertNull(server.getWeatherData().get("B"));
+        server.close();
+
+        // the COMMIT of A follows the intact record directly, so the whole log scans cleanly
+        Path log = dataDir.resolve("server.wal");
+        assertEquals(Files.size(log), WalRecord.scan(log, (type, lamport, stationId, body) -> {}));
+        assertEquals(1, countRecords(WalRecord.COMMIT));
+    }
+
+    @Test
+    public void legacyTextLogIsMigrated() throws Exception {
+        Files.writeString(dataDir.resolve("snapshot.log"),
+                "SNAPSHOT:10\n"
+                + "STATION:9:OLD:{\"id\":\"OLD\"}\n", StandardCharsets.UTF_8);
+        Files.writeString(dataDir.resolve("server.log"),
+                "PUT:11:A:{\"id\":\"A\",\"t\":\"a:b\"}\n"
+                + "COMMIT:11\n"
+                + "PUT:12:B:{\"id\":\"B\"}\n"
+                + "not a log line\n", StandardCharsets.UTF_8);
+
+        AggregationServer server = TestServers.recovered(dataDir);
+        assertEquals("{\"id\":\"OLD\"}", server.getWeatherData().get("OLD").getJsonBody());
+        assertEquals("{\"id\":\"A\",\"t\":\"a:b\"}", server.getWeatherData().get("A").getJsonBody());
+        assertEquals("{\"id\":\"B\"}", server.getWeatherData().get("B").getJsonBody());
+        assertTrue(server.getClock().get() >= 12);
+        server.close();
+
+        assertFalse(Files.exists(dataDir.resolve("server.log")));
+        assertFalse(Files.exists(dataDir.resolve("snapshot.log")));
+        assertTrue(Files.exists(dataDir.resolve("snapshot.wal")));
+
+        // the binary checkpoint alone brings the same stations back
+        AggregationServer restarted = TestServers.recovered(dataDir);
+        assertEquals(3, restarted.getWeatherData().size());
+        assertEquals(12, restarted.getWeatherData().get("B").getLamportClockValue());
+        restarted.close();
+    }
+
+    private void writeLog(byte[]... records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] record : records) {
+            out.write(record);
+        }
+        Files.write(dataDir.resolve("server.wal"), out.toByteArray());
+    }
+
+    // records of one type in the snapshot and the live log
+    private int countRecords(byte wanted) throws IOException {
+        int[] count = new int[1];
+        for (String name : new String[] {"snapshot.wal", "server.wal"}) {
+            Path file = dataDir.resolve(name);
+            if (Files.exists(file)) {
+                WalRecord.scan(file, (type, lamport, stationId, body) -> {
+                    if (type == wanted) {
+                        count[0]++;
+                    }
+                });
+            }
+        }
+        return count[0];
+    }
+}
@@ -0,0 +1,119 @@
+package com.weather.server.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * The binary log format: what encode() writes, scan() reads back, and scan() stops at the first record that
+ * was cut short or does not match its checksum.
+ */
+public class WalRecordTest {
+    @TempDir
+    Path dir;
+
+    // one visited record, the body decoded
+    private record Seen(byte type, long lamport, String stationId, String body) {}
+
+    @Test
+    public void recordsRoundTrip() throws IOException {
+        String body = "{\"id\":\"IDS60901\",\"name\":\"Adélaïde (Kent Town) ☀\",\n\"note\":\"line\\nbreak\"}";
+        Path file = write(
+                WalRecord.encode(WalRecord.SNAPSHOT, 41, null, null),
+                WalRecord.encode(WalRecord.PUT, 42, "IDS60901", body),
+                WalRecord.commit(42),
+                WalRecord.encode(WalRecord.STATION, Long.MAX_VALUE, "ÜBER", ""));
+
+        List<Seen> seen = new ArrayList<>();
+        long valid = WalRecord.scan(file, collect(seen));
+
+        assertEquals(Files.size(file), valid);
+        assertEquals(List.of(
+                new Seen(WalRecord.SNAPSHOT, 41, null, ""),
+                new Seen(WalRecord.PUT, 42, "IDS60901", body),
+                new Seen(WalRecord.COMMIT, 42, null, ""),
+                new Seen(WalRecord.STATION, Long.MAX_VALUE, "ÜBER", "")), seen);
+    }
+
+    @Test
+    public void emptyFileHasNoRecords() throws IOException {
+        List<Seen> seen = new ArrayList<>();
+        assertEquals(0, WalRecord.scan(write(), collect(seen)));
+        assertEquals(0, seen.size());
+    }
+
+    @Test
+    public void truncatedTailEndsTheScanAtTheLastIntactRecord() throws IOException {
+        byte[] first = WalRecord.encode(WalRecord.PUT, 1, "A", "{\"id\":\"A\"}");
+        byte[] second = WalRecord.commit(1);
+        byte[] third = WalRecord.encode(WalRecord.PUT, 2, "B", "{\"id\":\"B\"}");
+
+        // every cut inside the third record, from a partial length prefix to a missing last checksum byte
+        for (int cut = 1; cut < third.length; cut++) {
+            Path file = write(first, second, Arrays.copyOf(third, cut));
+            List<Seen> seen = new ArrayList<>();
+            assertEquals(first.length + second.length, WalRecord.scan(file, collect(seen)), "cut at " + cut);
+            assertEquals(2, seen.size(), "cut at " + cut);
+        }
+    }
+
+    @Test
+    public void corruptedRecordEndsTheScanEvenIfLaterOnesAreIntact() throws IOException {
+        byte[] first = WalRecord.encode(WalRecord.PUT, 1, "A", "{\"id\":\"A\"}");
+        byte[] second = WalRecord.encode(WalRecord.PUT, 2, "B", "{\"id\":\"B\"}");
+        byte[] third = WalRecord.commit(1);
+        second[second.length - 8] ^= 0x20; // a body byte, the checksum no longer matches
+
+        List<Seen> seen = new ArrayList<>();
+        long valid = WalRecord.scan(write(first, second, third), collect(seen));
+
+        assertEquals(first.length, valid);
+        assertEquals(List.of(new Seen(WalRecord.PUT, 1, "A", "{\"id\":\"A\"}")), seen);
+    }
+
+    @Test
+    public void corruptedChecksumEndsTheScan() throws IOException {
+        byte[] first = WalRecord.commit(7);
+        byte[] second = WalRecord.commit(8);
+        second[second.length - 1] ^= 0x01;
+
+        List<Seen> seen = new ArrayList<>();
+        assertEquals(first.length, WalRecord.scan(write(first, second), collect(seen)));
+        assertEquals(1, seen.size());
+        assertNull(seen.get(0).stationId());
+    }
+
+    @Test
+    public void garbageLengthEndsTheScan() throws IOException {
+        byte[] first = WalRecord.commit(7);
+        byte[] garbage = {(byte) 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0, 0, 0, 0, 0};
+
+        List<Seen> seen = new ArrayList<>();
+        assertEquals(first.length, WalRecord.scan(write(first, garbage), collect(seen)));
+        assertEquals(1, seen.size());
+    }
+
+    private static WalRecord.Visitor collect(List<Seen> seen) {
+        return (type, lamport, stationId, body) -> seen.add(new Seen(type, lamport, stationId, WalRecord.decodeBody(body)));
+    }
+
+    private Path write(byte[]... records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] record : records) {
+            out.write(record);
+        }
+        Path file = Files.createTempFile(dir, "wal", ".bin");
+        Files.write(file, out.toByteArray());
+        return file;
+    }
+}
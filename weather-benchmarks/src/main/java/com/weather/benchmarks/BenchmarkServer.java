@@ -0,0 +1,132 @@
+package com.weather.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.helper.WriteAheadLog;
+
+/*
+ * Runs an AggregationServer inside the benchmark JVM.
+ *
+ * The server keeps its log in ./data, so the benchmarks must run from a directory of their own
+ * (weather-benchmarks/ is fine). A data directory that holds a log not written by a benchmark is never touched:
+ * the run fails instead of wiping a real server's WAL.
+ */
+public class BenchmarkServer {
+    private static final Path DATA_DIR = Paths.get("data");
+    private static final Path MARKER = DATA_DIR.resolve(".weather-benchmarks");
+
+    private final AggregationServer server;
+    private final int port;
+    private final PrintStream console = System.out;
+
+    private BenchmarkServer(AggregationServer server, int port) {
+        this.server = server;
+        this.port = port;
+    }
+
+    /*
+     * A server that is built but not started: Storage, clock and tables exist, nothing listens.
+     */
+    public static AggregationServer create(ServerConfig config) throws IOException {
+        prepareDataDir();
+        return new AggregationServer(config);
+    }
+
+    /*
+     * Start a server on a free loopback port and wait until it accepts connections and recovery is done.
+     */
+    public static BenchmarkServer start(ServerConfig.ListenerMode listener, WriteAheadLog.SyncMode walSync) throws IOException, InterruptedException {
+        ServerConfig config = new ServerConfig(freePort());
+        config.setListenerMode(listener);
+        config.setWalSyncMode(walSync);
+        config.setKeepAliveMaxRequests(Integer.MAX_VALUE); // one connection per benchmark thread for the whole run
+        config.setKeepAliveTimeoutMillis(600000);
+        config.setExpirySeconds(3600); // GETs do not refresh a station, it must outlive the run
+        config.setCheckpointIntervalSeconds(5); // keeps the log of a long PUT run small
+
+        AggregationServer server = create(config);
+        BenchmarkServer running = new BenchmarkServer(server, config.getPort());
+
+        // the server prints every request; the console would be the bottleneck, so it goes nowhere while we measure
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        // threads inherit daemon from their creator: listener and consumers must not keep the fork alive
+        Thread thread = new Thread(server, "benchmark-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        running.awaitListening();
+        server.getRecovery().awaitDone();
+        return running;
+    }
+
+    private void awaitListening() throws IOException, InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IOException("Server did not start listening on port " + port);
+    }
+
+    public void stop() throws IOException {
+        server.close();
+        System.setOut(console);
+        cleanDataDir();
+    }
+
+    public AggregationServer getServer() {
+        return server;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // an empty data directory, or one a previous benchmark left behind
+    private static void prepareDataDir() throws IOException {
+        if (Files.isDirectory(DATA_DIR) && !Files.exists(MARKER)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(DATA_DIR)) {
+                if (files.iterator().hasNext()) {
+                    throw new IllegalStateException(DATA_DIR.toAbsolutePath() + " holds a server log that is not from a benchmark run,"
+                            + " run the benchmarks from another directory");
+                }
+            }
+        }
+        Files.createDirectories(DATA_DIR);
+        if (!Files.exists(MARKER)) {
+            Files.createFile(MARKER);
+        }
+        cleanDataDir();
+    }
+
+    // remove the log, its rolled segments and the snapshot, keep the marker
+    public static void cleanDataDir() throws IOException {
+        if (!Files.exists(MARKER)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(DATA_DIR, "{server,snapshot}.*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.weather.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Compare two JMH result files written with -rf json, e.g. from two commits on the same machine.
+ *
+ * Usage: java -cp target/benchmarks.jar com.weather.benchmarks.CompareResults <baseline.json> <current.json> [--threshold=5]
+ *
+ * Prints one line per benchmark (and parameter combination) found in both files with the change in percent.
+ * A change counts as a regression only if it is worse than the threshold (percent) and larger than the two
+ * error margins together, so noise between runs is not reported. Exits with 1 if there is a regression.
+ */
+public class CompareResults {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static class Result {
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(JsonNode node) {
+            this.mode = node.get("mode").asText();
+            JsonNode metric = node.get("primaryMetric");
+            this.score = metric.get("score").asDouble();
+            double scoreError = metric.get("scoreError").asDouble();
+            this.error = Double.isNaN(scoreError) ? 0 : scoreError;
+            this.unit = metric.get("scoreUnit").asText();
+        }
+
+        // throughput is better when higher, every time based mode when lower
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json> [--threshold=percent]");
+            System.exit(2);
+        }
+        double threshold = 5;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--threshold=")) {
+                threshold = Double.parseDouble(args[i].substring("--threshold=".length()));
+            }
+        }
+
+        System.exit(compare(new File(args[0]), new File(args[1]), threshold, System.out) == 0 ? 0 : 1);
+    }
+
+    /*
+     * Print the comparison of two result files.
+     * return the number of regressions
+     */
+    static int compare(File baselineFile, File currentFile, double threshold, PrintStream out) throws IOException {
+        Map<String, Result> baseline = read(baselineFile);
+        Map<String, Result> current = read(currentFile);
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                out.printf("%-90s %14s %12.3f %s%n", entry.getKey(), "new", entry.getValue().score, entry.getValue().unit);
+                continue;
+            }
+            Result after = entry.getValue();
+            double change = before.score == 0 ? 0 : (after.score - before.score) / before.score * 100;
+            double worse = after.higherIsBetter() ? -change : change;
+            boolean significant = Math.abs(after.score - before.score) > before.error + after.error;
+
+            String verdict = "";
+            if (significant && worse > threshold) {
+                verdict = "  REGRESSION";
+                regressions++;
+            } else if (significant && worse < -threshold) {
+                verdict = "  improved";
+            }
+            out.printf("%-90s %12.3f -> %12.3f %s %+7.1f%%%s%n",
+                    entry.getKey(), before.score, after.score, after.unit, change, verdict);
+        }
+
+        out.println(regressions == 0 ? "No regressions." : regressions + " regression(s) over " + threshold + "%.");
+        return regressions;
+    }
+
+    // "benchmark [mode] param=value,..." -> result
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode node : MAPPER.readTree(file)) {
+            StringBuilder key = new StringBuilder(node.get("benchmark").asText().replace("com.weather.benchmarks.", ""));
+            key.append(" [").append(node.get("mode").asText()).append(']');
+            JsonNode params = node.get("params");
+            if (params != null) {
+                TreeMap<String, String> sorted = new TreeMap<>();
+                params.fields().forEachRemaining(param -> sorted.put(param.getKey(), param.getValue().asText()));
+                sorted.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+            }
+            results.put(key.toString(), new Result(node));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,73 @@
+package com.weather.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weather.clock.LamportClock;
+
+/*
+ * The server's LamportClock, shared by every listener (updateAndGet on admission) and every handler
+ * (get for the Lamport-Clock response header), in both modes (the hybrid one also reads the wall clock).
+ *  - uncontended: one thread, the CAS never fails
+ *  - contended: four threads updating at once, like four connections admitting requests
+ *  - mixed: three updating and one reading, the reader's share shows how much the readers are held up
+ * Change the thread counts with -t (contended) or -tg 3,1 (mixed).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LamportClockBenchmark {
+    @Param({"LAMPORT", "HYBRID"})
+    public LamportClock.Mode mode;
+
+    private LamportClock clock;
+    private long received = 0;
+
+    @Setup
+    public void setup() {
+        clock = new LamportClock(mode);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long uncontended() {
+        return clock.updateAndGet(received);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long contended() {
+        return clock.updateAndGet(received);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public long mixedUpdate() {
+        return clock.updateAndGet(received);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long mixedGet() {
+        return clock.get();
+    }
+}
@@ -1,4 +1,4 @@
-package com.weather.server.helper;
+package com.weather.benchmarks;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -6,7 +6,11 @@ import java.util.HashMap;
 
 import com.weather.http.Request;
 
-public class RequestParser {
+/*
+ * The BufferedReader based parser the server used before HttpRequestParser, kept unchanged (apart from the name)
+ * so RequestParserBenchmark can compare the two.
+ */
+public class LegacyRequestParser {
 
     /*
      *  Example format: 
@@ -46,9 +50,17 @@ public class RequestParser {
         StringBuilder body = new StringBuilder();
         if ("PUT".equalsIgnoreCase(method)) {
             if (headers.containsKey("Content-Length")) {
+                // Content-Length counts bytes, not chars: on a persistent connection reading one char too many
+                // would eat the start of the next request
                 int contentLength = Integer.parseInt(headers.get("Content-Length"));
-                for (int i = 0; i < contentLength; i++) {
-                    body.append((char) in.read());
+                int bytesRead = 0;
+                while (bytesRead < contentLength) {
+                    int c = in.read();
+                    if (c == -1) {
+                        break;
+                    }
+                    body.append((char) c);
+                    bytesRead += utf8Length((char) c);
                 }
             } else {
                 // If Content-Length is not provided, read until the stream ends or a timeout occurs.
@@ -58,6 +70,20 @@ public class RequestParser {
             }
         }
 
-        return new Request(method, url, body.toString(), headers);
+        Request request = new Request(method, url, body.toString(), headers);
+        if (parts.length > 2) {
+            request.setVersion(parts[2]);
+        }
+        return request;
+    }
+
+    // bytes the char takes in UTF-8, a surrogate pair counts 2 + 2
+    private static int utf8Length(char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800 || Character.isSurrogate(c)) {
+            return 2;
+        }
+        return 3;
     }
 }
@@ -0,0 +1,95 @@
+package com.weather.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A bare persistent HTTP/1.1 connection for the loopback benchmarks.
+ * AbstractClient prints every request and rebuilds the header block each time, which would put the client's own cost
+ * into the numbers; this one writes pre-encoded requests and only reads the status code and skips the body.
+ */
+public class LoopbackClient implements AutoCloseable {
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+    private final byte[] skipBuffer = new byte[8192];
+
+    public LoopbackClient(int port) throws IOException {
+        this.socket = new Socket("localhost", port);
+        this.socket.setTcpNoDelay(true);
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    public static byte[] get(String path) {
+        return ("GET " + path + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Accept: application/json\r\n"
+                + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] put(String path, String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] head = ("PUT " + path + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] request = new byte[head.length + body.length];
+        System.arraycopy(head, 0, request, 0, head.length);
+        System.arraycopy(body, 0, request, head.length, body.length);
+        return request;
+    }
+
+    /*
+     * Send one request and read its response.
+     * return the status code
+     */
+    public int exchange(byte[] request) throws IOException {
+        out.write(request);
+        out.flush();
+
+        String statusLine = readLine();
+        int status = Integer.parseInt(statusLine.substring(9, 12)); // "HTTP/1.1 200 OK"
+        int contentLength = 0;
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        while (contentLength > 0) {
+            int count = in.read(skipBuffer, 0, Math.min(contentLength, skipBuffer.length));
+            if (count < 0) {
+                throw new EOFException("Server closed the connection in the middle of a response");
+            }
+            contentLength -= count;
+        }
+        return status;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,127 @@
+package com.weather.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weather.server.ServerConfig;
+import com.weather.server.helper.WriteAheadLog;
+
+/*
+ * GET and PUT of one station through the whole server over loopback: parse, admission (clock, WAL), lane queue,
+ * RequestHandler and the response write, against a weatherData holding `stations` stations.
+ * Each benchmark thread has its own persistent connection and walks the stations in a fixed stride,
+ * so successive requests hit different map bins.
+ *
+ * The WAL runs in os mode so the numbers are about the request path; StorageBenchmark covers the sync cost
+ * (or -p walSync=ALWAYS here).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestHandlerBenchmark {
+    private static final int BATCH = 250; // stations per PUT /weather/ while populating, well under the 1MB body limit
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"NIO", "VIRTUAL"})
+        public ServerConfig.ListenerMode listener;
+
+        @Param({"OS"})
+        public WriteAheadLog.SyncMode walSync;
+
+        @Param({"1000"})
+        public int stations;
+
+        BenchmarkServer server;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException, InterruptedException {
+            server = BenchmarkServer.start(listener, walSync);
+            // populate with batch PUTs on one connection
+            try (LoopbackClient client = new LoopbackClient(server.getPort())) {
+                for (int first = 0; first < stations; first += BATCH) {
+                    StringBuilder batch = new StringBuilder("[");
+                    for (int i = first; i < Math.min(first + BATCH, stations); i++) {
+                        batch.append(i == first ? "" : ",").append(Stations.record(Stations.id(i)));
+                    }
+                    batch.append(']');
+                    int status = client.exchange(LoopbackClient.put("/weather/", batch.toString()));
+                    if (status != 200) {
+                        throw new IllegalStateException("Populating the server failed with status " + status);
+                    }
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            server.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        LoopbackClient client;
+        byte[][] gets;
+        byte[][] puts;
+        int next;
+
+        @Setup(Level.Trial)
+        public void open(Server server) throws IOException {
+            client = new LoopbackClient(server.server.getPort());
+            gets = new byte[server.stations][];
+            puts = new byte[server.stations][];
+            for (int i = 0; i < server.stations; i++) {
+                String id = Stations.id(i);
+                gets[i] = LoopbackClient.get("/weather/" + id);
+                puts[i] = LoopbackClient.put("/weather/" + id, Stations.record(id));
+            }
+            next = (int) (Thread.currentThread().threadId() % server.stations);
+        }
+
+        // a prime stride visits every station before repeating one
+        int nextStation() {
+            next = (next + 7919) % gets.length;
+            return next;
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public int getStation(Connection connection) throws IOException {
+        return check(connection.client.exchange(connection.gets[connection.nextStation()]));
+    }
+
+    @Benchmark
+    public int putStation(Connection connection) throws IOException {
+        return check(connection.client.exchange(connection.puts[connection.nextStation()]));
+    }
+
+    // a benchmark that only measures error responses is worse than none
+    private static int check(int status) {
+        if (status != 200 && status != 201) {
+            throw new IllegalStateException("Unexpected status " + status);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,107 @@
+package com.weather.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.weather.http.Request;
+import com.weather.server.helper.HttpRequestParser;
+
+/*
+ * Old BufferedReader parser against the byte level HttpRequestParser, on the requests the server actually gets:
+ * a ContentServer PUT with a full station record (non-ASCII station name) and a GetClient GET.
+ * Both sides also look up the headers enqueueRequest and the listeners read, since the old parser paid for
+ * those when it built its HashMap.
+ *
+ * Run with the allocation profiler to see the bytes per request as well:
+ *   java -jar target/benchmarks.jar RequestParserBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestParserBenchmark {
+    private static final String STATION = Stations.record("IDS60901");
+
+    @Param({"PUT", "GET"})
+    public String kind;
+
+    private byte[] requestBytes;
+    private HttpRequestParser keepAliveParser; // one parser per connection, reused for every request on it
+
+    @Setup
+    public void setup() {
+        String request;
+        if (kind.equals("PUT")) {
+            int length = STATION.getBytes(StandardCharsets.UTF_8).length;
+            request = "PUT /weather/IDS60901 HTTP/1.1\r\n"
+                    + "Host: localhost:4567\r\n"
+                    + "User-Agent: ATOMClient/1/0\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + length + "\r\n"
+                    + "Lamport-Clock: 42\r\n"
+                    + "Station-Id: IDS60901\r\n"
+                    + "Connection: keep-alive\r\n"
+                    + "\r\n"
+                    + STATION;
+        } else {
+            request = "GET /weather/IDS60901 HTTP/1.1\r\n"
+                    + "Host: localhost:4567\r\n"
+                    + "User-Agent: ATOMClient/1/0\r\n"
+                    + "Accept: application/json\r\n"
+                    + "Lamport-Clock: 42\r\n"
+                    + "If-None-Match: \"41\"\r\n"
+                    + "Connection: keep-alive\r\n"
+                    + "\r\n";
+        }
+        requestBytes = request.getBytes(StandardCharsets.UTF_8);
+        keepAliveParser = new HttpRequestParser();
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) throws IOException {
+        // the listeners wrapped the socket stream like this for every connection
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(requestBytes), StandardCharsets.UTF_8));
+        Request request = LegacyRequestParser.parse(in);
+        blackhole.consume(request.getHeaders().get("Lamport-Clock"));
+        blackhole.consume(request.getHeaders().get("Connection"));
+        blackhole.consume(request.getBody());
+    }
+
+    @Benchmark
+    public void byteLevel(Blackhole blackhole) throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(requestBytes, 0, requestBytes.length);
+        Request request = parser.toRequest();
+        blackhole.consume(request.getHeader("Lamport-Clock"));
+        blackhole.consume(request.getHeader("Connection"));
+        blackhole.consume(request.getBody());
+    }
+
+    @Benchmark
+    public void byteLevelKeepAlive(Blackhole blackhole) throws IOException {
+        keepAliveParser.append(requestBytes, 0, requestBytes.length);
+        Request request = keepAliveParser.toRequest();
+        blackhole.consume(request.getHeader("Lamport-Clock"));
+        blackhole.consume(request.getHeader("Connection"));
+        blackhole.consume(request.getBody());
+    }
+}
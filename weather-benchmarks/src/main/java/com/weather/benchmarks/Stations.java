@@ -0,0 +1,35 @@
+package com.weather.benchmarks;
+
+/*
+ * Station records shaped like the ContentServer's: the BOM fields as pretty printed JSON, about 600 bytes,
+ * with a few non-ASCII characters so UTF-8 handling is exercised.
+ */
+public final class Stations {
+    private Stations() {}
+
+    public static String id(int index) {
+        return String.format("IDS%05d", index);
+    }
+
+    public static String record(String id) {
+        return "{\n"
+                + "    \"id\" : \"" + id + "\",\n"
+                + "    \"name\" : \"Adelaide (West Terrace /  ngayirdapira)\",\n"
+                + "    \"state\" : \"SA\",\n"
+                + "    \"time_zone\" : \"CST\",\n"
+                + "    \"lat\" : -34.9,\n"
+                + "    \"lon\" : 138.6,\n"
+                + "    \"local_date_time\" : \"15/04:00pm\",\n"
+                + "    \"local_date_time_full\" : \"20230715160000\",\n"
+                + "    \"air_temp\" : 13.3,\n"
+                + "    \"apparent_t\" : 9.5,\n"
+                + "    \"cloud\" : \"Partly cloudy – Kaurna Yerta\",\n"
+                + "    \"dewpt\" : 5.7,\n"
+                + "    \"press\" : 1023.9,\n"
+                + "    \"rel_hum\" : 60,\n"
+                + "    \"wind_dir\" : \"S\",\n"
+                + "    \"wind_spd_kmh\" : 15,\n"
+                + "    \"wind_spd_kt\" : 8\n"
+                + "}";
+    }
+}
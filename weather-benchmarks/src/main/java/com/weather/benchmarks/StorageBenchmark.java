@@ -0,0 +1,80 @@
+package com.weather.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.weather.server.AggregationServer;
+import com.weather.server.ServerConfig;
+import com.weather.server.helper.Storage;
+import com.weather.server.helper.WriteAheadLog;
+
+/*
+ * Write-ahead log throughput: what admitting one PUT (logPutRequest) and finishing it (logCompletion) cost,
+ * for each --wal-sync mode.
+ *
+ * Single threaded by default. Group commit only shows with concurrent writers, e.g. -t 8 for eight
+ * listener threads appending at once.
+ * The log is checkpointed (and so truncated) after every iteration, it would otherwise grow by gigabytes in os mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    @Param({"ALWAYS", "BATCH", "OS"})
+    public WriteAheadLog.SyncMode walSync;
+
+    private AggregationServer server;
+    private Storage storage;
+    private final AtomicLong lamport = new AtomicLong();
+    private final String body = Stations.record("IDS60901");
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setWalSyncMode(walSync);
+        server = BenchmarkServer.create(config); // not started, only its Storage is used
+        storage = server.getStorage();
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkpoint() throws IOException, InterruptedException {
+        storage.checkpoint();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        BenchmarkServer.cleanDataDir();
+    }
+
+    @Benchmark
+    public void logPutRequest() throws IOException, InterruptedException {
+        storage.logPutRequest(String.valueOf(lamport.incrementAndGet()), "IDS60901", body);
+    }
+
+    // the full WAL cost of one PUT: its record, then its COMMIT after the handler applied it
+    @Benchmark
+    public void logPutAndCompletion() throws IOException, InterruptedException {
+        String uniqueId = String.valueOf(lamport.incrementAndGet());
+        storage.logPutRequest(uniqueId, "IDS60901", body);
+        storage.logCompletion(uniqueId);
+    }
+}
@@ -0,0 +1,83 @@
+package com.weather.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * CompareResults on JMH -rf json files: a change counts as a regression only when it is worse than the threshold
+ * in the benchmark's own direction and larger than both error margins, and results are matched by benchmark, mode
+ * and parameters whatever order the parameters were written in.
+ */
+public class CompareResultsTest {
+    @TempDir
+    Path dir;
+
+    private final ByteArrayOutputStream printed = new ByteArrayOutputStream();
+
+    @Test
+    public void worseBeyondThresholdAndErrorIsARegression() throws Exception {
+        int regressions = compare(
+                "[" + result("StorageBenchmark.logPut", "thrpt", "", 1000, 10, "ops/s") + ","
+                        + result("RequestParserBenchmark.byteLevel", "avgt", "", 100, 1, "ns/op") + "]",
+                "[" + result("StorageBenchmark.logPut", "thrpt", "", 800, 10, "ops/s") + ","
+                        + result("RequestParserBenchmark.byteLevel", "avgt", "", 120, 1, "ns/op") + "]");
+        assertEquals(2, regressions, output());
+        assertTrue(output().contains("2 regression(s) over 5.0%."), output());
+    }
+
+    @Test
+    public void betterOrWithinNoiseIsNoRegression() throws Exception {
+        int regressions = compare(
+                "[" + result("StorageBenchmark.logPut", "thrpt", "", 1000, 10, "ops/s") + ","
+                        + result("RequestParserBenchmark.byteLevel", "avgt", "", 100, 1, "ns/op") + ","
+                        + result("RequestParserBenchmark.legacy", "avgt", "", 100, 15, "ns/op") + ","
+                        + result("LamportClockBenchmark.tick", "avgt", "", 100, 1, "ns/op") + "]",
+                "[" + result("StorageBenchmark.logPut", "thrpt", "", 1200, 10, "ops/s") + ","   // faster
+                        + result("RequestParserBenchmark.byteLevel", "avgt", "", 80, 1, "ns/op") + ","  // faster
+                        + result("RequestParserBenchmark.legacy", "avgt", "", 125, 15, "ns/op") + ","   // inside both errors
+                        + result("LamportClockBenchmark.tick", "avgt", "", 104, 1, "ns/op") + "]");     // under the threshold
+        assertEquals(0, regressions, output());
+        assertTrue(output().contains("No regressions."), output());
+        assertEquals(2, output().split("improved", -1).length - 1, output());
+    }
+
+    @Test
+    public void resultsAreMatchedByParametersInAnyOrder() throws Exception {
+        int regressions = compare(
+                "[" + result("RequestHandlerBenchmark.get", "thrpt", "\"listener\":\"NIO\",\"stations\":\"1000\"", 5000, 0, "ops/s") + "]",
+                "[" + result("RequestHandlerBenchmark.get", "thrpt", "\"stations\":\"1000\",\"listener\":\"NIO\"", 4000, 0, "ops/s") + ","
+                        + result("RequestHandlerBenchmark.get", "thrpt", "\"listener\":\"VIRTUAL\",\"stations\":\"1000\"", 10, 0, "ops/s") + "]");
+        assertEquals(1, regressions, output());
+        assertTrue(output().contains("RequestHandlerBenchmark.get [thrpt] listener=NIO stations=1000"), output());
+        assertTrue(output().matches("(?s).*listener=VIRTUAL stations=1000\\s+new.*"), output());
+    }
+
+    private int compare(String baseline, String current) throws Exception {
+        Path before = dir.resolve("baseline.json");
+        Path after = dir.resolve("current.json");
+        Files.writeString(before, baseline);
+        Files.writeString(after, current);
+        return CompareResults.compare(before.toFile(), after.toFile(), 5, new PrintStream(printed, true, StandardCharsets.UTF_8));
+    }
+
+    private String output() {
+        return printed.toString(StandardCharsets.UTF_8);
+    }
+
+    // one entry as JMH writes it; an error of 0 is written as "NaN", like JMH does for a single measurement
+    private static String result(String benchmark, String mode, String params, double score, double error, String unit) {
+        return "{\"benchmark\":\"com.weather.benchmarks." + benchmark + "\",\"mode\":\"" + mode + "\","
+                + (params.isEmpty() ? "" : "\"params\":{" + params + "},")
+                + "\"primaryMetric\":{\"score\":" + score + ",\"scoreError\":" + (error == 0 ? "\"NaN\"" : error)
+                + ",\"scoreUnit\":\"" + unit + "\"}}";
+    }
+}
@@ -0,0 +1,57 @@
+package com.weather.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.weather.http.Request;
+import com.weather.server.helper.HttpRequestParser;
+
+/*
+ * RequestParserBenchmark compares like with like: the old parser and HttpRequestParser read the benchmark's PUT
+ * (non-ASCII station record) and GET into the same request.
+ */
+public class LegacyRequestParserTest {
+    @Test
+    public void putWithStationRecord() throws Exception {
+        String station = Stations.record("IDS60901");
+        checkSameRequest("PUT /weather/IDS60901 HTTP/1.1\r\n"
+                + "Host: localhost:4567\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + station.getBytes(StandardCharsets.UTF_8).length + "\r\n"
+                + "Lamport-Clock: 42\r\n"
+                + "Station-Id: IDS60901\r\n"
+                + "\r\n"
+                + station);
+    }
+
+    @Test
+    public void get() throws Exception {
+        checkSameRequest("GET /weather/IDS60901 HTTP/1.1\r\n"
+                + "Host: localhost:4567\r\n"
+                + "Lamport-Clock: 42\r\n"
+                + "If-None-Match: \"41\"\r\n"
+                + "\r\n");
+    }
+
+    private static void checkSameRequest(String text) throws Exception {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Request legacy = LegacyRequestParser.parse(
+                new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)));
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.append(bytes, 0, bytes.length);
+        Request byteLevel = parser.toRequest();
+
+        assertEquals(legacy.getMethod(), byteLevel.getMethod());
+        assertEquals(legacy.getPath(), byteLevel.getPath());
+        assertEquals(legacy.getBody(), byteLevel.getBody());
+        for (String header : new String[] {"Host", "Content-Length", "Lamport-Clock", "Station-Id", "If-None-Match"}) {
+            assertEquals(legacy.getHeaders().get(header), byteLevel.getHeader(header), header);
+        }
+    }
+}